@@ -23,6 +23,7 @@ import com.denizenscript.denizen.scripts.triggers.core.ChatTrigger;
 import com.denizenscript.denizen.tags.BukkitTagContext;
 import com.denizenscript.denizen.tags.core.NPCTagBase;
 import com.denizenscript.denizen.utilities.*;
+import com.denizenscript.denizen.utilities.blocks.FakeChunkPacketCache;
 import com.denizenscript.denizen.utilities.blocks.FullBlockData;
 import com.denizenscript.denizen.utilities.command.*;
 import com.denizenscript.denizen.utilities.command.manager.CommandManager;
@@ -34,6 +35,7 @@ import com.denizenscript.denizen.utilities.debugging.StatsRecord;
 import com.denizenscript.denizen.utilities.depends.Depends;
 import com.denizenscript.denizen.utilities.entity.DenizenEntityType;
 import com.denizenscript.denizen.utilities.flags.PlayerFlagHandler;
+import com.denizenscript.denizen.utilities.flags.PlayerFlagIndex;
 import com.denizenscript.denizen.utilities.flags.WorldFlagHandler;
 import com.denizenscript.denizen.utilities.implementation.DenizenCoreImplementation;
 import com.denizenscript.denizen.utilities.maps.DenizenMapManager;
@@ -131,6 +133,7 @@ public class Denizen extends JavaPlugin {
         if (!PlayerFlagHandler.dataFolder.exists()) {
             PlayerFlagHandler.dataFolder.mkdir();
         }
+        PlayerFlagIndex.loadAsync();
         DebugInternals.alternateTrimLogic = FormattedTextHelper::bukkitSafeDebugTrimming;
         String javaVersion = System.getProperty("java.version");
         Debug.log("Running on java version: " + javaVersion);
@@ -492,6 +495,8 @@ public class Denizen extends JavaPlugin {
         HandlerList.unregisterAll(this);
         saveSaves(true);
         worldFlags.shutdown();
+        PlayerFlagHandler.shutdown();
+        FakeChunkPacketCache.clear();
     }
 
     @Override
@@ -0,0 +1,196 @@
+package com.denizenscript.denizen.events;
+
+import com.denizenscript.denizen.objects.*;
+import com.denizenscript.denizen.utilities.NotedAreaTracker;
+import com.denizenscript.denizen.utilities.Utilities;
+import com.denizenscript.denizen.utilities.world.WorldListChangeTracker;
+import com.denizenscript.denizencore.events.ScriptEvent;
+import com.denizenscript.denizencore.flags.FlaggableObject;
+import com.denizenscript.denizencore.tags.TagContext;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import org.bukkit.Location;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A pre-parsed form of an "in:<area>" style switch value (see 'Advanced Object Matchables').
+ * Parsing, note lookups, and matcher creation happen once up front rather than every time an event fires.
+ * Predicates that resolved a noted area or a world (or failed to resolve anything) are rebuilt whenever {@link NotedAreaTracker#version} changes,
+ * or whenever a world is loaded or unloaded (see {@link WorldListChangeTracker}).
+ */
+public class AreaSwitchPredicate {
+
+    public enum Kind { WORLD_FLAGGED, CHUNK_FLAGGED, AREA_FLAGGED, BIOME, ANY_CUBOID, ANY_ELLIPSOID, ANY_POLYGON, WORLD, AREA, ADVANCED, INVALID }
+
+    public static final Map<String, AreaSwitchPredicate> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the cached predicate for the given switch value (without any '!' negation prefix), compiling it if needed.
+     */
+    public static AreaSwitchPredicate get(String inputText) {
+        AreaSwitchPredicate predicate = cache.get(inputText);
+        if (predicate == null || !predicate.isValid()) {
+            predicate = compile(inputText);
+            if (cache.size() > 4096) { // 'is_in' tags can be fed arbitrary input, so don't let the cache grow forever
+                cache.clear();
+            }
+            cache.put(inputText, predicate);
+        }
+        return predicate;
+    }
+
+    public static AreaSwitchPredicate compile(String inputText) {
+        AreaSwitchPredicate predicate = new AreaSwitchPredicate();
+        predicate.noteVersion = NotedAreaTracker.version;
+        predicate.worldChanges = WorldListChangeTracker.changes;
+        String lower = CoreUtilities.toLowerCase(inputText);
+        predicate.lower = lower;
+        if (lower.contains(":")) {
+            if (lower.startsWith("world_flagged:")) {
+                predicate.kind = Kind.WORLD_FLAGGED;
+                predicate.flagCheck = FlagSwitchPredicate.get(inputText.substring("world_flagged:".length()));
+                return predicate;
+            }
+            else if (lower.startsWith("chunk_flagged:")) {
+                predicate.kind = Kind.CHUNK_FLAGGED;
+                predicate.flagCheck = FlagSwitchPredicate.get(inputText.substring("chunk_flagged:".length()));
+                return predicate;
+            }
+            else if (lower.startsWith("area_flagged:")) {
+                predicate.kind = Kind.AREA_FLAGGED;
+                predicate.flagCheck = FlagSwitchPredicate.get(inputText.substring("area_flagged:".length()));
+                return predicate;
+            }
+            else if (lower.startsWith("biome:")) {
+                predicate.kind = Kind.BIOME;
+                predicate.matcher = ScriptEvent.createMatcher(CoreUtilities.toLowerCase(inputText.substring("biome:".length())));
+                return predicate;
+            }
+        }
+        if (lower.equals("cuboid")) {
+            predicate.kind = Kind.ANY_CUBOID;
+        }
+        else if (lower.equals("ellipsoid")) {
+            predicate.kind = Kind.ANY_ELLIPSOID;
+        }
+        else if (lower.equals("polygon")) {
+            predicate.kind = Kind.ANY_POLYGON;
+        }
+        else if (WorldTag.matches(inputText)) {
+            predicate.kind = Kind.WORLD;
+        }
+        else if (CuboidTag.matches(inputText)) {
+            CuboidTag cuboid = CuboidTag.valueOf(inputText, CoreUtilities.noDebugContext);
+            predicate.setArea(cuboid == null || !cuboid.isUnique() ? null : cuboid, "invalid cuboid");
+        }
+        else if (EllipsoidTag.matches(inputText)) {
+            EllipsoidTag ellipsoid = EllipsoidTag.valueOf(inputText, CoreUtilities.noDebugContext);
+            predicate.setArea(ellipsoid == null || !ellipsoid.isUnique() ? null : ellipsoid, "invalid ellipsoid");
+        }
+        else if (PolygonTag.matches(inputText)) {
+            PolygonTag polygon = PolygonTag.valueOf(inputText, CoreUtilities.noDebugContext);
+            predicate.setArea(polygon == null || !polygon.isUnique() ? null : polygon, "invalid polygon");
+        }
+        else if (ScriptEvent.isAdvancedMatchable(lower)) {
+            predicate.kind = Kind.ADVANCED;
+            predicate.matcher = ScriptEvent.createMatcher(lower);
+        }
+        else {
+            predicate.kind = Kind.INVALID;
+            predicate.value = "('in:???') (did you make a typo, or forget to 'note' an object with that name?)";
+        }
+        return predicate;
+    }
+
+    public Kind kind;
+
+    public String lower;
+
+    /**
+     * The error description for {@link Kind#INVALID}.
+     */
+    public String value;
+
+    /**
+     * The compiled flag check for flag kinds.
+     */
+    public FlagSwitchPredicate flagCheck;
+
+    public ScriptEvent.MatchHelper matcher;
+
+    public AreaContainmentObject area;
+
+    public long noteVersion;
+
+    public int worldChanges;
+
+    public void setArea(AreaContainmentObject area, String error) {
+        if (area == null) {
+            kind = Kind.INVALID;
+            value = "(" + error + ")";
+        }
+        else {
+            kind = Kind.AREA;
+            this.area = area;
+        }
+    }
+
+    public boolean isValid() {
+        switch (kind) {
+            case WORLD:
+            case AREA:
+            case INVALID:
+                return noteVersion == NotedAreaTracker.version && worldChanges == WorldListChangeTracker.changes;
+            default:
+                return true;
+        }
+    }
+
+    public static boolean anyAreaContains(Location location, Class<?> type) {
+        BukkitScriptEvent.BoolHolder bool = new BukkitScriptEvent.BoolHolder();
+        NotedAreaTracker.forEachAreaThatContains(new LocationTag(location), (a) -> { if (type.isInstance(a)) { bool.bool = true; } });
+        return bool.bool;
+    }
+
+    public boolean test(TagContext context, String name, Location location, String evtLine, String containerName) {
+        switch (kind) {
+            case WORLD_FLAGGED:
+                return flagCheck.test(new WorldTag(location.getWorld()).getFlagTracker());
+            case CHUNK_FLAGGED:
+                return flagCheck.test(new ChunkTag(location).getFlagTracker());
+            case AREA_FLAGGED: {
+                BukkitScriptEvent.BoolHolder bool = new BukkitScriptEvent.BoolHolder();
+                NotedAreaTracker.forEachAreaThatContains(new LocationTag(location), (a) -> {
+                    if (a instanceof FlaggableObject && flagCheck.test(((FlaggableObject) a).getFlagTracker())) {
+                        bool.bool = true;
+                    }
+                });
+                return bool.bool;
+            }
+            case BIOME:
+                return matcher.doesMatch(CoreUtilities.toLowerCase(Utilities.namespacedKeyToString(new LocationTag(location).getBiome().getKey())));
+            case ANY_CUBOID:
+                return anyAreaContains(location, CuboidTag.class);
+            case ANY_ELLIPSOID:
+                return anyAreaContains(location, EllipsoidTag.class);
+            case ANY_POLYGON:
+                return anyAreaContains(location, PolygonTag.class);
+            case WORLD:
+                return CoreUtilities.equalsIgnoreCase(location.getWorld().getName(), lower);
+            case AREA:
+                return area.doesContainLocation(location);
+            case ADVANCED: {
+                BukkitScriptEvent.BoolHolder bool = new BukkitScriptEvent.BoolHolder();
+                NotedAreaTracker.forEachAreaThatContains(new LocationTag(location), (a) -> { if (matcher.doesMatch(a.getNoteName())) { bool.bool = true; } });
+                return bool.bool || matcher.doesMatch(CoreUtilities.toLowerCase(location.getWorld().getName()));
+            }
+            default:
+                if (context.showErrors()) {
+                    Debug.echoError("Invalid event 'in:<area>' switch [" + name + "] " + value + ": '" + evtLine + "' for " + containerName);
+                }
+                return false;
+        }
+    }
+}
@@ -13,7 +13,6 @@ import com.denizenscript.denizen.utilities.implementation.BukkitScriptEntryData;
 import com.denizenscript.denizen.utilities.inventory.SlotHelper;
 import com.denizenscript.denizencore.events.ScriptEvent;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
-import com.denizenscript.denizencore.flags.FlaggableObject;
 import com.denizenscript.denizencore.objects.ObjectTag;
 import com.denizenscript.denizencore.objects.core.JavaReflectedObjectTag;
 import com.denizenscript.denizencore.objects.notable.Notable;
@@ -602,6 +601,16 @@ public abstract class BukkitScriptEvent extends ScriptEvent {
 
     @Override
     public void init() {
+        for (ScriptPath path : eventPaths) {
+            String inputText = path.switches.get("in");
+            if (inputText != null) {
+                AreaSwitchPredicate.get(inputText.startsWith("!") ? inputText.substring(1) : inputText);
+            }
+            String locationFlagged = path.switches.get("location_flagged");
+            if (locationFlagged != null) {
+                FlagSwitchPredicate.get(locationFlagged);
+            }
+        }
         if (this instanceof Listener) {
             initListener((Listener) this);
         }
@@ -665,10 +674,11 @@ public abstract class BukkitScriptEvent extends ScriptEvent {
     }
 
     public boolean runLocationFlaggedCheck(ScriptPath path, String switchName, Location location) {
-        if (!path.switches.containsKey(switchName)) { // NOTE: opti to avoid 'getFlagTracker' call
+        String flagged = path.switches.get(switchName);
+        if (flagged == null) { // NOTE: opti to avoid 'getFlagTracker' call
             return true;
         }
-        return runFlaggedCheck(path, switchName, location == null ? null : new LocationTag(location).getFlagTracker());
+        return FlagSwitchPredicate.get(flagged).test(location == null ? null : new LocationTag(location).getFlagTracker());
     }
 
     public static class BoolHolder {
@@ -724,95 +734,7 @@ public abstract class BukkitScriptEvent extends ScriptEvent {
     }
 
     public static boolean inCheckInternal(TagContext context, String name, Location location, String inputText, String evtLine, String containerName) {
-        String lower = CoreUtilities.toLowerCase(inputText);
-        if (lower.contains(":")) {
-            if (lower.startsWith("world_flagged:")) {
-                return coreFlaggedCheck(inputText.substring("world_flagged:".length()), new WorldTag(location.getWorld()).getFlagTracker());
-            }
-            else if (lower.startsWith("chunk_flagged:")) {
-                return coreFlaggedCheck(inputText.substring("chunk_flagged:".length()), new ChunkTag(location).getFlagTracker());
-            }
-            else if (lower.startsWith("area_flagged:")) {
-                String flagName = inputText.substring("area_flagged:".length());
-                BoolHolder bool = new BoolHolder();
-                NotedAreaTracker.forEachAreaThatContains(new LocationTag(location), (a) -> {
-                    if (a instanceof FlaggableObject && coreFlaggedCheck(flagName, ((FlaggableObject) a).getFlagTracker())) {
-                        bool.bool = true;
-                    }
-                });
-                return bool.bool;
-            }
-            else if (lower.startsWith("biome:")) {
-                String biome = inputText.substring("biome:".length());
-                return runGenericCheck(biome, Utilities.namespacedKeyToString(new LocationTag(location).getBiome().getKey()));
-            }
-        }
-        if (lower.equals("cuboid")) {
-            BoolHolder bool = new BoolHolder();
-            NotedAreaTracker.forEachAreaThatContains(new LocationTag(location), (a) -> { if (a instanceof CuboidTag) { bool.bool = true; } });
-            return bool.bool;
-        }
-        else if (lower.equals("ellipsoid")) {
-            BoolHolder bool = new BoolHolder();
-            NotedAreaTracker.forEachAreaThatContains(new LocationTag(location), (a) -> { if (a instanceof EllipsoidTag) { bool.bool = true; } });
-            return bool.bool;
-        }
-        else if (lower.equals("polygon")) {
-            BoolHolder bool = new BoolHolder();
-            NotedAreaTracker.forEachAreaThatContains(new LocationTag(location), (a) -> { if (a instanceof PolygonTag) { bool.bool = true; } });
-            return bool.bool;
-        }
-        else if (WorldTag.matches(inputText)) {
-            return CoreUtilities.equalsIgnoreCase(location.getWorld().getName(), lower);
-        }
-        else if (CuboidTag.matches(inputText)) {
-            CuboidTag cuboid = CuboidTag.valueOf(inputText, context);
-            if (cuboid == null || !cuboid.isUnique()) {
-                if (context.showErrors()) {
-                    Debug.echoError("Invalid event 'in:<area>' switch [" + name + "] (invalid cuboid): '" + evtLine + "' for " + containerName);
-                }
-                return false;
-            }
-            return cuboid.isInsideCuboid(location);
-        }
-        else if (EllipsoidTag.matches(inputText)) {
-            EllipsoidTag ellipsoid = EllipsoidTag.valueOf(inputText, context);
-            if (ellipsoid == null || !ellipsoid.isUnique()) {
-                if (context.showErrors()) {
-                    Debug.echoError("Invalid event 'in:<area>' switch [" + name + "] (invalid ellipsoid): '" + evtLine + "' for " + containerName);
-                }
-                return false;
-            }
-            return ellipsoid.contains(location);
-        }
-        else if (PolygonTag.matches(inputText)) {
-            PolygonTag polygon = PolygonTag.valueOf(inputText, context);
-            if (polygon == null || !polygon.isUnique()) {
-                if (context.showErrors()) {
-                    Debug.echoError("Invalid event 'in:<area>' switch [" + name + "] (invalid polygon): '" + evtLine + "' for " + containerName);
-                }
-                return false;
-            }
-            return polygon.doesContainLocation(location);
-        }
-        else if (isAdvancedMatchable(lower)) {
-            MatchHelper matcher = createMatcher(lower);
-            BoolHolder bool = new BoolHolder();
-            NotedAreaTracker.forEachAreaThatContains(new LocationTag(location), (a) -> { if (matcher.doesMatch(a.getNoteName())) { bool.bool = true; } });
-            if (bool.bool) {
-                return true;
-            }
-            if (matcher.doesMatch(CoreUtilities.toLowerCase(location.getWorld().getName()))) {
-                return true;
-            }
-            return false;
-        }
-        else {
-            if (context.showErrors()) {
-                Debug.echoError("Invalid event 'in:<area>' switch [" + name + "] ('in:???') (did you make a typo, or forget to 'note' an object with that name?): '" + evtLine + "' for " + containerName);
-            }
-            return false;
-        }
+        return AreaSwitchPredicate.get(inputText).test(context, name, location, evtLine, containerName);
     }
 
     public static boolean trySlot(ScriptPath path, String switchName, Entity entity, int slot) {
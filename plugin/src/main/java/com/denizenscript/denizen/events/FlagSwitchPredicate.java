@@ -0,0 +1,65 @@
+package com.denizenscript.denizen.events;
+
+import com.denizenscript.denizencore.flags.AbstractFlagTracker;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A pre-parsed form of a flag check (see 'Flag Matchables'), like a 'location_flagged:' switch or an 'in:world_flagged:' switch value.
+ * The '|' split and '!' negation are handled once up front, so a check only needs the actual flag lookups.
+ */
+public class FlagSwitchPredicate {
+
+    public static final Map<String, FlagSwitchPredicate> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the cached predicate for the given flag check text, compiling it if needed.
+     */
+    public static FlagSwitchPredicate get(String check) {
+        FlagSwitchPredicate predicate = cache.get(check);
+        if (predicate == null) {
+            predicate = new FlagSwitchPredicate(check);
+            if (cache.size() > 4096) {
+                cache.clear();
+            }
+            cache.put(check, predicate);
+        }
+        return predicate;
+    }
+
+    /**
+     * The flag names to check, and whether each one is required to be absent (ie had a '!' prefix).
+     */
+    public final String[] flags;
+
+    public final boolean[] negated;
+
+    public FlagSwitchPredicate(String check) {
+        List<String> parts = CoreUtilities.split(check, '|');
+        flags = new String[parts.size()];
+        negated = new boolean[parts.size()];
+        for (int i = 0; i < flags.length; i++) {
+            String part = parts.get(i);
+            negated[i] = part.startsWith("!");
+            flags[i] = negated[i] ? part.substring(1) : part;
+        }
+    }
+
+    /**
+     * Returns true if the tracker matches every entry. A null tracker never matches.
+     */
+    public boolean test(AbstractFlagTracker tracker) {
+        if (tracker == null) {
+            return false;
+        }
+        for (int i = 0; i < flags.length; i++) {
+            if (tracker.hasFlag(flags[i]) == negated[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
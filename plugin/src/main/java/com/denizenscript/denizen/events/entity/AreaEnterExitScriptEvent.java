@@ -23,6 +23,7 @@ import org.bukkit.event.player.*;
 import org.bukkit.event.vehicle.VehicleMoveEvent;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 public class AreaEnterExitScriptEvent extends BukkitScriptEvent implements Listener {
 
@@ -188,6 +189,7 @@ public class AreaEnterExitScriptEvent extends BukkitScriptEvent implements Liste
     public MatchHelper[] matchers = null;
     public boolean onlyTrackPlayers = true;
     public static HashMap<UUID, HashSet<AreaContainmentObject>> entitiesInArea = new HashMap<>();
+    public static HashMap<UUID, NotedAreaTracker.CachedCell> playerAreaCells = new HashMap<>();
 
     @Override
     public void cancellationChanged() {
@@ -257,11 +259,24 @@ public class AreaEnterExitScriptEvent extends BukkitScriptEvent implements Liste
         HashSet<AreaContainmentObject> inAreas = entitiesInArea.get(entity.getUUID());
         if (doTrackAll || matchers != null || flagTracked != null) {
             if (pos != null) {
-                NotedAreaTracker.forEachAreaThatContains(new LocationTag(pos), (a) -> {
+                Consumer<AreaContainmentObject> action = (a) -> {
                     if (a instanceof FlaggableObject && anyMatch(a.getNoteName(), (FlaggableObject) a)) {
                         processSingle(a, entity, inAreas, pos, eventCause);
                     }
-                });
+                };
+                LocationTag location = new LocationTag(pos);
+                if (entity.isPlayer()) {
+                    // Players move constantly, so cache the lookup for the cell they're in and only redo the full lookup when they leave it
+                    NotedAreaTracker.CachedCell previous = playerAreaCells.get(entity.getUUID());
+                    NotedAreaTracker.CachedCell cell = NotedAreaTracker.getCachedCell(location, previous);
+                    if (cell != previous) {
+                        playerAreaCells.put(entity.getUUID(), cell);
+                    }
+                    cell.forEachAreaThatContains(location, action);
+                }
+                else {
+                    NotedAreaTracker.forEachAreaThatContains(location, action);
+                }
             }
             if (inAreas != null) {
                 reusableClearList.addAll(inAreas);
@@ -297,6 +312,7 @@ public class AreaEnterExitScriptEvent extends BukkitScriptEvent implements Liste
         public void onQuit(PlayerQuitEvent event) {
             processNewPosition(new EntityTag(event.getPlayer()), null, event);
             entitiesInArea.remove(event.getPlayer().getUniqueId());
+            playerAreaCells.remove(event.getPlayer().getUniqueId());
         }
 
         @EventHandler
@@ -136,6 +136,12 @@ public abstract class NMSHandler {
 
     public abstract String containerGetString(PersistentDataContainer container, String key);
 
+    /**
+     * Returns the raw stored byte array for a key (or the UTF-8 bytes of a string value), or null if missing.
+     * For byte array values, the returned array is the live stored array, and so is only identity-equal to a prior result until the key is next written.
+     */
+    public abstract byte[] containerGetBytes(PersistentDataContainer container, String key);
+
     public UUID getBossbarUUID(BossBar bar) {
         return null;
     }
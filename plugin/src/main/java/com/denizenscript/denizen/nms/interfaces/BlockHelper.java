@@ -95,4 +95,9 @@ public interface BlockHelper {
     default void setVanillaTags(Material material, Set<String> tags) {
         throw new UnsupportedOperationException();
     }
+
+    /**
+     * Returns true if a block of the given data has a block entity (eg a chest, sign, or head).
+     */
+    boolean hasBlockEntity(BlockData data);
 }
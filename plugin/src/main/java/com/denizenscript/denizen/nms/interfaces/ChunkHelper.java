@@ -2,8 +2,11 @@ package com.denizenscript.denizen.nms.interfaces;
 
 import com.denizenscript.denizen.nms.abstracts.BiomeNMS;
 import org.bukkit.Chunk;
+import org.bukkit.Material;
 import org.bukkit.World;
 
+import java.util.function.Predicate;
+
 public interface ChunkHelper {
 
     default void refreshChunkSections(Chunk chunk) {
@@ -23,4 +26,11 @@ public interface ChunkHelper {
     default void setAllBiomes(Chunk chunk, BiomeNMS biome) {
         throw new UnsupportedOperationException();
     }
+
+    /**
+     * Returns false if the given chunk section definitely contains no block with a material matching the predicate (based on the section's palette), or true if it might.
+     */
+    default boolean sectionMayContain(Chunk chunk, int sectionY, Predicate<Material> matcher) {
+        return true;
+    }
 }
@@ -73,6 +73,23 @@ public abstract class ItemHelper {
         return setNbtData(item, data);
     }
 
+    /**
+     * Returns the string value of a single key in the item's custom data ("" if the key isn't present), or null if the item has no custom data.
+     * Implementations should read the live item where possible, rather than copying the item or converting its whole custom data tag.
+     */
+    public String getCustomDataString(ItemStack item, String key) {
+        CompoundTag data = getCustomData(item);
+        return data != null ? data.getString(key) : null;
+    }
+
+    /**
+     * Returns an object that is replaced (never modified in place) whenever the item's custom data changes, or null if unavailable.
+     * Only available for server-backed items, as getting it for any other item would need a full copy of it.
+     */
+    public Object getCustomDataIdentity(ItemStack item) {
+        return null;
+    }
+
     public ItemStack setPartialOldNbt(ItemStack item, CompoundTag oldTag) {
         throw new UnsupportedOperationException();
     }
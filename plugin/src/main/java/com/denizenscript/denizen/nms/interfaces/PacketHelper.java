@@ -8,9 +8,11 @@ import com.denizenscript.denizencore.objects.core.ColorTag;
 import org.bukkit.Bukkit;
 import org.bukkit.EntityEffect;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.WorldBorder;
 import org.bukkit.block.Banner;
 import org.bukkit.block.banner.Pattern;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.LivingEntity;
@@ -72,6 +74,17 @@ public interface PacketHelper {
         player.sendBlockDamage(location, progressFloat, id);
     }
 
+    /**
+     * Sends a set of block changes that are all within one chunk section as a single packet.
+     * Positions are relative to the section, packed as (x << 8) | (z << 4) | y.
+     */
+    default void showMultiBlockChange(Player player, World world, int sectionX, int sectionY, int sectionZ, short[] positions, BlockData[] data) { // TODO: once minimum version is 1.19, remove the per-block fallback
+        for (int i = 0; i < positions.length; i++) {
+            short position = positions[i];
+            player.sendBlockChange(new Location(world, (sectionX << 4) + ((position >> 8) & 15), (sectionY << 4) + (position & 15), (sectionZ << 4) + ((position >> 4) & 15)), data[i]);
+        }
+    }
+
     default void showTileEntityData(Player player, Location location, int action, CompoundTag compoundTag) { // TODO: once minimum version is 1.20, remove in favor of Player#sendBlockUpdate
         throw new UnsupportedOperationException();
     }
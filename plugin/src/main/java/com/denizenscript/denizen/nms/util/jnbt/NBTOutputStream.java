@@ -82,7 +82,7 @@ public final class NBTOutputStream implements Closeable {
      * @param tag The tag.
      * @throws IOException if an I/O error occurs.
      */
-    private void writeTagPayload(Tag tag) throws IOException {
+    void writeTagPayload(Tag tag) throws IOException {
         int type = NBTUtils.getTypeCode(tag.getClass());
         switch (type) {
             case NBTConstants.TYPE_END:
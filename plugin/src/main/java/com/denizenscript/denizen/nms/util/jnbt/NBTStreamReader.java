@@ -0,0 +1,132 @@
+package com.denizenscript.denizen.nms.util.jnbt;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads an NBT stream one tag at a time, without building the full object graph.
+ * Call {@link #nextTag()} to step through the entries of the current compound, then either read the payload as a normal {@link Tag},
+ * skip it, or read it directly from {@link #input} (for example to decode a large byte array without ever holding it in memory).
+ */
+public final class NBTStreamReader implements Closeable {
+
+    public final DataInputStream input;
+
+    private final NBTInputStream payloadReader;
+
+    /**
+     * The name of the tag most recently returned by {@link #nextTag()}.
+     */
+    public String name;
+
+    public NBTStreamReader(InputStream is) throws IOException {
+        input = new DataInputStream(is);
+        payloadReader = new NBTInputStream(input);
+    }
+
+    /**
+     * Reads the header of the next named tag, returning its type ID, or {@link NBTConstants#TYPE_END} if the current compound is over.
+     */
+    public int nextTag() throws IOException {
+        int type = input.readByte() & 0xFF;
+        if (type == NBTConstants.TYPE_END) {
+            name = "";
+            return type;
+        }
+        int nameLength = input.readShort() & 0xFFFF;
+        byte[] nameBytes = new byte[nameLength];
+        input.readFully(nameBytes);
+        name = new String(nameBytes, NBTConstants.CHARSET);
+        return type;
+    }
+
+    /**
+     * Reads the payload of a tag of the given type as a full tag object.
+     */
+    public Tag readPayload(int type) throws IOException {
+        return payloadReader.readTagPayload(type, 1);
+    }
+
+    /**
+     * Reads the header of a list payload, returning the child type ID. The list length is available from {@link #listLength}.
+     */
+    public int readListHeader() throws IOException {
+        int childType = input.readByte() & 0xFF;
+        listLength = input.readInt();
+        return childType;
+    }
+
+    public int listLength;
+
+    /**
+     * Skips past the payload of a tag of the given type without reading it into memory.
+     */
+    public void skipPayload(int type) throws IOException {
+        switch (type) {
+            case NBTConstants.TYPE_END:
+                return;
+            case NBTConstants.TYPE_BYTE:
+                skipFully(1);
+                return;
+            case NBTConstants.TYPE_SHORT:
+                skipFully(2);
+                return;
+            case NBTConstants.TYPE_INT:
+            case NBTConstants.TYPE_FLOAT:
+                skipFully(4);
+                return;
+            case NBTConstants.TYPE_LONG:
+            case NBTConstants.TYPE_DOUBLE:
+                skipFully(8);
+                return;
+            case NBTConstants.TYPE_BYTE_ARRAY:
+                skipFully(input.readInt());
+                return;
+            case NBTConstants.TYPE_STRING:
+                skipFully(input.readShort() & 0xFFFF);
+                return;
+            case NBTConstants.TYPE_LIST:
+                int childType = readListHeader();
+                int length = listLength;
+                for (int i = 0; i < length; i++) {
+                    skipPayload(childType);
+                }
+                return;
+            case NBTConstants.TYPE_COMPOUND:
+                int childTag;
+                while ((childTag = nextTag()) != NBTConstants.TYPE_END) {
+                    skipPayload(childTag);
+                }
+                return;
+            case NBTConstants.TYPE_INT_ARRAY:
+                skipFully(input.readInt() * 4L);
+                return;
+            case NBTConstants.TYPE_LONG_ARRAY:
+                skipFully(input.readInt() * 8L);
+                return;
+            default:
+                throw new IOException("Invalid tag type: " + type + ".");
+        }
+    }
+
+    public void skipFully(long bytes) throws IOException {
+        if (bytes < 0) {
+            throw new IOException("Invalid payload length " + bytes);
+        }
+        while (bytes > 0) {
+            int skipped = input.skipBytes((int) Math.min(bytes, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                input.readByte(); // Forces an EOFException if the stream is over
+                skipped = 1;
+            }
+            bytes -= skipped;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -0,0 +1,89 @@
+package com.denizenscript.denizen.nms.util.jnbt;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes an NBT stream one tag at a time, without needing the full object graph in memory first.
+ * Compounds are opened with {@link #beginCompound(String)} and must be closed with {@link #endCompound()}.
+ * Large array payloads can be written directly to {@link #output} after their header.
+ */
+public final class NBTStreamWriter implements Closeable {
+
+    public final DataOutputStream output;
+
+    private final NBTOutputStream payloadWriter;
+
+    public NBTStreamWriter(OutputStream os) throws IOException {
+        output = new DataOutputStream(os);
+        payloadWriter = new NBTOutputStream(output);
+    }
+
+    public void writeHeader(int type, String name) throws IOException {
+        byte[] nameBytes = name.getBytes(NBTConstants.CHARSET);
+        output.writeByte(type);
+        output.writeShort(nameBytes.length);
+        output.write(nameBytes);
+    }
+
+    public void beginCompound(String name) throws IOException {
+        writeHeader(NBTConstants.TYPE_COMPOUND, name);
+    }
+
+    public void endCompound() throws IOException {
+        output.writeByte(NBTConstants.TYPE_END);
+    }
+
+    /**
+     * Writes the header of a list. Exactly 'length' payloads of the given child type must follow.
+     */
+    public void beginList(String name, int childType, int length) throws IOException {
+        writeHeader(NBTConstants.TYPE_LIST, name);
+        output.writeByte(childType);
+        output.writeInt(length);
+    }
+
+    /**
+     * Writes the header of a byte array. Exactly 'length' bytes must then be written to {@link #output}.
+     */
+    public void beginByteArray(String name, int length) throws IOException {
+        writeHeader(NBTConstants.TYPE_BYTE_ARRAY, name);
+        output.writeInt(length);
+    }
+
+    public void writeShort(String name, short value) throws IOException {
+        writeHeader(NBTConstants.TYPE_SHORT, name);
+        output.writeShort(value);
+    }
+
+    public void writeInt(String name, int value) throws IOException {
+        writeHeader(NBTConstants.TYPE_INT, name);
+        output.writeInt(value);
+    }
+
+    public void writeIntArray(String name, int[] value) throws IOException {
+        writeHeader(NBTConstants.TYPE_INT_ARRAY, name);
+        output.writeInt(value.length);
+        for (int val : value) {
+            output.writeInt(val);
+        }
+    }
+
+    public void writeNamedTag(String name, Tag tag) throws IOException {
+        payloadWriter.writeNamedTag(name, tag);
+    }
+
+    /**
+     * Writes just the payload of a tag, for use inside lists.
+     */
+    public void writePayload(Tag tag) throws IOException {
+        payloadWriter.writeTagPayload(tag);
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+}
@@ -499,6 +499,7 @@ public class EntityTag implements ObjectTag, Adjustable, EntityFormObject, Flagg
 
     @Override
     public void reapplyTracker(AbstractFlagTracker tracker) {
+        HideEntitiesHelper.invalidateMatcherCache(getBukkitEntity());
         if (CoreConfiguration.skipAllFlagCleanings) {
             return;
         }
@@ -3359,6 +3360,14 @@ public class EntityTag implements ObjectTag, Adjustable, EntityFormObject, Flagg
 
     @Override
     public void adjust(Mechanism mechanism) {
+        applyMechanism(mechanism);
+        // Only after the change is applied, so a hide check running meanwhile (eg on a network thread) can't cache a result from the old state
+        if (!isGeneric() && getBukkitEntity() != null) {
+            HideEntitiesHelper.invalidateMatcherCache(getBukkitEntity());
+        }
+    }
+
+    public void applyMechanism(Mechanism mechanism) {
         if (isGeneric()) {
             mechanisms.add(mechanism);
             mechanism.fulfill();
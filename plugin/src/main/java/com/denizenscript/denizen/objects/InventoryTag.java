@@ -12,6 +12,7 @@ import com.denizenscript.denizen.utilities.PaperAPITools;
 import com.denizenscript.denizen.utilities.depends.Depends;
 import com.denizenscript.denizen.utilities.inventory.InventoryTrackerSystem;
 import com.denizenscript.denizen.utilities.inventory.InventoryViewUtil;
+import com.denizenscript.denizen.utilities.inventory.ItemMatcher;
 import com.denizenscript.denizen.utilities.inventory.RecipeHelper;
 import com.denizenscript.denizen.utilities.inventory.SlotHelper;
 import com.denizenscript.denizen.utilities.nbt.CustomNBT;
@@ -1338,7 +1339,7 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
             if (!attribute.hasParam()) {
                 return null;
             }
-            String matcher = attribute.getParam();
+            ItemMatcher matcher = ItemMatcher.get(attribute.getParam());
             InventoryTag dummyInv = new InventoryTag(object.inventory.getType(), PaperAPITools.instance.getTitle(object.inventory));
             if (object.inventory.getType() == InventoryType.CHEST) {
                 dummyInv.setSize(object.inventory.getSize());
@@ -1363,7 +1364,7 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
             }
             for (int slot = 0; slot < dummyInv.inventory.getSize(); slot++) {
                 ItemStack item = dummyInv.inventory.getItem(slot);
-                if (item != null && new ItemTag(item).tryAdvancedMatcher(matcher, attribute.context)) {
+                if (item != null && matcher.doesMatch(item, attribute.context)) {
                     quantity -= item.getAmount();
                     if (quantity >= 0) {
                         dummyInv.inventory.setItem(slot, null);
@@ -1462,7 +1463,7 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
                 return null;
             }
             int qty = 1;
-            String matcher = attribute.getParam();
+            ItemMatcher matcher = ItemMatcher.get(attribute.getParam());
 
             // <--[tag]
             // @attribute <InventoryTag.contains_item[<matcher>].quantity[<#>]>
@@ -1478,7 +1479,7 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
             int found_items = 0;
             for (ItemStack item : object.getContents()) {
                 if (item != null) {
-                    if (new ItemTag(item).tryAdvancedMatcher(matcher, attribute.context)) {
+                    if (matcher.doesMatch(item, attribute.context)) {
                         found_items += item.getAmount();
                         if (found_items >= qty) {
                             break;
@@ -1872,11 +1873,11 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
             if (!attribute.hasParam()) {
                 return null;
             }
-            String matcher = attribute.getParam();
+            ItemMatcher matcher = ItemMatcher.get(attribute.getParam());
             for (int i = 0; i < object.inventory.getSize(); i++) {
                 ItemStack item = object.inventory.getItem(i);
                 if (item != null) {
-                    if (new ItemTag(item).tryAdvancedMatcher(matcher, attribute.context)) {
+                    if (matcher.doesMatch(item, attribute.context)) {
                         return new ElementTag(i + 1);
                     }
                 }
@@ -1897,11 +1898,11 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
                 return null;
             }
             ListTag result = new ListTag();
-            String matcher = attribute.getParam();
+            ItemMatcher matcher = ItemMatcher.get(attribute.getParam());
             for (int i = 0; i < object.inventory.getSize(); i++) {
                 ItemStack item = object.inventory.getItem(i);
                 if (item != null) {
-                    if (new ItemTag(item).tryAdvancedMatcher(matcher, attribute.context)) {
+                    if (matcher.doesMatch(item, attribute.context)) {
                         result.addObject(new ElementTag(i + 1));
                     }
                 }
@@ -2031,11 +2032,11 @@ public class InventoryTag implements ObjectTag, Notable, Adjustable, FlaggableOb
         // Uses the system behind <@link language Advanced Object Matching>.
         // -->
         tagProcessor.registerTag(ElementTag.class, "quantity_item", (attribute, object) -> {
-            String matcher = attribute.hasParam() ? attribute.getParam() : null;
+            ItemMatcher matcher = attribute.hasParam() ? ItemMatcher.get(attribute.getParam()) : null;
             int found_items = 0;
             for (ItemStack item : object.getContents()) {
                 if (item != null) {
-                    if (matcher == null || new ItemTag(item).tryAdvancedMatcher(matcher, attribute.context)) {
+                    if (matcher == null || matcher.doesMatch(item, attribute.context)) {
                         found_items += item.getAmount();
                     }
                 }
@@ -12,6 +12,7 @@ import com.denizenscript.denizen.scripts.containers.core.ItemScriptContainer;
 import com.denizenscript.denizen.scripts.containers.core.ItemScriptHelper;
 import com.denizenscript.denizen.tags.BukkitTagContext;
 import com.denizenscript.denizen.utilities.Utilities;
+import com.denizenscript.denizen.utilities.flags.ItemFlagCache;
 import com.denizenscript.denizen.utilities.nbt.CustomNBT;
 import com.denizenscript.denizencore.events.ScriptEvent;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
@@ -233,15 +234,26 @@ public class ItemTag implements ObjectTag, Adjustable, FlaggableObject {
     @Override
     public AbstractFlagTracker getFlagTracker() {
         if (flagTrackerCache == null) {
-            String value = CustomNBT.getCustomNBT(getItemStack(), "flags", "Denizen");
-            if (value == null) {
+            MapTagFlagTracker shared = ItemFlagCache.getShared(getItemStack());
+            if (shared == null) {
                 return new MapTagFlagTracker();
             }
-            flagTrackerCache = new MapTagFlagTracker(value, CoreUtilities.noDebugContext);
+            flagTrackerCache = ItemFlagCache.copyOf(shared);
         }
         return flagTrackerCache;
     }
 
+    /**
+     * Returns the item's flag tracker for checks that won't modify it, which may be shared with other items and so must not be changed.
+     */
+    public AbstractFlagTracker getReadOnlyFlagTracker() {
+        if (flagTrackerCache != null) {
+            return flagTrackerCache;
+        }
+        MapTagFlagTracker shared = ItemFlagCache.getShared(getItemStack());
+        return shared == null ? new MapTagFlagTracker() : shared;
+    }
+
     @Override
     public void reapplyTracker(AbstractFlagTracker tracker) {
         if (tracker instanceof MapTagFlagTracker && ((MapTagFlagTracker) tracker).map.isEmpty()) {
@@ -853,7 +865,7 @@ public class ItemTag implements ObjectTag, Adjustable, FlaggableObject {
                 if (getBukkitMaterial().isAir()) {
                     return false;
                 }
-                return BukkitScriptEvent.coreFlaggedCheck(matcher.substring("item_flagged:".length()), getFlagTracker());
+                return BukkitScriptEvent.coreFlaggedCheck(matcher.substring("item_flagged:".length()), getReadOnlyFlagTracker());
             }
             else if (matcherLow.startsWith("item_enchanted:")) {
                 String enchMatcher = matcher.substring("item_enchanted:".length());
@@ -13,9 +13,10 @@ import com.denizenscript.denizen.objects.properties.material.MaterialDistance;
 import com.denizenscript.denizen.objects.properties.material.MaterialHalf;
 import com.denizenscript.denizen.scripts.commands.world.SwitchCommand;
 import com.denizenscript.denizen.utilities.*;
+import com.denizenscript.denizen.utilities.blocks.BlockSearchHelper;
 import com.denizenscript.denizen.utilities.blocks.SpawnableHelper;
-import com.denizenscript.denizen.utilities.flags.DataPersistenceFlagTracker;
 import com.denizenscript.denizen.utilities.flags.LocationFlagSearchHelper;
+import com.denizenscript.denizen.utilities.flags.LocationFlagTracker;
 import com.denizenscript.denizen.utilities.world.PathFinder;
 import com.denizenscript.denizen.utilities.world.WorldListChangeTracker;
 import com.denizenscript.denizencore.flags.AbstractFlagTracker;
@@ -58,6 +59,7 @@ import org.bukkit.util.*;
 import java.lang.ref.WeakReference;
 import java.util.*;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class LocationTag extends org.bukkit.Location implements VectorObject, ObjectTag, Notable, Adjustable, FlaggableObject {
@@ -473,7 +475,7 @@ public class LocationTag extends org.bukkit.Location implements VectorObject, Ob
         if (getWorld() == null) {
             return null;
         }
-        return new DataPersistenceFlagTracker(getChunk(), "flag_tracker_" + getBlockX() + "_" + getBlockY() + "_" + getBlockZ() + "_");
+        return new LocationFlagTracker(getChunk(), getBlockX(), getBlockY(), getBlockZ());
     }
 
     @Override
@@ -2703,34 +2705,10 @@ public class LocationTag extends org.bukkit.Location implements VectorObject, Ob
             }
             double radius = attribute.getDoubleContext(2);
             attribute.fulfill(1);
-            ListTag found = new ListTag();
-            int max = Settings.blockTagsMaxBlocks();
-            int index = 0;
-            Location tstart = object.getBlockLocation();
-            double tstartY = tstart.getY();
-            int radiusInt = (int) Math.ceil(radius);
-            fullloop:
-            for (int y = -radiusInt; y <= radiusInt; y++) {
-                double newY = y + tstartY;
-                if (!Utilities.isLocationYSafe(newY, object.getWorld())) {
-                    continue;
-                }
-                for (int x = -radiusInt; x <= radiusInt; x++) {
-                    for (int z = -radiusInt; z <= radiusInt; z++) {
-                        index++;
-                        if (index > max) {
-                            break fullloop;
-                        }
-                        if (Utilities.checkLocation(object, tstart.clone().add(x + 0.5, y + 0.5, z + 0.5), radius)) {
-                            if (matcher == null || new LocationTag(tstart.clone().add(x, y, z)).tryAdvancedMatcher(matcher, attribute.context)) {
-                                found.addObject(new LocationTag(tstart.clone().add(x, y, z)));
-                            }
-                        }
-                    }
-                }
-            }
-            found.objectForms.sort((loc1, loc2) -> object.compare((LocationTag) loc1, (LocationTag) loc2));
-            return found;
+            ArrayList<LocationTag> found = new ArrayList<>();
+            BlockSearchHelper.findBlocks(object, radius, matcher, attribute.context, found);
+            found.sort(object::compare);
+            return new ListTag(found);
         });
 
         // <--[tag]
@@ -2766,7 +2744,8 @@ public class LocationTag extends org.bukkit.Location implements VectorObject, Ob
             int maxChunkX = (int) Math.ceil(maxPossibleX / 16);
             int maxChunkZ = (int) Math.ceil(maxPossibleZ / 16);
             ChunkTag testChunk = new ChunkTag(object);
-            Location refLoc = object.clone();
+            Predicate<Material> materialMatcher = BlockSearchHelper.getMaterialMatcher(matcher);
+            double radiusSquared = radius * radius;
             fullLoop:
             for (int x = minChunkX; x <= maxChunkX; x++) {
                 testChunk.chunkX = x;
@@ -2778,13 +2757,18 @@ public class LocationTag extends org.bukkit.Location implements VectorObject, Ob
                             if (index++ > max) {
                                 break fullLoop;
                             }
-                            Location current = block.getLocation(refLoc).add(0.5, 0.5, 0.5);
-                            if (Utilities.checkLocation(object, current, radius)) {
-                                LocationTag actualLoc = new LocationTag(current);
-                                if (matcher == null || actualLoc.tryAdvancedMatcher(matcher, attribute.context)) {
-                                    found.addObject(actualLoc);
-                                }
+                            double dx = block.getX() + 0.5 - object.getX(), dy = block.getY() + 0.5 - object.getY(), dz = block.getZ() + 0.5 - object.getZ();
+                            if (dx * dx + dy * dy + dz * dz >= radiusSquared) {
+                                continue;
+                            }
+                            if (materialMatcher != null && !materialMatcher.test(block.getType())) {
+                                continue;
+                            }
+                            LocationTag actualLoc = new LocationTag(object.getWorld(), block.getX() + 0.5, block.getY() + 0.5, block.getZ() + 0.5);
+                            if (materialMatcher == null && !actualLoc.tryAdvancedMatcher(matcher, attribute.context)) {
+                                continue;
                             }
+                            found.addObject(actualLoc);
                         }
                     }
                 }
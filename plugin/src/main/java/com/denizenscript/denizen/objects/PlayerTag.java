@@ -2315,8 +2315,10 @@ public class PlayerTag implements ObjectTag, Adjustable, EntityFormObject, Flagg
             ListTag list = new ListTag();
             FakeBlock.FakeBlockMap map = FakeBlock.blocks.get(object.getUUID());
             if (map != null) {
-                for (LocationTag loc : map.byLocation.keySet()) {
-                    list.addObject(loc.clone());
+                for (FakeBlock.WorldFakeBlocks world : map.byWorld.values()) {
+                    for (FakeBlock block : world.byPosition.values()) {
+                        list.addObject(block.location.clone());
+                    }
                 }
             }
             return list;
@@ -2337,7 +2339,7 @@ public class PlayerTag implements ObjectTag, Adjustable, EntityFormObject, Flagg
             LocationTag input = attribute.paramAsType(LocationTag.class);
             FakeBlock.FakeBlockMap map = FakeBlock.blocks.get(object.getUUID());
             if (map != null) {
-                FakeBlock block = map.byLocation.get(input);
+                FakeBlock block = map.get(input);
                 if (block != null) {
                     return block.material;
                 }
@@ -3387,11 +3389,12 @@ public class PlayerTag implements ObjectTag, Adjustable, EntityFormObject, Flagg
         // To hide a specific entity from the player, use <@link mechanism PlayerTag.hide_entity>.
         // To remove hide sets, use <@link mechanism PlayerTag.unhide_entities>.
         // Note that dynamic matchables like 'entity_flagged' will behave in unexpected ways when dynamically changing.
+        // Whether an entity matches is re-checked whenever it's spawned for the player, or when it's flagged or adjusted by a script, but not for other changes (eg from plugins or the game itself).
         // -->
         if (mechanism.matches("hide_entities") && mechanism.hasValue()) {
             HideEntitiesHelper.PlayerHideMap map = HideEntitiesHelper.getPlayerMapFor(getUUID());
             String hideMe = mechanism.getValue().asString();
-            map.matchersHidden.add(hideMe);
+            map.addMatcher(hideMe);
             if (isOnline()) {
                 for (Entity ent : getPlayerEntity().getWorld().getEntities()) {
                     if (new EntityTag(ent).tryAdvancedMatcher(hideMe, mechanism.context) && map.shouldHide(ent)) {
@@ -3411,7 +3414,7 @@ public class PlayerTag implements ObjectTag, Adjustable, EntityFormObject, Flagg
         if (mechanism.matches("unhide_entities") && mechanism.hasValue()) {
             HideEntitiesHelper.PlayerHideMap map = HideEntitiesHelper.getPlayerMapFor(getUUID());
             String unhideMe = mechanism.getValue().asString();
-            map.matchersHidden.remove(unhideMe);
+            map.removeMatcher(unhideMe);
             if (map.matchersHidden.isEmpty() && map.entitiesHidden.isEmpty() && map.overridinglyShow.isEmpty()) {
                 HideEntitiesHelper.playerHides.remove(getUUID());
             }
@@ -18,6 +18,7 @@ import com.denizenscript.denizencore.tags.TagContext;
 import com.denizenscript.denizencore.tags.TagManager;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
 import com.denizenscript.denizencore.utilities.YamlConfiguration;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.bukkit.Location;
 
 import java.util.ArrayList;
@@ -76,6 +77,67 @@ public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, Ar
 
     public static boolean preferInclusive = false;
 
+    /**
+     * Polygons with at least this many corners get a {@link ContainmentGrid} built for them on first use.
+     */
+    public static int gridMinCorners = 24;
+
+    public static int gridMaxCellsPerAxis = 256;
+
+    public ContainmentGrid preciseGrid, inclusiveGrid;
+
+    /**
+     * A coarse grid over the polygon's bounding box, used to answer most containment checks without walking every edge.
+     * Each cell is either fully inside, fully outside, or touched by an edge. Only edge cells need an actual edge walk,
+     * and then only over the edges in that cell's slab (the row for precise checks, which cast along X, or the column for inclusive checks, which cast along Z).
+     * Inclusive grids are aligned to whole blocks, as inclusive checks work on block coordinates.
+     */
+    public static final class ContainmentGrid {
+
+        public static final byte OUTSIDE = 0, INSIDE = 1, EDGE = 2;
+
+        public ContainmentGrid(int cornerCount, double minX, double minZ, double cellWidth, double cellHeight, int cellsX, int cellsZ, int slabCount) {
+            this.cornerCount = cornerCount;
+            this.minX = minX;
+            this.minZ = minZ;
+            this.cellWidth = cellWidth;
+            this.cellHeight = cellHeight;
+            this.cellsX = cellsX;
+            this.cellsZ = cellsZ;
+            states = new byte[cellsX * cellsZ];
+            slabs = new int[slabCount][];
+        }
+
+        public final int cornerCount;
+
+        public final double minX, minZ, cellWidth, cellHeight;
+
+        public final int cellsX, cellsZ;
+
+        public final byte[] states;
+
+        /**
+         * Edge indices (the edge from corner i to corner i + 1) per row or column.
+         */
+        public final int[][] slabs;
+
+        public int cellX(double x) {
+            return Math.max(0, Math.min(cellsX - 1, (int) ((x - minX) / cellWidth)));
+        }
+
+        public int cellZ(double z) {
+            return Math.max(0, Math.min(cellsZ - 1, (int) ((z - minZ) / cellHeight)));
+        }
+
+        public void markEdge(int lowX, int lowZ, int highX, int highZ) {
+            for (int x = lowX; x <= highX; x++) {
+                for (int z = lowZ; z <= highZ; z++) {
+                    states[x + z * cellsX] = EDGE;
+                }
+            }
+        }
+    }
+
     public static class Corner {
         public double x, z;
 
@@ -103,6 +165,8 @@ public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, Ar
     }
 
     public void recalculateBox() {
+        preciseGrid = null;
+        inclusiveGrid = null;
         if (corners.size() == 0) {
             return;
         }
@@ -117,6 +181,8 @@ public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, Ar
     }
 
     public void recalculateToFit(Corner corner) {
+        preciseGrid = null;
+        inclusiveGrid = null;
         boxMin.x = Math.min(boxMin.x, corner.x);
         boxMin.z = Math.min(boxMin.z, corner.z);
         boxMax.x = Math.max(boxMax.x, corner.x);
@@ -228,6 +294,108 @@ public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, Ar
         return preferInclusive ? containsInclusive(loc) : containsPrecise(loc);
     }
 
+    public Corner edgeEnd(int i) {
+        return i + 1 == corners.size() ? corners.get(0) : corners.get(i + 1);
+    }
+
+    /**
+     * Returns the containment grid for this polygon in the given mode, building it if needed, or null if the polygon is too simple to need one.
+     */
+    public ContainmentGrid getGrid(boolean inclusive) {
+        int size = corners.size();
+        if (size < gridMinCorners) {
+            return null;
+        }
+        ContainmentGrid grid = inclusive ? inclusiveGrid : preciseGrid;
+        if (grid == null || grid.cornerCount != size) {
+            grid = inclusive ? buildInclusiveGrid() : buildPreciseGrid();
+            if (inclusive) {
+                inclusiveGrid = grid;
+            }
+            else {
+                preciseGrid = grid;
+            }
+        }
+        return grid;
+    }
+
+    public static int[][] toSlabArray(IntArrayList[] slabs) {
+        int[][] result = new int[slabs.length][];
+        for (int i = 0; i < slabs.length; i++) {
+            result[i] = slabs[i] == null ? new int[0] : slabs[i].toIntArray();
+        }
+        return result;
+    }
+
+    public ContainmentGrid buildPreciseGrid() {
+        int size = corners.size();
+        double width = boxMax.x - boxMin.x, height = boxMax.z - boxMin.z;
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        int cellsPerAxis = Math.max(4, Math.min(gridMaxCellsPerAxis, (int) Math.ceil(Math.sqrt(size) * 2)));
+        ContainmentGrid grid = new ContainmentGrid(size, boxMin.x, boxMin.z, width / cellsPerAxis, height / cellsPerAxis, cellsPerAxis, cellsPerAxis, cellsPerAxis);
+        IntArrayList[] rows = new IntArrayList[cellsPerAxis];
+        for (int i = 0; i < size; i++) {
+            Corner start = corners.get(i), end = edgeEnd(i);
+            int lowZ = grid.cellZ(Math.min(start.z, end.z)), highZ = grid.cellZ(Math.max(start.z, end.z));
+            for (int z = lowZ; z <= highZ; z++) {
+                if (rows[z] == null) {
+                    rows[z] = new IntArrayList();
+                }
+                rows[z].add(i);
+            }
+            grid.markEdge(grid.cellX(Math.min(start.x, end.x)), lowZ, grid.cellX(Math.max(start.x, end.x)), highZ);
+        }
+        System.arraycopy(toSlabArray(rows), 0, grid.slabs, 0, cellsPerAxis);
+        for (int z = 0; z < grid.cellsZ; z++) {
+            double centerZ = grid.minZ + (z + 0.5) * grid.cellHeight;
+            for (int x = 0; x < grid.cellsX; x++) {
+                int index = x + z * grid.cellsX;
+                if (grid.states[index] != ContainmentGrid.EDGE) {
+                    grid.states[index] = containsPrecise(grid.minX + (x + 0.5) * grid.cellWidth, centerZ, grid.slabs[z]) ? ContainmentGrid.INSIDE : ContainmentGrid.OUTSIDE;
+                }
+            }
+        }
+        return grid;
+    }
+
+    public ContainmentGrid buildInclusiveGrid() {
+        int size = corners.size();
+        int minX = (int) Math.floor(boxMin.x), minZ = (int) Math.floor(boxMin.z);
+        int blocksX = (int) Math.floor(boxMax.x) - minX + 1, blocksZ = (int) Math.floor(boxMax.z) - minZ + 1;
+        int cellsPerAxis = Math.max(4, Math.min(gridMaxCellsPerAxis, (int) Math.ceil(Math.sqrt(size) * 2)));
+        int cellWidth = Math.max(1, (blocksX + cellsPerAxis - 1) / cellsPerAxis), cellHeight = Math.max(1, (blocksZ + cellsPerAxis - 1) / cellsPerAxis);
+        int cellsX = (blocksX + cellWidth - 1) / cellWidth, cellsZ = (blocksZ + cellHeight - 1) / cellHeight;
+        ContainmentGrid grid = new ContainmentGrid(size, minX, minZ, cellWidth, cellHeight, cellsX, cellsZ, cellsX);
+        IntArrayList[] columns = new IntArrayList[cellsX];
+        for (int i = 0; i < size; i++) {
+            Corner start = corners.get(i), end = edgeEnd(i);
+            int xStart = (int) Math.floor(start.x), zStart = (int) Math.floor(start.z);
+            int xEnd = (int) Math.floor(end.x), zEnd = (int) Math.floor(end.z);
+            int lowX = grid.cellX(Math.min(xStart, xEnd)), highX = grid.cellX(Math.max(xStart, xEnd));
+            for (int x = lowX; x <= highX; x++) {
+                if (columns[x] == null) {
+                    columns[x] = new IntArrayList();
+                }
+                columns[x].add(i);
+            }
+            // Widened by a block in each direction, as inclusive checks count blocks touching an edge
+            grid.markEdge(grid.cellX(Math.min(xStart, xEnd) - 1), grid.cellZ(Math.min(zStart, zEnd) - 1), grid.cellX(Math.max(xStart, xEnd) + 1), grid.cellZ(Math.max(zStart, zEnd) + 1));
+        }
+        System.arraycopy(toSlabArray(columns), 0, grid.slabs, 0, cellsX);
+        for (int x = 0; x < cellsX; x++) {
+            int blockX = minX + x * cellWidth;
+            for (int z = 0; z < cellsZ; z++) {
+                int index = x + z * cellsX;
+                if (grid.states[index] != ContainmentGrid.EDGE) {
+                    grid.states[index] = containsInclusive(blockX, minZ + z * cellHeight, grid.slabs[x]) ? ContainmentGrid.INSIDE : ContainmentGrid.OUTSIDE;
+                }
+            }
+        }
+        return grid;
+    }
+
     public boolean containsPrecise(Location loc) {
         if (loc.getWorld() == null) {
             return false;
@@ -244,10 +412,28 @@ public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, Ar
         if (y < yMin || y > yMax) {
             return false;
         }
+        ContainmentGrid grid = getGrid(false);
+        if (grid != null) {
+            int cellZ = grid.cellZ(z);
+            byte state = grid.states[grid.cellX(x) + cellZ * grid.cellsX];
+            if (state != ContainmentGrid.EDGE) {
+                return state == ContainmentGrid.INSIDE;
+            }
+            return containsPrecise(x, z, grid.slabs[cellZ]);
+        }
+        return containsPrecise(x, z, null);
+    }
+
+    /**
+     * Walks the given edges (or all edges, if null) to determine precise containment of a point already known to be in the bounding box.
+     */
+    public boolean containsPrecise(double x, double z, int[] edges) {
         boolean isInside = false;
-        for (int i = 0; i < corners.size(); i++) {
+        int count = edges == null ? corners.size() : edges.length;
+        for (int e = 0; e < count; e++) {
+            int i = edges == null ? e : edges[e];
             Corner start = corners.get(i);
-            Corner end = (i + 1 == corners.size() ? corners.get(0) : corners.get(i + 1));
+            Corner end = edgeEnd(i);
             if (((start.z > z) != (end.z > z)) && (x < (end.x - start.x) * (z - start.z) / (end.z - start.z) + start.x)) {
                 isInside = !isInside;
             }
@@ -268,10 +454,31 @@ public class PolygonTag implements ObjectTag, Cloneable, Notable, Adjustable, Ar
         }
         int targetX = loc.getBlockX();
         int targetZ = loc.getBlockZ();
+        ContainmentGrid grid = getGrid(true);
+        if (grid != null) {
+            int relX = targetX - (int) grid.minX, relZ = targetZ - (int) grid.minZ;
+            if (relX >= 0 && relZ >= 0 && relX < grid.cellsX * grid.cellWidth && relZ < grid.cellsZ * grid.cellHeight) {
+                int cellX = relX / (int) grid.cellWidth;
+                byte state = grid.states[cellX + (relZ / (int) grid.cellHeight) * grid.cellsX];
+                if (state != ContainmentGrid.EDGE) {
+                    return state == ContainmentGrid.INSIDE;
+                }
+                return containsInclusive(targetX, targetZ, grid.slabs[cellX]);
+            }
+        }
+        return containsInclusive(targetX, targetZ, null);
+    }
+
+    /**
+     * Walks the given edges (or all edges, if null) to determine block-inclusive containment of a block position.
+     */
+    public boolean containsInclusive(int targetX, int targetZ, int[] edges) {
         boolean isInside = false;
-        for (int i = 0; i < corners.size(); i++) {
+        int count = edges == null ? corners.size() : edges.length;
+        for (int e = 0; e < count; e++) {
+            int i = edges == null ? e : edges[e];
             Corner start = corners.get(i);
-            Corner end = (i + 1 == corners.size() ? corners.get(0) : corners.get(i + 1));
+            Corner end = edgeEnd(i);
             int xStart = (int) Math.floor(start.x);
             int zStart = (int) Math.floor(start.z);
             int xEnd = (int) Math.floor(end.x);
@@ -89,7 +89,7 @@ public class ItemFlags implements Property {
 
     @Override
     public String getPropertyString() {
-        AbstractFlagTracker tracker = item.getFlagTracker();
+        AbstractFlagTracker tracker = item.getReadOnlyFlagTracker();
         if (tracker instanceof MapTagFlagTracker && ((MapTagFlagTracker) tracker).map.isEmpty()) {
             return null;
         }
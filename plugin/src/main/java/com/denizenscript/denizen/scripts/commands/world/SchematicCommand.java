@@ -714,7 +714,7 @@ public class SchematicCommand extends AbstractCommand implements Holdable, Liste
         // Returns the number of blocks in the schematic.
         // -->
         if (attribute.startsWith("blocks")) {
-            event.setReplacedObject(new ElementTag(set.blocks.length)
+            event.setReplacedObject(new ElementTag(set.getBlockCount())
                     .getObjectAttribute(attribute.fulfill(1)));
             return;
         }
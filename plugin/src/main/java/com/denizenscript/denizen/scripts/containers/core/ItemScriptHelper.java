@@ -5,7 +5,6 @@ import com.denizenscript.denizen.events.bukkit.ScriptReloadEvent;
 import com.denizenscript.denizen.nms.NMSHandler;
 import com.denizenscript.denizen.nms.NMSVersion;
 import com.denizenscript.denizen.nms.interfaces.ItemHelper;
-import com.denizenscript.denizen.nms.util.jnbt.CompoundTag;
 import com.denizenscript.denizen.objects.EntityTag;
 import com.denizenscript.denizen.objects.ItemTag;
 import com.denizenscript.denizen.objects.MaterialTag;
@@ -382,16 +381,15 @@ public class ItemScriptHelper implements Listener {
         if (item == null) {
             return null;
         }
-        CompoundTag tag = NMSHandler.itemHelper.getCustomData(item);
-        if (tag == null) {
+        String scriptName = NMSHandler.itemHelper.getCustomDataString(item, "DenizenItemScript");
+        if (scriptName == null) {
             return null;
         }
-        String scriptName = tag.getString("DenizenItemScript");
-        if (scriptName != null && !scriptName.equals("")) {
+        if (!scriptName.equals("")) {
             return scriptName;
         }
         // NOTE: Legacy hashed format
-        String nbt = tag.getString("Denizen Item Script");
+        String nbt = NMSHandler.itemHelper.getCustomDataString(item, "Denizen Item Script");
         if (nbt != null && !nbt.equals("")) {
             ItemScriptContainer container = item_scripts_by_hash_id.get(nbt);
             if (container != null) {
@@ -401,20 +399,58 @@ public class ItemScriptHelper implements Listener {
         return null;
     }
 
+    public static class CachedScriptLookup {
+
+        public final Object identity;
+
+        public final ItemScriptContainer container;
+
+        public CachedScriptLookup(Object identity, ItemScriptContainer container) {
+            this.identity = identity;
+            this.container = container;
+        }
+    }
+
+    /**
+     * Recent item script lookups, keyed by the identity of the item's custom data component (see {@link ItemHelper#getCustomDataIdentity(ItemStack)}).
+     * Slots are overwritten on collision, and entries are only ever replaced whole, so this is safe to read from any thread.
+     */
+    public static final CachedScriptLookup[] scriptLookupCache = new CachedScriptLookup[256];
+
+    public static void clearScriptLookupCache() {
+        Arrays.fill(scriptLookupCache, null);
+    }
+
     public static ItemScriptContainer getItemScriptContainer(ItemStack item) {
         if (item == null) {
             return null;
         }
-        CompoundTag tag = NMSHandler.itemHelper.getCustomData(item);
-        if (tag == null) {
+        Object identity = NMSHandler.itemHelper.getCustomDataIdentity(item);
+        int slot = 0;
+        if (identity != null) {
+            slot = System.identityHashCode(identity) & (scriptLookupCache.length - 1);
+            CachedScriptLookup cached = scriptLookupCache[slot];
+            if (cached != null && cached.identity == identity) {
+                return cached.container;
+            }
+        }
+        ItemScriptContainer container = findItemScriptContainer(item);
+        if (identity != null) {
+            scriptLookupCache[slot] = new CachedScriptLookup(identity, container);
+        }
+        return container;
+    }
+
+    public static ItemScriptContainer findItemScriptContainer(ItemStack item) {
+        String scriptName = NMSHandler.itemHelper.getCustomDataString(item, "DenizenItemScript");
+        if (scriptName == null) {
             return null;
         }
-        String scriptName = tag.getString("DenizenItemScript");
-        if (scriptName != null && !scriptName.equals("")) {
+        if (!scriptName.equals("")) {
             return item_scripts.get(scriptName);
         }
         // NOTE: Legacy hashed format
-        String nbt = tag.getString("Denizen Item Script");
+        String nbt = NMSHandler.itemHelper.getCustomDataString(item, "Denizen Item Script");
         if (nbt != null && !nbt.equals("")) {
             return item_scripts_by_hash_id.get(nbt);
         }
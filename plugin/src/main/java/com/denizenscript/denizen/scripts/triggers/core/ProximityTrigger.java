@@ -6,13 +6,18 @@ import com.denizenscript.denizen.npc.traits.TriggerTrait;
 import com.denizenscript.denizen.objects.NPCTag;
 import com.denizenscript.denizen.objects.PlayerTag;
 import com.denizenscript.denizen.scripts.triggers.AbstractTrigger;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import net.citizensnpcs.api.CitizensAPI;
+import net.citizensnpcs.api.event.NPCDespawnEvent;
+import net.citizensnpcs.api.event.NPCRemoveEvent;
+import net.citizensnpcs.api.event.NPCSpawnEvent;
 import net.citizensnpcs.api.npc.NPC;
 import net.citizensnpcs.api.npc.NPCRegistry;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerQuitEvent;
 
@@ -83,6 +88,118 @@ public class ProximityTrigger extends AbstractTrigger implements Listener {
     // -->
     int taskID = -1;
 
+    /**
+     * A spawned NPC as tracked in the spatial index.
+     */
+    public static class IndexedNPC {
+
+        public IndexedNPC(NPC npc) {
+            this.npc = npc;
+        }
+
+        public final NPC npc;
+
+        /**
+         * The world and cell the NPC is currently filed under, or null if not currently in any cell.
+         */
+        public UUID world;
+
+        public long cell;
+    }
+
+    /**
+     * Width of the index cells, as a bit shift (ie 64x64 block columns).
+     */
+    public static final int CELL_SHIFT = 6;
+
+    public static long cellKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Spawned NPCs by NPC UUID.
+     */
+    public static Map<UUID, IndexedNPC> indexedNPCs = new HashMap<>();
+
+    /**
+     * Spawned NPCs by world UUID, then by cell key, so each player only needs to be checked against NPCs near them.
+     */
+    public static Map<UUID, Long2ObjectOpenHashMap<List<IndexedNPC>>> npcGrid = new HashMap<>();
+
+    public static boolean needsFullIndex = true;
+
+    public static void removeFromCell(IndexedNPC indexed) {
+        if (indexed.world == null) {
+            return;
+        }
+        Long2ObjectOpenHashMap<List<IndexedNPC>> cells = npcGrid.get(indexed.world);
+        if (cells != null) {
+            List<IndexedNPC> cell = cells.get(indexed.cell);
+            if (cell != null) {
+                cell.remove(indexed);
+                if (cell.isEmpty()) {
+                    cells.remove(indexed.cell);
+                    if (cells.isEmpty()) {
+                        npcGrid.remove(indexed.world);
+                    }
+                }
+            }
+        }
+        indexed.world = null;
+    }
+
+    public static void indexNPC(NPC npc) {
+        indexedNPCs.computeIfAbsent(npc.getUniqueId(), k -> new IndexedNPC(npc));
+    }
+
+    public static void unindexNPC(NPC npc) {
+        IndexedNPC indexed = indexedNPCs.remove(npc.getUniqueId());
+        if (indexed != null) {
+            removeFromCell(indexed);
+        }
+    }
+
+    /**
+     * Files every indexed NPC under the cell it is currently in, moving any that have changed cell or world since the last update.
+     */
+    public static void updateIndex() {
+        if (needsFullIndex) {
+            needsFullIndex = false;
+            for (NPCRegistry registry : CitizensAPI.getNPCRegistries()) {
+                for (NPC citizensNPC : registry) {
+                    if (citizensNPC != null && citizensNPC.isSpawned()) {
+                        indexNPC(citizensNPC);
+                    }
+                }
+            }
+        }
+        for (IndexedNPC indexed : indexedNPCs.values()) {
+            if (!indexed.npc.isSpawned()) {
+                removeFromCell(indexed);
+                continue;
+            }
+            Location location = indexed.npc.getEntity().getLocation();
+            UUID world = location.getWorld().getUID();
+            long cell = cellKey(location.getBlockX() >> CELL_SHIFT, location.getBlockZ() >> CELL_SHIFT);
+            if (world.equals(indexed.world) && cell == indexed.cell) {
+                continue;
+            }
+            removeFromCell(indexed);
+            indexed.world = world;
+            indexed.cell = cell;
+            npcGrid.computeIfAbsent(world, k -> new Long2ObjectOpenHashMap<>()).computeIfAbsent(cell, k -> new ArrayList<>()).add(indexed);
+        }
+    }
+
+    public void tryProcessIndexed(IndexedNPC indexed, Player bukkitPlayer) {
+        NPC citizensNPC = indexed.npc;
+        if (!citizensNPC.isSpawned() || !citizensNPC.hasTrait(TriggerTrait.class) || !citizensNPC.getOrAddTrait(TriggerTrait.class).isEnabled(name)) {
+            return;
+        }
+        NPCTag npc = new NPCTag(citizensNPC);
+        tryProcessSinglePair(npc, npc.getTriggerTrait(), bukkitPlayer);
+    }
+
     @Override
     public void onEnable() {
         Bukkit.getServer().getPluginManager().registerEvents(this, Denizen.getInstance());
@@ -90,25 +207,59 @@ public class ProximityTrigger extends AbstractTrigger implements Listener {
             if (timesUsed == 0) { // skip if not in use
                 return;
             }
-            Collection<? extends Player> allPlayers = Bukkit.getOnlinePlayers();
-            for (NPCRegistry registry : CitizensAPI.getNPCRegistries()) {
-                for (NPC citizensNPC : registry) {
-                    if (citizensNPC == null || !citizensNPC.isSpawned()) {
-                        continue;
-                    }
-                    if (!citizensNPC.hasTrait(TriggerTrait.class) || !citizensNPC.getOrAddTrait(TriggerTrait.class).isEnabled(name)) {
-                        continue;
+            updateIndex();
+            for (Player bukkitPlayer : Bukkit.getOnlinePlayers()) {
+                Location location = bukkitPlayer.getLocation();
+                UUID world = location.getWorld().getUID();
+                int lowX = (location.getBlockX() - maxProximityDistance) >> CELL_SHIFT, highX = (location.getBlockX() + maxProximityDistance) >> CELL_SHIFT;
+                int lowZ = (location.getBlockZ() - maxProximityDistance) >> CELL_SHIFT, highZ = (location.getBlockZ() + maxProximityDistance) >> CELL_SHIFT;
+                Long2ObjectOpenHashMap<List<IndexedNPC>> cells = npcGrid.get(world);
+                if (cells != null) {
+                    for (int x = lowX; x <= highX; x++) {
+                        for (int z = lowZ; z <= highZ; z++) {
+                            List<IndexedNPC> cell = cells.get(cellKey(x, z));
+                            if (cell != null) {
+                                for (IndexedNPC indexed : new ArrayList<>(cell)) {
+                                    tryProcessIndexed(indexed, bukkitPlayer);
+                                }
+                            }
+                        }
                     }
-                    NPCTag npc = new NPCTag(citizensNPC);
-                    TriggerTrait triggerTrait = npc.getTriggerTrait();
-                    for (Player bukkitPlayer : allPlayers) {
-                        tryProcessSinglePair(npc, triggerTrait, bukkitPlayer);
+                }
+                // NPCs the player is still inside the proximity of, but that are no longer nearby (eg after a teleport), still need their exit to fire
+                Set<UUID> inside = proximityTracker.get(bukkitPlayer.getUniqueId());
+                if (inside != null) {
+                    for (UUID id : new ArrayList<>(inside)) {
+                        IndexedNPC indexed = indexedNPCs.get(id);
+                        if (indexed == null || indexed.world == null) {
+                            continue;
+                        }
+                        int cellX = (int) (indexed.cell >> 32), cellZ = (int) indexed.cell;
+                        if (indexed.world.equals(world) && cellX >= lowX && cellX <= highX && cellZ >= lowZ && cellZ <= highZ) {
+                            continue; // Already processed above
+                        }
+                        tryProcessIndexed(indexed, bukkitPlayer);
                     }
                 }
             }
         }, 5, 5);
     }
 
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onNPCSpawn(NPCSpawnEvent event) {
+        indexNPC(event.getNPC());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onNPCDespawn(NPCDespawnEvent event) {
+        unindexNPC(event.getNPC());
+    }
+
+    @EventHandler
+    public void onNPCRemove(NPCRemoveEvent event) {
+        unindexNPC(event.getNPC());
+    }
+
     public final void tryProcessSinglePair(NPCTag npc, TriggerTrait triggerTrait, Player bukkitPlayer) {
         boolean exitedProximity = hasExitedProximityOf(bukkitPlayer, npc);
         if (!npc.getWorld().equals(bukkitPlayer.getWorld()) && exitedProximity) {
@@ -188,6 +339,9 @@ public class ProximityTrigger extends AbstractTrigger implements Listener {
     @Override
     public void onDisable() {
         Bukkit.getScheduler().cancelTask(taskID);
+        indexedNPCs.clear();
+        npcGrid.clear();
+        needsFullIndex = true;
     }
 
     /**
@@ -13,7 +13,10 @@ import com.denizenscript.denizen.scripts.containers.core.CommandScriptHelper;
 import com.denizenscript.denizen.scripts.containers.core.ItemScriptHelper;
 import com.denizenscript.denizen.utilities.*;
 import com.denizenscript.denizen.utilities.depends.Depends;
+import com.denizenscript.denizen.utilities.flags.PlayerFlagHandler;
+import com.denizenscript.denizen.utilities.flags.PlayerFlagIndex;
 import com.denizenscript.denizen.utilities.inventory.SlotHelper;
+import com.denizenscript.denizen.utilities.packets.PacketHandlerMetrics;
 import com.denizenscript.denizencore.DenizenCore;
 import com.denizenscript.denizencore.events.ScriptEvent;
 import com.denizenscript.denizencore.objects.Mechanism;
@@ -36,8 +39,7 @@ import com.denizenscript.denizencore.utilities.CoreUtilities;
 import com.denizenscript.denizencore.utilities.Deprecations;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizencore.utilities.text.StringHolder;
-import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import net.citizensnpcs.api.CitizensAPI;
 import net.citizensnpcs.api.npc.NPC;
 import net.citizensnpcs.api.npc.NPCRegistry;
@@ -1329,7 +1331,8 @@ public class ServerTagBase extends PseudoObjectTagBase<ServerTagBase> {
         // @returns ListTag(PlayerTag)
         // @description
         // Returns a list of all players (online or offline) with a specified flag set.
-        // Warning: this will cause the player flag cache to temporarily fill with ALL historical playerdata.
+        // Players that have never had the flag saved are skipped using the player flag index, so only players that might have the flag are loaded into the player flag cache.
+        // Uncached players are loaded in parallel on the player flag loader threads.
         // Can use "!<flag_name>" style to only return players *without* the flag.
         // -->
         tagProcessor.registerTag(ListTag.class, ElementTag.class, "players_flagged", (attribute, object, input) -> {
@@ -1341,7 +1344,20 @@ public class ServerTagBase extends PseudoObjectTagBase<ServerTagBase> {
                 want = false;
                 flag = flag.substring(1);
             }
+            Set<UUID> candidates = PlayerFlagIndex.getCandidates(flag);
+            List<UUID> toCheck = new ArrayList<>();
             for (UUID playerId : PlayerTag.getAllPlayers().values()) {
+                if (candidates != null && !candidates.contains(playerId)) { // NOTE: opti to avoid loading the flags of players that can't possibly have it
+                    if (!want) {
+                        flaggedPlayers.addObject(new PlayerTag(playerId));
+                    }
+                    continue;
+                }
+                toCheck.add(playerId);
+            }
+            // Start loading every uncached player on the loader pool, so the files are read in parallel rather than one at a time below
+            PlayerFlagHandler.prefetch(toCheck);
+            for (UUID playerId : toCheck) {
                 PlayerTag player = new PlayerTag(playerId);
                 if (player.getFlagTracker().hasFlag(flag) == want) {
                     flaggedPlayers.addObject(player);
@@ -1863,16 +1879,48 @@ public class ServerTagBase extends PseudoObjectTagBase<ServerTagBase> {
             MapTag worlds = new MapTag();
             for (Map.Entry<String, NotedAreaTracker.PerWorldSet> set : NotedAreaTracker.worlds.entrySet()) {
                 MapTag worldData = new MapTag();
-                worldData.putObject("global", new ListTag(set.getValue().globalSet.list, trackedArea -> trackedArea.area));
-                worldData.putObject("x50", areaNotesDebug(set.getValue().sets50));
-                worldData.putObject("x50_offset", areaNotesDebug(set.getValue().sets50_offset));
-                worldData.putObject("x200", areaNotesDebug(set.getValue().sets200));
-                worldData.putObject("x200_offset", areaNotesDebug(set.getValue().sets200_offset));
+                worldData.putObject("global", new ListTag(set.getValue().globalSet, trackedArea -> trackedArea.area));
+                for (NotedAreaTracker.AreaLevel level : set.getValue().levels) {
+                    if (level != null) {
+                        worldData.putObject("x" + (1 << level.level), areaNotesDebug(level));
+                    }
+                }
                 worlds.putObject(set.getKey(), worldData);
             }
             return worlds;
         });
 
+        // <--[tag]
+        // @attribute <server.packet_handler_stats>
+        // @returns MapTag
+        // @description
+        // Returns a map of internal outgoing packet handler names to a map of 'calls' (how many times the handler ran) and 'nanoseconds' (total network thread time spent in the handler).
+        // Handlers whose feature isn't in use don't run at all, and so aren't counted.
+        // Counts are since server start, or since the last use of <@link mechanism server.reset_packet_handler_stats>.
+        // This tag is strictly for internal debugging reasons.
+        // -->
+        tagProcessor.registerTag(MapTag.class, "packet_handler_stats", (attribute, object) -> {
+            MapTag result = new MapTag();
+            for (PacketHandlerMetrics.Entry entry : PacketHandlerMetrics.entries.values()) {
+                MapTag data = new MapTag();
+                data.putObject("calls", new ElementTag(entry.calls.sum()));
+                data.putObject("nanoseconds", new ElementTag(entry.nanos.sum()));
+                result.putObject(entry.name, data);
+            }
+            return result;
+        });
+
+        // <--[mechanism]
+        // @object server
+        // @name reset_packet_handler_stats
+        // @input None
+        // @description
+        // Resets the counters returned by <@link tag server.packet_handler_stats>.
+        // -->
+        tagProcessor.registerMechanism("reset_packet_handler_stats", false, (object, mechanism) -> {
+            PacketHandlerMetrics.reset();
+        });
+
         // <--[mechanism]
         // @object server
         // @name clean_flags
@@ -2454,10 +2502,10 @@ public class ServerTagBase extends PseudoObjectTagBase<ServerTagBase> {
         }, deprecatedVariants);
     }
 
-    private static MapTag areaNotesDebug(Int2ObjectOpenHashMap<NotedAreaTracker.AreaSet> set) {
+    private static MapTag areaNotesDebug(NotedAreaTracker.AreaLevel level) {
         MapTag out = new MapTag();
-        for (Int2ObjectMap.Entry<NotedAreaTracker.AreaSet> pair : set.int2ObjectEntrySet()) {
-            out.putObject(String.valueOf(pair.getIntKey()), new ListTag(pair.getValue().list, trackedArea -> trackedArea.area));
+        for (Long2ObjectMap.Entry<ArrayList<NotedAreaTracker.TrackedArea>> pair : level.cells.long2ObjectEntrySet()) {
+            out.putObject(String.valueOf(pair.getLongKey()), new ListTag(pair.getValue(), trackedArea -> trackedArea.area));
         }
         return out;
     }
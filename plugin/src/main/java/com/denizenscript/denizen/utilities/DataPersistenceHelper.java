@@ -2,23 +2,159 @@ package com.denizenscript.denizen.utilities;
 
 import com.denizenscript.denizen.Denizen;
 import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.utilities.flags.ItemFlagCache;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizencore.objects.ObjectFetcher;
 import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.ElementTag;
+import com.denizenscript.denizencore.objects.core.ListTag;
+import com.denizenscript.denizencore.objects.core.MapTag;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
+import com.denizenscript.denizencore.utilities.text.StringHolder;
 import org.bukkit.NamespacedKey;
 import org.bukkit.entity.Entity;
 import org.bukkit.persistence.PersistentDataAdapterContext;
 import org.bukkit.persistence.PersistentDataHolder;
 import org.bukkit.persistence.PersistentDataType;
 
+import java.io.*;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Helper class for PersistentDataContainers.
  */
 public class DataPersistenceHelper {
 
+    /**
+     * Marks a value as using the typed binary encoding. Legacy values are plain UTF-8 object strings, which can never start with a null byte.
+     */
+    public static final byte BINARY_MARKER = 0, BINARY_VERSION = 1;
+
+    public static final byte TYPE_ELEMENT = 1, TYPE_MAP = 2, TYPE_LIST = 3, TYPE_OBJECT = 4;
+
+    public static void writeString(DataOutputStream output, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    public static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeObject(DataOutputStream output, ObjectTag object) throws IOException {
+        if (object instanceof MapTag map) {
+            output.writeByte(TYPE_MAP);
+            output.writeInt(map.entrySet().size());
+            for (Map.Entry<StringHolder, ObjectTag> entry : map.entrySet()) {
+                writeString(output, entry.getKey().str);
+                writeObject(output, entry.getValue());
+            }
+        }
+        else if (object instanceof ListTag list) {
+            output.writeByte(TYPE_LIST);
+            output.writeInt(list.objectForms.size());
+            for (ObjectTag value : list.objectForms) {
+                writeObject(output, value);
+            }
+        }
+        else if (object instanceof ElementTag element) {
+            output.writeByte(TYPE_ELEMENT);
+            writeString(output, element.asString());
+        }
+        else {
+            output.writeByte(TYPE_OBJECT);
+            writeString(output, object.toString());
+        }
+    }
+
+    public static ObjectTag readObject(DataInputStream input) throws IOException {
+        byte type = input.readByte();
+        switch (type) {
+            case TYPE_MAP: {
+                int size = input.readInt();
+                MapTag map = new MapTag();
+                for (int i = 0; i < size; i++) {
+                    String key = readString(input);
+                    map.putObject(key, readObject(input));
+                }
+                return map;
+            }
+            case TYPE_LIST: {
+                int size = input.readInt();
+                ListTag list = new ListTag(size);
+                for (int i = 0; i < size; i++) {
+                    list.addObject(readObject(input));
+                }
+                return list;
+            }
+            case TYPE_ELEMENT:
+                return new ElementTag(readString(input));
+            case TYPE_OBJECT:
+                return ObjectFetcher.pickObjectFor(readString(input), CoreUtilities.noDebugContext);
+            default:
+                throw new IOException("Invalid typed object marker " + type);
+        }
+    }
+
+    public static byte[] encode(ObjectTag object) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeByte(BINARY_MARKER);
+            output.writeByte(BINARY_VERSION);
+            writeObject(output, object);
+            output.flush();
+            return bytes.toByteArray();
+        }
+        catch (IOException ex) {
+            throw new RuntimeException(ex); // Not possible for an in-memory stream
+        }
+    }
+
+    /**
+     * Decodes a stored value, in either the typed binary format or the legacy UTF-8 object string format.
+     */
+    public static ObjectTag decode(byte[] data) {
+        if (data.length < 2 || data[0] != BINARY_MARKER) {
+            return ObjectFetcher.pickObjectFor(new String(data, StandardCharsets.UTF_8), CoreUtilities.noDebugContext);
+        }
+        if (data[1] != BINARY_VERSION) {
+            throw new IllegalArgumentException("Unsupported typed object version " + data[1]);
+        }
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(data, 2, data.length - 2));
+            return readObject(input);
+        }
+        catch (IOException ex) {
+            throw new IllegalArgumentException("Invalid typed object data", ex);
+        }
+    }
+
+    public static final int MAX_DECODED = 512;
+
+    /**
+     * Cache of decoded values by the content of the raw stored bytes, least recently used first.
+     * Keyed by content rather than array identity, as some stored forms (eg legacy string values) produce a new array on every read.
+     * Cached values are shared, so are never handed out directly.
+     */
+    public static final LinkedHashMap<ByteBuffer, SoftReference<ObjectTag>> decodedCache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, SoftReference<ObjectTag>> eldest) {
+            return size() > MAX_DECODED;
+        }
+    };
+
     public static class DenizenObjectType implements PersistentDataType<byte[], ObjectTag> {
         @Override
         public Class<byte[]> getPrimitiveType() {
@@ -32,12 +168,12 @@ public class DataPersistenceHelper {
 
         @Override
         public byte[] toPrimitive(ObjectTag complex, PersistentDataAdapterContext context) {
-            return complex.toString().getBytes(StandardCharsets.UTF_8);
+            return encode(complex);
         }
 
         @Override
         public ObjectTag fromPrimitive(byte[] primitive, PersistentDataAdapterContext context) {
-            return ObjectFetcher.pickObjectFor(new String(primitive, StandardCharsets.UTF_8), CoreUtilities.noDebugContext);
+            return decode(primitive);
         }
     }
 
@@ -57,11 +193,28 @@ public class DataPersistenceHelper {
 
     public static ObjectTag getDenizenKey(PersistentDataHolder holder, String keyName) {
         try {
-            String str = NMSHandler.instance.containerGetString(holder.getPersistentDataContainer(), "denizen:" + keyName);
-            if (str == null) {
+            byte[] data = NMSHandler.instance.containerGetBytes(holder.getPersistentDataContainer(), "denizen:" + keyName);
+            if (data == null) {
                 return null;
             }
-            return ObjectFetcher.pickObjectFor(str, CoreUtilities.noDebugContext);
+            ByteBuffer key = ByteBuffer.wrap(data);
+            ObjectTag result;
+            synchronized (decodedCache) {
+                SoftReference<ObjectTag> reference = decodedCache.get(key);
+                result = reference == null ? null : reference.get();
+            }
+            if (result == null) {
+                result = decode(data);
+                if (result == null) {
+                    return null;
+                }
+                synchronized (decodedCache) {
+                    // Copy the key, as the stored array belongs to the container
+                    decodedCache.put(ByteBuffer.wrap(data.clone()), new SoftReference<>(result));
+                }
+            }
+            // The cached instance is shared by every reader of the same data, so callers only ever get a (deep) copy
+            return ItemFlagCache.deepCopy(result);
         }
         catch (IllegalArgumentException ex) {
             if (holder instanceof Entity) {
@@ -4,7 +4,8 @@ import com.denizenscript.denizen.objects.AreaContainmentObject;
 import com.denizenscript.denizen.objects.CuboidTag;
 import com.denizenscript.denizen.objects.LocationTag;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -12,12 +13,11 @@ import java.util.function.Consumer;
 
 /**
  * Special helper class that tracks noted areas in a way that allows for very rapid "get all areas containing" checks, within the confines of the scales that Minecraft normally operates at.
- * This divides all notes first into one distinct set per world, and then within worlds it will sub-divide into 5 sets:
- * The "global" set, a 50x50 set, a 200x200 set, and both those sets again but with a half-width offset.
- * Any area that fits within a 50x50 grid gets added to the 50x50 grid... any area below 50x50 in scale that doesn't fit the grid will likely fit the offset grid instead.
- * If the 50x50 grids can't be fit, the 200x200 grids are tried. If those fail, the global set is used.
- * Note that vertical position (Y coordinate) is entirely ignored.
- * Because most noted areas are likely to fit into one of these grids, any lookups can confine themselves to only looking at the Areas defined within the same grid cell.
+ * This divides all notes first into one distinct set per world, and then within worlds it uses a hierarchical 3D spatial hash:
+ * A stack of cube grids, each level having cells twice as wide as the level below (16, 32, 64, ... blocks), plus a "global" set for areas too large for even the biggest level.
+ * Every area is placed on the smallest level where its horizontal size fits within one cell width, meaning it overlaps at most 2 cells on each horizontal axis.
+ * Tall areas may additionally span up to 8 vertical cells on that level before being pushed up to a coarser level.
+ * Cells are keyed by exact packed coordinates, so a lookup only needs one map lookup per non-empty level, and only ever sees areas that are actually nearby in all 3 dimensions.
  * This uses multiple layers of imperfect checks before doing the final exact-containment check, as the imperfect checks are significantly faster to run, especially for complex area shapes like polygons.
  */
 public class NotedAreaTracker {
@@ -34,6 +34,16 @@ public class NotedAreaTracker {
             highZ = high.getBlockZ();
         }
 
+        public TrackedArea(AreaContainmentObject area, int lowX, int lowY, int lowZ, int highX, int highY, int highZ) {
+            this.area = area;
+            this.lowX = lowX;
+            this.lowY = lowY;
+            this.lowZ = lowZ;
+            this.highX = highX;
+            this.highY = highY;
+            this.highZ = highZ;
+        }
+
         public TrackedArea(AreaContainmentObject area) {
             CuboidTag boundary = area.getCuboidBoundary();
             LocationTag low = boundary.getLow(0), high = boundary.getHigh(0);
@@ -74,83 +84,162 @@ public class NotedAreaTracker {
         }
     }
 
-    public static final class AreaSet {
+    /**
+     * The smallest level, as a bit shift (ie cells of 16x16x16 blocks).
+     */
+    public static final int MIN_LEVEL = 4;
 
-        public AreaSet(int type, int index) {
-            this.type = type;
-            this.index = index;
-        }
+    /**
+     * The largest level, as a bit shift (ie cells of 16,777,216 blocks wide). Anything larger goes into the global set.
+     */
+    public static final int MAX_LEVEL = 24;
 
-        public final ArrayList<TrackedArea> list = new ArrayList<>();
+    /**
+     * How many vertical cells an area may span on a level before it gets pushed up to the next level.
+     */
+    public static final int MAX_VERTICAL_CELLS = 8;
 
-        public final int index;
+    /**
+     * Cell coordinates are clamped to these limits to allow for exact packing into a single long key.
+     * Clamping is monotonic, so any point within an area always lands on a cell that the area was added to, even when out of bounds.
+     */
+    public static final int HORIZONTAL_CELL_LIMIT = (1 << 25) - 1, VERTICAL_CELL_LIMIT = (1 << 11) - 1;
 
-        public final int type;
+    public static int cellX(int coordinate, int level) {
+        return Math.max(-HORIZONTAL_CELL_LIMIT, Math.min(HORIZONTAL_CELL_LIMIT, coordinate >> level));
+    }
 
-        public boolean isEmpty() {
-            return list.isEmpty();
-        }
+    public static int cellY(int coordinate, int level) {
+        return Math.max(-VERTICAL_CELL_LIMIT, Math.min(VERTICAL_CELL_LIMIT, coordinate >> level));
     }
 
-    public static final class PerWorldSet {
+    /**
+     * Packs already-clamped cell coordinates into an exact unique key: 26 bits X, 26 bits Z, 12 bits Y.
+     */
+    public static long cellKey(int cellX, int cellY, int cellZ) {
+        return ((long) (cellX & 0x3FFFFFF) << 38) | ((long) (cellZ & 0x3FFFFFF) << 12) | (cellY & 0xFFF);
+    }
 
-        public final AreaSet globalSet = new AreaSet(0, 0);
+    /**
+     * Returns the level (bit shift) an area belongs on, or -1 if it belongs in the global set.
+     */
+    public static int levelFor(TrackedArea area) {
+        int horizontalSize = Math.max(area.highX - area.lowX, area.highZ - area.lowZ);
+        if (horizontalSize < 0) {
+            return -1;
+        }
+        for (int level = MIN_LEVEL; level <= MAX_LEVEL; level++) {
+            if ((horizontalSize >> level) == 0 && cellY(area.highY, level) - cellY(area.lowY, level) < MAX_VERTICAL_CELLS) {
+                return level;
+            }
+        }
+        return -1;
+    }
 
-        public final Int2ObjectOpenHashMap<AreaSet> sets50 = new Int2ObjectOpenHashMap<>(), sets50_offset = new Int2ObjectOpenHashMap<>(), sets200 = new Int2ObjectOpenHashMap<>(), sets200_offset = new Int2ObjectOpenHashMap<>();
+    public static final class AreaLevel {
 
-        public static boolean doesFit(TrackedArea area, int scale, int offset) {
-            int lowX = (area.lowX + offset) / scale, lowZ = (area.lowZ + offset) / scale, highX = (area.highX + offset) / scale, highZ = (area.highZ + offset) / scale;
-            return lowX == highX && lowZ == highZ;
+        public AreaLevel(int level) {
+            this.level = level;
         }
 
-        public static int getIndex(int x, int z, int scale, int offset) {
-            // Index is unique "enough", these lists don't need to be perfect, and an int key is significantly faster than constructing an exact coordinate object.
-            int cleanX = (x + offset) / scale, cleanZ = (z + offset) / scale;
-            return cleanX + (cleanZ << 16);
+        public final int level;
+
+        public final Long2ObjectOpenHashMap<ArrayList<TrackedArea>> cells = new Long2ObjectOpenHashMap<>();
+
+        public int areaCount = 0;
+
+        public ArrayList<TrackedArea> getCellFor(int x, int y, int z) {
+            return cells.get(cellKey(cellX(x, level), cellY(y, level), cellX(z, level)));
         }
+    }
+
+    public static final class PerWorldSet {
+
+        public final ArrayList<TrackedArea> globalSet = new ArrayList<>();
+
+        public final AreaLevel[] levels = new AreaLevel[MAX_LEVEL + 1];
 
-        public AreaSet getOrGenSetFor(Int2ObjectOpenHashMap<AreaSet> sets, int type, TrackedArea area, int scale, int offset, boolean generate) {
-            int index = getIndex(area.lowX, area.lowZ, scale, offset);
-            AreaSet set = sets.get(index);
-            if (set == null && generate) {
-                set = new AreaSet(type, index);
-                sets.put(index, set);
+        public boolean isEmpty() {
+            if (!globalSet.isEmpty()) {
+                return false;
             }
-            return set;
+            for (AreaLevel level : levels) {
+                if (level != null) {
+                    return false;
+                }
+            }
+            return true;
         }
 
-        public AreaSet bestSetFor(TrackedArea area, boolean generate) {
-            if (doesFit(area, 50, 0)) {
-                return getOrGenSetFor(sets50, 1, area, 50, 0, generate);
-            }
-            else if (doesFit(area, 50, 25)) {
-                return getOrGenSetFor(sets50_offset, 2, area, 50, 25, generate);
+        public void add(TrackedArea area) {
+            int level = levelFor(area);
+            if (level == -1) {
+                globalSet.add(area);
+                return;
             }
-            else if (doesFit(area, 200, 0)) {
-                return getOrGenSetFor(sets200, 3, area, 200, 0, generate);
+            AreaLevel areaLevel = levels[level];
+            if (areaLevel == null) {
+                areaLevel = new AreaLevel(level);
+                levels[level] = areaLevel;
             }
-            else if (doesFit(area, 200, 100)) {
-                return getOrGenSetFor(sets200_offset, 4, area, 200, 100, generate);
+            areaLevel.areaCount++;
+            int lowX = cellX(area.lowX, level), lowY = cellY(area.lowY, level), lowZ = cellX(area.lowZ, level);
+            int highX = cellX(area.highX, level), highY = cellY(area.highY, level), highZ = cellX(area.highZ, level);
+            for (int x = lowX; x <= highX; x++) {
+                for (int y = lowY; y <= highY; y++) {
+                    for (int z = lowZ; z <= highZ; z++) {
+                        long key = cellKey(x, y, z);
+                        ArrayList<TrackedArea> cell = areaLevel.cells.get(key);
+                        if (cell == null) {
+                            cell = new ArrayList<>(2);
+                            areaLevel.cells.put(key, cell);
+                        }
+                        cell.add(area);
+                    }
+                }
             }
-            return globalSet;
-        }
-
-        public boolean isEmpty() {
-            return globalSet.isEmpty() && sets50.isEmpty() && sets50_offset.isEmpty() && sets200.isEmpty() && sets200_offset.isEmpty();
         }
 
-        public void remove(AreaSet set) {
-            switch (set.type) {
-                case 1 -> sets50.remove(set.index);
-                case 2 -> sets50_offset.remove(set.index);
-                case 3 -> sets200.remove(set.index);
-                case 4 -> sets200_offset.remove(set.index);
+        public void remove(TrackedArea area) {
+            int level = levelFor(area);
+            if (level == -1) {
+                globalSet.remove(area);
+                return;
+            }
+            AreaLevel areaLevel = levels[level];
+            if (areaLevel == null) {
+                return;
+            }
+            boolean removed = false;
+            int lowX = cellX(area.lowX, level), lowY = cellY(area.lowY, level), lowZ = cellX(area.lowZ, level);
+            int highX = cellX(area.highX, level), highY = cellY(area.highY, level), highZ = cellX(area.highZ, level);
+            for (int x = lowX; x <= highX; x++) {
+                for (int y = lowY; y <= highY; y++) {
+                    for (int z = lowZ; z <= highZ; z++) {
+                        long key = cellKey(x, y, z);
+                        ArrayList<TrackedArea> cell = areaLevel.cells.get(key);
+                        if (cell != null && cell.remove(area)) {
+                            removed = true;
+                            if (cell.isEmpty()) {
+                                areaLevel.cells.remove(key);
+                            }
+                        }
+                    }
+                }
+            }
+            if (removed && --areaLevel.areaCount <= 0) {
+                levels[level] = null;
             }
         }
     }
 
     public static HashMap<String, PerWorldSet> worlds = new HashMap<>();
 
+    /**
+     * Incremented any time an area is added or removed, to allow invalidating any cached lookup results (see {@link CachedCell}).
+     */
+    public static long version = 0;
+
     /**
      * Call to add an area into the tracker.
      */
@@ -161,9 +250,8 @@ public class NotedAreaTracker {
             set = new PerWorldSet();
             worlds.put(worldName, set);
         }
-        TrackedArea tracker = new TrackedArea(area);
-        AreaSet areaSet = set.bestSetFor(tracker, true);
-        areaSet.list.add(tracker);
+        set.add(new TrackedArea(area));
+        version++;
     }
 
     /**
@@ -175,25 +263,18 @@ public class NotedAreaTracker {
         if (set == null) {
             return;
         }
-        TrackedArea tracker = new TrackedArea(area);
-        AreaSet areaSet = set.bestSetFor(tracker, false);
-        if (areaSet == null) {
-            return;
-        }
-        areaSet.list.remove(tracker);
-        if (areaSet.isEmpty()) {
-            set.remove(areaSet);
-            if (set.isEmpty()) {
-                worlds.remove(worldName);
-            }
+        set.remove(new TrackedArea(area));
+        version++;
+        if (set.isEmpty()) {
+            worlds.remove(worldName);
         }
     }
 
-    public static void forEachAreaInSetThatContains(int x, int y, int z, LocationTag location, AreaSet set, Consumer<AreaContainmentObject> action) {
+    public static void forEachAreaInSetThatContains(int x, int y, int z, LocationTag location, ArrayList<TrackedArea> set, Consumer<AreaContainmentObject> action) {
         if (set == null) {
             return;
         }
-        for (TrackedArea area : set.list) {
+        for (TrackedArea area : set) {
             if (area.mightContain(x, y, z) && area.area.doesContainLocation(location)) {
                 action.accept(area.area);
             }
@@ -210,65 +291,157 @@ public class NotedAreaTracker {
             return;
         }
         forEachAreaInSetThatContains(x, y, z, location, set.globalSet, action);
-        forEachAreaInSetThatContains(x, y, z, location, set.sets50.get(PerWorldSet.getIndex(x, z, 50, 0)), action);
-        forEachAreaInSetThatContains(x, y, z, location, set.sets50_offset.get(PerWorldSet.getIndex(x, z, 50, 25)), action);
-        forEachAreaInSetThatContains(x, y, z, location, set.sets200.get(PerWorldSet.getIndex(x, z, 200, 0)), action);
-        forEachAreaInSetThatContains(x, y, z, location, set.sets200_offset.get(PerWorldSet.getIndex(x, z, 200, 100)), action);
+        for (AreaLevel level : set.levels) {
+            if (level != null) {
+                forEachAreaInSetThatContains(x, y, z, location, level.getCellFor(x, y, z), action);
+            }
+        }
     }
 
-    public static void forEachAreaInSetThatIntersects(TrackedArea area2, AreaSet set, Consumer<AreaContainmentObject> action) {
-        if (set == null) {
+    /**
+     * Runs the action for each area in the cell that intersects the given area, only if the given cell key is the area's reference cell for this intersection check.
+     * The reference cell is the cell holding the lowest corner of the overlap between the two areas, which prevents areas that span multiple cells from being reported more than once.
+     */
+    public static void forEachAreaInCellThatIntersects(TrackedArea area2, AreaLevel level, long key, ArrayList<TrackedArea> cell, Consumer<TrackedArea> action) {
+        if (cell == null) {
             return;
         }
-        for (TrackedArea area : set.list) {
+        for (TrackedArea area : cell) {
             if (area.mightIntersect(area2)) {
-                action.accept(area.area);
+                long referenceKey = cellKey(cellX(Math.max(area.lowX, area2.lowX), level.level), cellY(Math.max(area.lowY, area2.lowY), level.level), cellX(Math.max(area.lowZ, area2.lowZ), level.level));
+                if (referenceKey == key) {
+                    action.accept(area);
+                }
             }
         }
     }
 
     public static void forEachAreaThatIntersects(LocationTag min, LocationTag max, Consumer<AreaContainmentObject> action) {
         CuboidTag.LocationPair pair = new CuboidTag.LocationPair(min, max);
-        min = pair.low;
-        max = pair.high;
-        TrackedArea area2 = new TrackedArea(null, min, max);
-        PerWorldSet set = worlds.get(CoreUtilities.toLowerCase(min.getWorldName()));
+        PerWorldSet set = worlds.get(CoreUtilities.toLowerCase(pair.low.getWorldName()));
         if (set == null) {
             return;
         }
-        forEachAreaInSetThatIntersects(area2, set.globalSet, action);
-        // Loose heuristic for when a regional-indexed loop is probably counterproductive - total looped regions exceeds 10x actual total areas available
-        if (pair.xDistance() * pair.zDistance() / (50 * 50) > (set.sets50.size() + set.sets50_offset.size()) * 10) {
-            for (AreaSet areaSet : set.sets50.values()) {
-                forEachAreaInSetThatIntersects(area2, areaSet, action);
-            }
-            for (AreaSet areaSet : set.sets50_offset.values()) {
-                forEachAreaInSetThatIntersects(area2, areaSet, action);
+        forEachTrackedAreaThatIntersects(set, new TrackedArea(null, pair.low, pair.high), (area) -> action.accept(area.area));
+    }
+
+    public static void forEachTrackedAreaThatIntersects(PerWorldSet set, TrackedArea area2, Consumer<TrackedArea> action) {
+        for (TrackedArea area : set.globalSet) {
+            if (area.mightIntersect(area2)) {
+                action.accept(area);
             }
         }
-        else {
-            for (int x = area2.lowX - 50; x <= area2.highX + 50; x += 50) {
-                for (int z = area2.lowZ - 50; z <= area2.highZ + 50; z += 50) {
-                    forEachAreaInSetThatIntersects(area2, set.sets50.get(PerWorldSet.getIndex(x, z, 50, 0)), action);
-                    forEachAreaInSetThatIntersects(area2, set.sets50_offset.get(PerWorldSet.getIndex(x, z, 50, 25)), action);
+        for (AreaLevel level : set.levels) {
+            if (level == null) {
+                continue;
+            }
+            int lowX = cellX(area2.lowX, level.level), lowY = cellY(area2.lowY, level.level), lowZ = cellX(area2.lowZ, level.level);
+            int highX = cellX(area2.highX, level.level), highY = cellY(area2.highY, level.level), highZ = cellX(area2.highZ, level.level);
+            long cellCount = (long) (highX - lowX + 1) * (highY - lowY + 1) * (highZ - lowZ + 1);
+            // When the lookup region covers more cells than actually exist in this level, it's faster to just loop over the existing cells
+            if (cellCount > level.cells.size()) {
+                for (Long2ObjectMap.Entry<ArrayList<TrackedArea>> cell : level.cells.long2ObjectEntrySet()) {
+                    forEachAreaInCellThatIntersects(area2, level, cell.getLongKey(), cell.getValue(), action);
                 }
             }
+            else {
+                for (int x = lowX; x <= highX; x++) {
+                    for (int y = lowY; y <= highY; y++) {
+                        for (int z = lowZ; z <= highZ; z++) {
+                            long key = cellKey(x, y, z);
+                            forEachAreaInCellThatIntersects(area2, level, key, level.cells.get(key), action);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The size of a cached lookup cell, as a bit shift (ie 16x16x16 blocks).
+     */
+    public static final int CACHED_CELL_LEVEL = MIN_LEVEL;
+
+    /**
+     * A cached pre-sorted lookup result for a single grid cell, used to avoid repeated full lookups for something that moves around frequently (like a player).
+     * Areas are sorted into ones that are known to contain the entire cell, and ones that cross the cell's boundaries and so still need an exact check per-location.
+     * Areas that are known not to touch the cell at all are excluded.
+     * A cell is immutable once built, and is only valid for as long as {@link NotedAreaTracker#version} hasn't changed.
+     */
+    public static final class CachedCell {
+
+        public CachedCell(String world, int cellX, int cellY, int cellZ) {
+            this.world = world;
+            this.cellX = cellX;
+            this.cellY = cellY;
+            this.cellZ = cellZ;
+            this.version = NotedAreaTracker.version;
+        }
+
+        public final String world;
+
+        public final int cellX, cellY, cellZ;
+
+        public final long version;
+
+        public final ArrayList<AreaContainmentObject> fullyContaining = new ArrayList<>();
+
+        public final ArrayList<TrackedArea> boundary = new ArrayList<>();
+
+        public boolean isValidFor(String world, int x, int y, int z) {
+            return version == NotedAreaTracker.version && cellX == (x >> CACHED_CELL_LEVEL) && cellY == (y >> CACHED_CELL_LEVEL) && cellZ == (z >> CACHED_CELL_LEVEL) && this.world.equals(world);
         }
-        if (pair.xDistance() * pair.zDistance() / (288 * 200) > (set.sets200.size() + set.sets200_offset.size()) * 10) {
-            for (AreaSet areaSet : set.sets200.values()) {
-                forEachAreaInSetThatIntersects(area2, areaSet, action);
+
+        /**
+         * Call to run an action over every Area that contains a given location, which must be within this cell.
+         */
+        public void forEachAreaThatContains(LocationTag location, Consumer<AreaContainmentObject> action) {
+            for (AreaContainmentObject area : fullyContaining) {
+                action.accept(area);
             }
-            for (AreaSet areaSet : set.sets200_offset.values()) {
-                forEachAreaInSetThatIntersects(area2, areaSet, action);
+            if (!boundary.isEmpty()) {
+                forEachAreaInSetThatContains(location.getBlockX(), location.getBlockY(), location.getBlockZ(), location, boundary, action);
             }
         }
-        else {
-            for (int x = area2.lowX - 200; x <= area2.highX + 200; x += 200) {
-                for (int z = area2.lowZ - 200; z <= area2.highZ + 200; z += 200) {
-                    forEachAreaInSetThatIntersects(area2, set.sets200.get(PerWorldSet.getIndex(x, z, 200, 0)), action);
-                    forEachAreaInSetThatIntersects(area2, set.sets200_offset.get(PerWorldSet.getIndex(x, z, 200, 100)), action);
+    }
+
+    /**
+     * Returns a cached lookup cell for the given location. If the previous cell is still valid for the location, it will be returned as-is.
+     */
+    public static CachedCell getCachedCell(LocationTag location, CachedCell previous) {
+        String world = location.getWorldName();
+        int x = location.getBlockX(), y = location.getBlockY(), z = location.getBlockZ();
+        if (previous != null && previous.isValidFor(world, x, y, z)) {
+            return previous;
+        }
+        CachedCell cell = new CachedCell(world, x >> CACHED_CELL_LEVEL, y >> CACHED_CELL_LEVEL, z >> CACHED_CELL_LEVEL);
+        PerWorldSet set = worlds.get(CoreUtilities.toLowerCase(world));
+        if (set == null) {
+            return cell;
+        }
+        int size = (1 << CACHED_CELL_LEVEL) - 1;
+        int lowX = cell.cellX << CACHED_CELL_LEVEL, lowY = cell.cellY << CACHED_CELL_LEVEL, lowZ = cell.cellZ << CACHED_CELL_LEVEL;
+        TrackedArea cellArea = new TrackedArea(null, lowX, lowY, lowZ, lowX + size, lowY + size, lowZ + size);
+        forEachTrackedAreaThatIntersects(set, cellArea, (area) -> {
+            if (!(area.area instanceof CuboidTag cuboid)) {
+                cell.boundary.add(area);
+                return;
+            }
+            boolean touches = false;
+            for (CuboidTag.LocationPair pair : cuboid.pairs) {
+                TrackedArea pairArea = new TrackedArea(null, pair.low, pair.high);
+                if (pairArea.mightIntersect(cellArea)) {
+                    touches = true;
+                    if (pairArea.mightContain(cellArea.lowX, cellArea.lowY, cellArea.lowZ) && pairArea.mightContain(cellArea.highX, cellArea.highY, cellArea.highZ)) {
+                        cell.fullyContaining.add(cuboid);
+                        return;
+                    }
                 }
             }
-        }
+            if (touches) {
+                cell.boundary.add(area);
+            }
+        });
+        return cell;
     }
 }
@@ -4,6 +4,7 @@ import com.denizenscript.denizen.Denizen;
 import com.denizenscript.denizen.objects.PolygonTag;
 import com.denizenscript.denizen.scripts.commands.entity.RemoveCommand;
 import com.denizenscript.denizen.tags.core.CustomColorTagBase;
+import com.denizenscript.denizen.utilities.flags.BinaryFlagFileHelper;
 import com.denizenscript.denizen.utilities.flags.PlayerFlagHandler;
 import com.denizenscript.denizencore.utilities.CoreConfiguration;
 import com.denizenscript.denizencore.objects.core.DurationTag;
@@ -133,6 +134,8 @@ public class Settings {
         PlayerFlagHandler.cacheTimeoutSeconds = config.getLong("Saves.Offline player cache timeout", 300);
         PlayerFlagHandler.asyncPreload = config.getBoolean("Saves.Load async on login", true);
         PlayerFlagHandler.saveOnlyWhenWorldSaveOn = config.getBoolean("Saves.Only save if world save is on", false);
+        PlayerFlagHandler.loaderThreads = config.getInt("Saves.Async loader threads", 2);
+        BinaryFlagFileHelper.enabled = config.getBoolean("Saves.Binary flag files", false);
         RemoveCommand.alwaysWarnOnMassRemove = config.getBoolean("Commands.Remove.Always warn on mass delete", false);
         ConfigurationSection colorSection = config.getConfigurationSection("Colors");
         if (colorSection != null) {
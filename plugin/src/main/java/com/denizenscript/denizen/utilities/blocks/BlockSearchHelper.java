@@ -0,0 +1,134 @@
+package com.denizenscript.denizen.utilities.blocks;
+
+import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.objects.LocationTag;
+import com.denizenscript.denizen.objects.MaterialTag;
+import com.denizenscript.denizen.utilities.Settings;
+import com.denizenscript.denizencore.tags.TagContext;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Helper for radius-based block searches (eg 'LocationTag.find_blocks'), which works one chunk section at a time.
+ * When the matcher only depends on block material, sections whose palette can't contain a matching material are skipped entirely,
+ * and the remaining blocks are matched by material directly, without building a LocationTag for every block.
+ */
+public class BlockSearchHelper {
+
+    public static final Predicate<Material> MATCH_ALL = (material) -> true;
+
+    public static final Map<String, Predicate<Material>> materialMatcherCache = new ConcurrentHashMap<>();
+
+    /**
+     * Returns a material predicate equivalent to the given location matcher, or null if the matcher needs more than the block's material (eg block flags, areas, or block properties).
+     */
+    public static Predicate<Material> getMaterialMatcher(String matcher) {
+        if (matcher == null) {
+            return MATCH_ALL;
+        }
+        String matcherLow = CoreUtilities.toLowerCase(matcher);
+        if (matcherLow.equals("location")) {
+            return MATCH_ALL;
+        }
+        if (matcherLow.contains("block_flagged:") || matcherLow.contains("location_in:") || matcherLow.contains("[")) {
+            return null;
+        }
+        // Matchers with prefixes (like 'vanilla_tagged:' or 'material_flagged:') depend on data that can change, so are rebuilt each time rather than cached
+        boolean cache = !matcherLow.contains(":");
+        Predicate<Material> result = cache ? materialMatcherCache.get(matcher) : null;
+        if (result != null) {
+            return result;
+        }
+        boolean[] matches = new boolean[Material.values().length];
+        for (Material material : Material.values()) {
+            if (material.isBlock() && !material.isLegacy() && new MaterialTag(material).tryAdvancedMatcher(matcher, CoreUtilities.noDebugContext)) {
+                matches[material.ordinal()] = true;
+            }
+        }
+        result = (material) -> matches[material.ordinal()];
+        if (cache) {
+            if (materialMatcherCache.size() > 1024) {
+                materialMatcherCache.clear();
+            }
+            materialMatcherCache.put(matcher, result);
+        }
+        return result;
+    }
+
+    /**
+     * Finds all blocks whose center is within the radius of the given location, and that match the matcher (if any).
+     * Stops once the block tag limit of blocks has been checked.
+     */
+    public static void findBlocks(LocationTag center, double radius, String matcher, TagContext context, List<LocationTag> output) {
+        World world = center.getWorld();
+        double centerX = center.getX(), centerY = center.getY(), centerZ = center.getZ();
+        double radiusSquared = radius * radius;
+        int lowX = (int) Math.floor(centerX - radius), highX = (int) Math.floor(centerX + radius);
+        int lowZ = (int) Math.floor(centerZ - radius), highZ = (int) Math.floor(centerZ + radius);
+        int lowY = Math.max(world.getMinHeight(), (int) Math.floor(centerY - radius)), highY = Math.min(world.getMaxHeight() - 1, (int) Math.floor(centerY + radius));
+        Predicate<Material> materialMatcher = getMaterialMatcher(matcher);
+        boolean readBlocks = materialMatcher != MATCH_ALL;
+        int max = Settings.blockTagsMaxBlocks();
+        int checked = 0;
+        for (int chunkX = lowX >> 4; chunkX <= highX >> 4; chunkX++) {
+            int xStart = Math.max(lowX, chunkX << 4), xEnd = Math.min(highX, (chunkX << 4) + 15);
+            for (int chunkZ = lowZ >> 4; chunkZ <= highZ >> 4; chunkZ++) {
+                int zStart = Math.max(lowZ, chunkZ << 4), zEnd = Math.min(highZ, (chunkZ << 4) + 15);
+                Chunk chunk = readBlocks ? world.getChunkAt(chunkX, chunkZ) : null;
+                for (int sectionY = lowY >> 4; sectionY <= highY >> 4; sectionY++) {
+                    int yStart = Math.max(lowY, sectionY << 4), yEnd = Math.min(highY, (sectionY << 4) + 15);
+                    // Skip sections that don't reach into the sphere at all
+                    double nearX = Math.max(xStart + 0.5, Math.min(centerX, xEnd + 0.5)) - centerX;
+                    double nearY = Math.max(yStart + 0.5, Math.min(centerY, yEnd + 0.5)) - centerY;
+                    double nearZ = Math.max(zStart + 0.5, Math.min(centerZ, zEnd + 0.5)) - centerZ;
+                    if (nearX * nearX + nearY * nearY + nearZ * nearZ >= radiusSquared) {
+                        continue;
+                    }
+                    if (readBlocks && materialMatcher != null && !NMSHandler.chunkHelper.sectionMayContain(chunk, sectionY, materialMatcher)) {
+                        continue;
+                    }
+                    for (int x = xStart; x <= xEnd; x++) {
+                        double dx = x + 0.5 - centerX;
+                        for (int y = yStart; y <= yEnd; y++) {
+                            double dy = y + 0.5 - centerY;
+                            double distanceXY = dx * dx + dy * dy;
+                            if (distanceXY >= radiusSquared) {
+                                continue;
+                            }
+                            for (int z = zStart; z <= zEnd; z++) {
+                                double dz = z + 0.5 - centerZ;
+                                if (distanceXY + dz * dz >= radiusSquared) {
+                                    continue;
+                                }
+                                if (++checked > max) {
+                                    return;
+                                }
+                                if (materialMatcher == MATCH_ALL) {
+                                    output.add(new LocationTag(world, x, y, z));
+                                }
+                                else if (materialMatcher != null) {
+                                    if (materialMatcher.test(world.getType(x, y, z))) {
+                                        output.add(new LocationTag(world, x, y, z));
+                                    }
+                                }
+                                else {
+                                    LocationTag location = new LocationTag(world, x, y, z);
+                                    if (location.tryAdvancedMatcher(matcher, context)) {
+                                        output.add(location);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
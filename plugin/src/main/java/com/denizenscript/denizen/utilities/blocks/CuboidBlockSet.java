@@ -3,8 +3,8 @@ package com.denizenscript.denizen.utilities.blocks;
 import com.denizenscript.denizen.Denizen;
 import com.denizenscript.denizen.nms.NMSHandler;
 import com.denizenscript.denizen.nms.NMSVersion;
+import com.denizenscript.denizen.nms.util.jnbt.CompoundTag;
 import com.denizenscript.denizen.objects.*;
-import com.denizenscript.denizen.scripts.commands.world.SchematicCommand;
 import com.denizenscript.denizen.utilities.Utilities;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizencore.objects.Mechanism;
@@ -12,10 +12,15 @@ import com.denizenscript.denizencore.objects.core.ElementTag;
 import com.denizenscript.denizencore.objects.core.ListTag;
 import com.denizenscript.denizencore.objects.core.MapTag;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
 import org.bukkit.scheduler.BukkitRunnable;
@@ -24,7 +29,14 @@ import org.bukkit.util.Vector;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
-
+import java.util.function.IntUnaryOperator;
+import java.util.function.UnaryOperator;
+
+/**
+ * A cuboid set of blocks, stored as a palette of distinct block data plus one palette index per block.
+ * Tile entity data and flags are rare, so they're kept in sparse maps keyed by block index rather than on every block.
+ * Block indices are ordered as 'z + y * z_height + x * z_height * y_length'.
+ */
 public class CuboidBlockSet implements BlockSet {
 
     public static FullBlockData STRUCTURE_VOID = new FullBlockData(Material.STRUCTURE_VOID.createBlockData());
@@ -50,7 +62,7 @@ public class CuboidBlockSet implements BlockSet {
         center_x = (int) (center.getX() - low.getX());
         center_y = (int) (center.getY() - low.getY());
         center_z = (int) (center.getZ() - low.getZ());
-        blocks = new FullBlockData[x_width * y_length * z_height];
+        initStorage();
         int index = 0;
         double lowX = low.getBlockX() + 0.5, lowY = low.getBlockY() + 0.5, lowZ = low.getBlockZ() + 0.5;
         Location refLoc = low.clone();
@@ -64,7 +76,7 @@ public class CuboidBlockSet implements BlockSet {
                     if (block != STRUCTURE_VOID && mask != null && !mask.contains(block.data.getMaterial())) {
                         block = STRUCTURE_VOID;
                     }
-                    blocks[index++] = block;
+                    setBlock(index++, block);
                 }
             }
         }
@@ -88,44 +100,37 @@ public class CuboidBlockSet implements BlockSet {
         center_x = (int) (center.getX() - low.getX());
         center_y = (int) (center.getY() - low.getY());
         center_z = (int) (center.getZ() - low.getZ());
-        final long goal = (long)x_width * y_length * z_height;
-        blocks = new FullBlockData[x_width * y_length * z_height];
-        double lowX = low.getBlockX() + 0.5, lowY = low.getBlockY() + 0.5, lowZ = low.getBlockZ() + 0.5;
-        Location refLoc = low.clone();
+        initStorage();
+        CuboidCaptureJob job = new CuboidCaptureJob(this, low, constraint, mask, copyFlags);
         new BukkitRunnable() {
-            int index = 0;
             @Override
             public void run() {
-                long start = CoreUtilities.monotonicMillis();
-                while (index < goal) {
-                    long z = index % ((long) z_height);
-                    long y = ((index - z) % ((long)y_length * z_height)) / ((long) z_height);
-                    long x = (index - y - z) / ((long)y_length * z_height);
-                    refLoc.setX(lowX + x);
-                    refLoc.setY(lowY + y);
-                    refLoc.setZ(lowZ + z);
-                    FullBlockData block = (constraint == null || constraint.doesContainLocation(refLoc)) ? new FullBlockData(refLoc.getBlock(), copyFlags) : STRUCTURE_VOID;
-                    if (block != STRUCTURE_VOID && mask != null && !mask.contains(block.data.getMaterial())) {
-                        block = STRUCTURE_VOID;
-                    }
-                    blocks[index] = block;
-                    index++;
-                    if (CoreUtilities.monotonicMillis() - start > maxDelayMs) {
-                        return;
-                    }
-                }
-                if (runme != null) {
-                    runme.run();
+                if (!job.captureChunks(maxDelayMs)) {
+                    return;
                 }
                 cancel();
-
+                job.decodeAsync(runme);
             }
         }.runTaskTimer(Denizen.getInstance(), 1, 1);
     }
 
     public AreaContainmentObject constraint = null;
 
-    public FullBlockData[] blocks = null;
+    /**
+     * The distinct block data values in this set. Entries never have tile entity data or flags of their own.
+     */
+    public ArrayList<FullBlockData> palette = null;
+
+    public Object2IntOpenHashMap<BlockData> paletteIds = null;
+
+    /**
+     * The palette index of each block in the set.
+     */
+    public int[] indices = null;
+
+    public Int2ObjectOpenHashMap<CompoundTag> tileEntities = null;
+
+    public Int2ObjectOpenHashMap<MapTag> blockFlags = null;
 
     public boolean hasFlags = false;
 
@@ -147,9 +152,69 @@ public class CuboidBlockSet implements BlockSet {
 
     public int readingProcesses = 0;
 
+    public void initStorage() {
+        palette = new ArrayList<>();
+        paletteIds = new Object2IntOpenHashMap<>();
+        paletteIds.defaultReturnValue(-1);
+        indices = new int[x_width * y_length * z_height];
+        tileEntities = new Int2ObjectOpenHashMap<>();
+        blockFlags = new Int2ObjectOpenHashMap<>();
+    }
+
+    /**
+     * Returns the palette index for the given block data, adding it to the palette if needed.
+     */
+    public int getPaletteId(BlockData data) {
+        int id = paletteIds.getInt(data);
+        if (id == -1) {
+            id = palette.size();
+            palette.add(data == STRUCTURE_VOID.data ? STRUCTURE_VOID : new FullBlockData(data));
+            paletteIds.put(data, id);
+        }
+        return id;
+    }
+
+    public void setBlock(int index, FullBlockData block) {
+        indices[index] = getPaletteId(block.data);
+        if (block.tileEntityData != null) {
+            tileEntities.put(index, block.tileEntityData);
+        }
+        else {
+            tileEntities.remove(index);
+        }
+        if (block.flags != null) {
+            blockFlags.put(index, block.flags);
+        }
+        else {
+            blockFlags.remove(index);
+        }
+    }
+
+    /**
+     * Returns the block at the given index. Blocks without tile entity data or flags are returned directly from the palette, and so must not be modified.
+     */
+    public FullBlockData getBlock(int index) {
+        FullBlockData block = palette.get(indices[index]);
+        CompoundTag tileEntity = tileEntities.isEmpty() ? null : tileEntities.get(index);
+        MapTag flags = blockFlags.isEmpty() ? null : blockFlags.get(index);
+        if (tileEntity == null && flags == null) {
+            return block;
+        }
+        return new FullBlockData(block.data, tileEntity, flags);
+    }
+
+    public int getBlockCount() {
+        return indices.length;
+    }
+
     public CuboidBlockSet duplicate() {
         CuboidBlockSet result = new CuboidBlockSet();
-        result.blocks = blocks.clone();
+        result.palette = new ArrayList<>(palette);
+        result.paletteIds = new Object2IntOpenHashMap<>(paletteIds);
+        result.paletteIds.defaultReturnValue(-1);
+        result.indices = indices.clone();
+        result.tileEntities = new Int2ObjectOpenHashMap<>(tileEntities);
+        result.blockFlags = new Int2ObjectOpenHashMap<>(blockFlags);
         result.hasFlags = hasFlags;
         result.x_width = x_width;
         result.y_length = y_length;
@@ -165,6 +230,10 @@ public class CuboidBlockSet implements BlockSet {
 
     @Override
     public FullBlockData[] getBlocks() {
+        FullBlockData[] blocks = new FullBlockData[indices.length];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = getBlock(i);
+        }
         return blocks;
     }
 
@@ -286,7 +355,10 @@ public class CuboidBlockSet implements BlockSet {
         if (!Utilities.isLocationYSafe(finalY, input.centerLocation.getWorld())) {
             return;
         }
-        Block destBlock = input.centerLocation.clone().add(x - center_x, y - center_y, z - center_z).getBlock();
+        setBlockSingle(block, input.centerLocation.clone().add(x - center_x, y - center_y, z - center_z).getBlock(), input);
+    }
+
+    public void setBlockSingle(FullBlockData block, Block destBlock, InputParams input) {
         if (input.mask != null && !input.mask.contains(destBlock.getType())) {
             return;
         }
@@ -300,46 +372,35 @@ public class CuboidBlockSet implements BlockSet {
 
     @Override
     public void setBlocksDelayed(final Runnable runme, final InputParams input, long maxDelayMs) {
-        final long goal = (long)x_width * y_length * z_height;
-        new BukkitRunnable() {
-            int index = 0;
-            @Override
-            public void run() {
-                SchematicCommand.noPhys = true;
-                long start = CoreUtilities.monotonicMillis();
-                while (index < goal) {
-                    int z = index % (z_height);
-                    int y = ((index - z) % (y_length * z_height)) / z_height;
-                    int x = (index - y - z) / (y_length * z_height);
-                    setBlockSingle(blocks[index], x, y, z, input);
-                    index++;
-                    if (CoreUtilities.monotonicMillis() - start > maxDelayMs) {
-                        SchematicCommand.noPhys = false;
+        CuboidPasteJob job = new CuboidPasteJob(this, input);
+        Bukkit.getScheduler().runTaskAsynchronously(Denizen.getInstance(), () -> {
+            try {
+                job.prepare();
+            }
+            catch (Throwable ex) {
+                Debug.echoError(ex);
+                job.sections.clear();
+            }
+            new BukkitRunnable() {
+                @Override
+                public void run() {
+                    if (!job.commit(maxDelayMs)) {
                         return;
                     }
+                    cancel();
+                    if (runme != null) {
+                        runme.run();
+                    }
                 }
-                SchematicCommand.noPhys = false;
-                cancel();
-                if (runme != null) {
-                    runme.run();
-                }
-            }
-        }.runTaskTimer(Denizen.getInstance(), 1, 1);
+            }.runTaskTimer(Denizen.getInstance(), 1, 1);
+        });
     }
 
     @Override
     public void setBlocks(InputParams input) {
-        SchematicCommand.noPhys = true;
-        int index = 0;
-        for (int x = 0; x < x_width; x++) {
-            for (int y = 0; y < y_length; y++) {
-                for (int z = 0; z < z_height; z++) {
-                    setBlockSingle(blocks[index], x, y, z, input);
-                    index++;
-                }
-            }
-        }
-        SchematicCommand.noPhys = false;
+        CuboidPasteJob job = new CuboidPasteJob(this, input);
+        job.prepare();
+        job.commit(Long.MAX_VALUE);
     }
 
     public void rotateEntitiesOne() {
@@ -363,24 +424,66 @@ public class CuboidBlockSet implements BlockSet {
         entities = outEntities;
     }
 
+    /**
+     * Replaces every palette entry with a transformed version of itself. Block indices are unchanged.
+     */
+    public void transformPalette(UnaryOperator<FullBlockData> transform) {
+        ArrayList<FullBlockData> newPalette = new ArrayList<>(palette.size());
+        Object2IntOpenHashMap<BlockData> newIds = new Object2IntOpenHashMap<>(palette.size());
+        newIds.defaultReturnValue(-1);
+        for (FullBlockData block : palette) {
+            FullBlockData newBlock = transform.apply(block);
+            newIds.putIfAbsent(newBlock.data, newPalette.size());
+            newPalette.add(newBlock);
+        }
+        palette = newPalette;
+        paletteIds = newIds;
+    }
+
+    /**
+     * Moves every sparse per-block value to a new block index, as given by the remapper (old index to new index).
+     */
+    public static <T> Int2ObjectOpenHashMap<T> remapSparse(Int2ObjectOpenHashMap<T> map, IntUnaryOperator remapper) {
+        if (map.isEmpty()) {
+            return map;
+        }
+        Int2ObjectOpenHashMap<T> result = new Int2ObjectOpenHashMap<>(map.size());
+        for (Int2ObjectMap.Entry<T> entry : map.int2ObjectEntrySet()) {
+            result.put(remapper.applyAsInt(entry.getIntKey()), entry.getValue());
+        }
+        return result;
+    }
+
+    public void remapSparse(IntUnaryOperator remapper) {
+        tileEntities = remapSparse(tileEntities, remapper);
+        blockFlags = remapSparse(blockFlags, remapper);
+    }
+
     public void rotateOne() {
         rotateEntitiesOne();
-        FullBlockData[] bd = new FullBlockData[blocks.length];
+        transformPalette(FullBlockData::rotateOne);
+        int[] newIndices = new int[indices.length];
         int index = 0;
-        int cx = center_x;
-        center_x = center_z;
-        center_z = x_width - 1 - cx;
         for (int x = 0; x < z_height; x++) {
             for (int y = 0; y < y_length; y++) {
                 for (int z = x_width - 1; z >= 0; z--) {
-                    bd[index++] = blockAt(z, y, x).rotateOne();
+                    newIndices[index++] = indices[x + y * z_height + z * z_height * y_length];
                 }
             }
         }
-        int xw = x_width;
-        x_width = z_height;
-        z_height = xw;
-        blocks = bd;
+        final int oldXWidth = x_width, oldZHeight = z_height, yLength = y_length;
+        remapSparse((oldIndex) -> {
+            int z = oldIndex % oldZHeight;
+            int y = (oldIndex / oldZHeight) % yLength;
+            int x = oldIndex / (oldZHeight * yLength);
+            return (oldXWidth - 1 - x) + y * oldXWidth + z * oldXWidth * yLength;
+        });
+        int cx = center_x;
+        center_x = center_z;
+        center_z = x_width - 1 - cx;
+        x_width = oldZHeight;
+        z_height = oldXWidth;
+        indices = newIndices;
     }
 
     public void flipEntities(int offsetMultiplier_X, int offsetMultiplier_Z) {
@@ -416,49 +519,63 @@ public class CuboidBlockSet implements BlockSet {
 
     public void flipX() {
         flipEntities(-1, 1);
-        FullBlockData[] bd = new FullBlockData[blocks.length];
-        int index = 0;
-        center_x = x_width - center_x - 1;
-        for (int x = x_width - 1; x >= 0; x--) {
-            for (int y = 0; y < y_length; y++) {
-                for (int z = 0; z < z_height; z++) {
-                    bd[index++] = blockAt(x, y, z).flipX();
-                }
-            }
+        transformPalette(FullBlockData::flipX);
+        int[] newIndices = new int[indices.length];
+        int layer = z_height * y_length;
+        for (int x = 0; x < x_width; x++) {
+            System.arraycopy(indices, (x_width - 1 - x) * layer, newIndices, x * layer, layer);
         }
-        blocks = bd;
+        final int xWidth = x_width;
+        remapSparse((oldIndex) -> {
+            int x = oldIndex / layer;
+            return oldIndex + (xWidth - 1 - x - x) * layer;
+        });
+        center_x = x_width - center_x - 1;
+        indices = newIndices;
     }
 
     public void flipY() {
-        FullBlockData[] bd = new FullBlockData[blocks.length];
+        transformPalette(FullBlockData::flipY);
+        int[] newIndices = new int[indices.length];
         int index = 0;
-        center_y = y_length - center_y - 1;
         for (int x = 0; x < x_width; x++) {
             for (int y = y_length - 1; y >= 0; y--) {
-                for (int z = 0; z < z_height; z++) {
-                    bd[index++] = blockAt(x, y, z).flipY();
-                }
+                System.arraycopy(indices, (y + x * y_length) * z_height, newIndices, index, z_height);
+                index += z_height;
             }
         }
-        blocks = bd;
+        final int zHeight = z_height, yLength = y_length;
+        remapSparse((oldIndex) -> {
+            int y = (oldIndex / zHeight) % yLength;
+            return oldIndex + (yLength - 1 - y - y) * zHeight;
+        });
+        center_y = y_length - center_y - 1;
+        indices = newIndices;
     }
 
     public void flipZ() {
         flipEntities(1, -1);
-        FullBlockData[] bd = new FullBlockData[blocks.length];
-        int index = 0;
-        center_z = z_height - center_z - 1;
-        for (int x = 0; x < x_width; x++) {
-            for (int y = 0; y < y_length; y++) {
-                for (int z = z_height - 1; z >= 0; z--) {
-                    bd[index++] = blockAt(x, y, z).flipZ();
-                }
+        transformPalette(FullBlockData::flipZ);
+        int[] newIndices = new int[indices.length];
+        for (int row = 0; row < indices.length; row += z_height) {
+            for (int z = 0; z < z_height; z++) {
+                newIndices[row + z] = indices[row + z_height - 1 - z];
             }
         }
-        blocks = bd;
+        final int zHeight = z_height;
+        remapSparse((oldIndex) -> {
+            int z = oldIndex % zHeight;
+            return oldIndex + (zHeight - 1 - z - z);
+        });
+        center_z = z_height - center_z - 1;
+        indices = newIndices;
+    }
+
+    public int indexOf(int x, int y, int z) {
+        return z + y * z_height + x * z_height * y_length;
     }
 
     public FullBlockData blockAt(double X, double Y, double Z) {
-        return blocks[(int) (Z + Y * z_height + X * z_height * y_length)];
+        return getBlock(indexOf((int) X, (int) Y, (int) Z));
     }
 }
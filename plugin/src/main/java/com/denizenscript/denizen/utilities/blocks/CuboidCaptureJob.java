@@ -0,0 +1,248 @@
+package com.denizenscript.denizen.utilities.blocks;
+
+import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.nms.util.jnbt.CompoundTag;
+import com.denizenscript.denizen.objects.AreaContainmentObject;
+import com.denizenscript.denizen.utilities.flags.LocationFlagSearchHelper;
+import com.denizenscript.denizencore.objects.core.MapTag;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.data.BlockData;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies an area of the world into a CuboidBlockSet using chunk snapshots.
+ * Snapshots of the touched chunks and any constraint checks are done on the main thread (spread over ticks), then decoded into the set on async workers, including mask checks.
+ * Only the few blocks that have tile entities or flags are read on the main thread afterward.
+ */
+public class CuboidCaptureJob {
+
+    public static final BlockData AIR = Material.AIR.createBlockData();
+
+    public final CuboidBlockSet set;
+
+    public final World world;
+
+    public final AreaContainmentObject constraint;
+
+    public final HashSet<Material> mask;
+
+    public final boolean copyFlags;
+
+    public final int lowX, lowY, lowZ;
+
+    public final int chunkLowX, chunkLowZ, chunksX, chunksZ;
+
+    public final ChunkSnapshot[] snapshots;
+
+    /**
+     * Per chunk, which of its positions in the area are within the constraint (see {@link #constraintBit}), or null if there is no constraint.
+     * Computed on the main thread, as area objects are not safe to check from other threads.
+     */
+    public final BitSet[] constraintMasks;
+
+    /**
+     * Set indices of blocks that have a tile entity or flags, which need to be read from the world directly.
+     */
+    public final IntOpenHashSet specialBlocks = new IntOpenHashSet();
+
+    public int nextChunk = 0;
+
+    public int voidId;
+
+    public CuboidCaptureJob(CuboidBlockSet set, Location low, AreaContainmentObject constraint, HashSet<Material> mask, boolean copyFlags) {
+        this.set = set;
+        this.world = low.getWorld();
+        this.constraint = constraint;
+        this.mask = mask;
+        this.copyFlags = copyFlags;
+        lowX = low.getBlockX();
+        lowY = low.getBlockY();
+        lowZ = low.getBlockZ();
+        chunkLowX = lowX >> 4;
+        chunkLowZ = lowZ >> 4;
+        chunksX = ((lowX + set.x_width - 1) >> 4) - chunkLowX + 1;
+        chunksZ = ((lowZ + set.z_height - 1) >> 4) - chunkLowZ + 1;
+        snapshots = new ChunkSnapshot[chunksX * chunksZ];
+        constraintMasks = constraint == null ? null : new BitSet[snapshots.length];
+        voidId = set.getPaletteId(CuboidBlockSet.STRUCTURE_VOID.data);
+    }
+
+    public void addSpecialBlock(int x, int y, int z) {
+        x -= lowX;
+        y -= lowY;
+        z -= lowZ;
+        if (x >= 0 && y >= 0 && z >= 0 && x < set.x_width && y < set.y_length && z < set.z_height) {
+            specialBlocks.add(set.indexOf(x, y, z));
+        }
+    }
+
+    public int constraintBit(int worldX, int y, int worldZ) {
+        return ((worldX & 15) * 16 + (worldZ & 15)) * set.y_length + y;
+    }
+
+    /**
+     * Checks the constraint for every position of the area within the given chunk. Must be called on the main thread.
+     */
+    public BitSet checkConstraint(int chunkX, int chunkZ) {
+        BitSet contained = new BitSet(256 * set.y_length);
+        Location refLoc = new Location(world, 0, 0, 0);
+        int xStart = Math.max(lowX, chunkX << 4), xEnd = Math.min(lowX + set.x_width, (chunkX << 4) + 16);
+        int zStart = Math.max(lowZ, chunkZ << 4), zEnd = Math.min(lowZ + set.z_height, (chunkZ << 4) + 16);
+        for (int worldX = xStart; worldX < xEnd; worldX++) {
+            refLoc.setX(worldX + 0.5);
+            for (int worldZ = zStart; worldZ < zEnd; worldZ++) {
+                refLoc.setZ(worldZ + 0.5);
+                for (int y = 0; y < set.y_length; y++) {
+                    refLoc.setY(lowY + y + 0.5);
+                    if (constraint.doesContainLocation(refLoc)) {
+                        contained.set(constraintBit(worldX, y, worldZ));
+                    }
+                }
+            }
+        }
+        return contained;
+    }
+
+    /**
+     * Takes snapshots of chunks until either all are done or the time budget runs out. Must be called on the main thread.
+     * Returns true if all chunks have been captured.
+     */
+    public boolean captureChunks(long maxDelayMs) {
+        long start = CoreUtilities.monotonicMillis();
+        while (nextChunk < snapshots.length) {
+            int chunkX = chunkLowX + nextChunk / chunksZ, chunkZ = chunkLowZ + nextChunk % chunksZ;
+            Chunk chunk = world.getChunkAt(chunkX, chunkZ);
+            snapshots[nextChunk] = chunk.getChunkSnapshot(false, false, false);
+            for (BlockState state : chunk.getTileEntities()) {
+                addSpecialBlock(state.getX(), state.getY(), state.getZ());
+            }
+            if (copyFlags) {
+                int baseX = chunkX << 4, baseZ = chunkZ << 4;
+                LocationFlagSearchHelper.getAllFlaggedPositions(chunk, (position) -> addSpecialBlock(baseX + (position & 15), position >> 8, baseZ + ((position >> 4) & 15)));
+            }
+            if (constraintMasks != null) {
+                constraintMasks[nextChunk] = checkConstraint(chunkX, chunkZ);
+            }
+            nextChunk++;
+            if (CoreUtilities.monotonicMillis() - start > maxDelayMs) {
+                return nextChunk >= snapshots.length;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the captured chunk snapshots in the given range into the block set.
+     * Does not touch the world, so is safe to call from any thread, including in parallel with other ranges.
+     */
+    public void decodeChunks(int from, int to) {
+        Object2IntOpenHashMap<BlockData> localIds = new Object2IntOpenHashMap<>();
+        localIds.defaultReturnValue(-1);
+        int[] indices = set.indices;
+        int minY = world.getMinHeight(), maxY = world.getMaxHeight();
+        for (int chunk = from; chunk < to; chunk++) {
+            ChunkSnapshot snapshot = snapshots[chunk];
+            BitSet contained = constraintMasks == null ? null : constraintMasks[chunk];
+            int chunkX = chunkLowX + chunk / chunksZ, chunkZ = chunkLowZ + chunk % chunksZ;
+            int xStart = Math.max(0, (chunkX << 4) - lowX), xEnd = Math.min(set.x_width, (chunkX << 4) + 16 - lowX);
+            int zStart = Math.max(0, (chunkZ << 4) - lowZ), zEnd = Math.min(set.z_height, (chunkZ << 4) + 16 - lowZ);
+            for (int x = xStart; x < xEnd; x++) {
+                int worldX = lowX + x;
+                for (int y = 0; y < set.y_length; y++) {
+                    int worldY = lowY + y;
+                    for (int z = zStart; z < zEnd; z++) {
+                        int worldZ = lowZ + z;
+                        int index = set.indexOf(x, y, z);
+                        if (contained != null && !contained.get(constraintBit(worldX, y, worldZ))) {
+                            indices[index] = voidId;
+                            continue;
+                        }
+                        BlockData data = worldY >= minY && worldY < maxY ? snapshot.getBlockData(worldX & 15, worldY, worldZ & 15) : AIR;
+                        if (mask != null && !mask.contains(data.getMaterial())) {
+                            indices[index] = voidId;
+                            continue;
+                        }
+                        int id = localIds.getInt(data);
+                        if (id == -1) {
+                            synchronized (set) {
+                                id = set.getPaletteId(data);
+                            }
+                            localIds.put(data, id);
+                        }
+                        indices[index] = id;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads tile entity data and flags for blocks that have them. Must be called on the main thread, after decoding.
+     */
+    public void readSpecialBlocks() {
+        int layer = set.z_height * set.y_length;
+        for (int index : specialBlocks) {
+            if (set.indices[index] == voidId) {
+                continue;
+            }
+            Block block = world.getBlockAt(lowX + index / layer, lowY + (index / set.z_height) % set.y_length, lowZ + index % set.z_height);
+            CompoundTag tileEntity = NMSHandler.blockHelper.getNbtData(block);
+            if (tileEntity != null) {
+                set.tileEntities.put(index, tileEntity);
+            }
+            if (copyFlags) {
+                MapTag flags = FullBlockData.getFlagsFor(block);
+                if (flags != null) {
+                    set.blockFlags.put(index, flags);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes all captured chunks across several async workers, then reads special blocks and runs the callback on the main thread.
+     */
+    public void decodeAsync(Runnable callback) {
+        int workers = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), snapshots.length));
+        AtomicInteger remaining = new AtomicInteger(workers);
+        int perWorker = (snapshots.length + workers - 1) / workers;
+        for (int i = 0; i < workers; i++) {
+            int from = Math.min(snapshots.length, i * perWorker), to = Math.min(snapshots.length, from + perWorker);
+            Bukkit.getScheduler().runTaskAsynchronously(Denizen.getInstance(), () -> {
+                try {
+                    decodeChunks(from, to);
+                }
+                catch (Throwable ex) {
+                    Debug.echoError(ex);
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    Bukkit.getScheduler().runTask(Denizen.getInstance(), () -> {
+                        if (constraintMasks != null) {
+                            Arrays.fill(constraintMasks, null);
+                        }
+                        readSpecialBlocks();
+                        if (callback != null) {
+                            callback.run();
+                        }
+                    });
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.denizenscript.denizen.utilities.blocks;
+
+import com.denizenscript.denizen.nms.util.jnbt.CompoundTag;
+import com.denizenscript.denizen.scripts.commands.world.SchematicCommand;
+import com.denizenscript.denizencore.objects.core.MapTag;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A paste of a CuboidBlockSet into the world, split up by chunk section.
+ * The sections and the blocks to place in each are worked out up front by {@link #prepare()}, which can run off the main thread,
+ * then {@link #commit(long)} places them on the main thread, one section after another in chunk order, so consecutive writes stay within the same chunk instead of hopping across chunks every block.
+ * Blocks are still placed individually through Bukkit, so lighting and block change packets are handled by the server as normal.
+ */
+public class CuboidPasteJob {
+
+    public static class Section {
+
+        public final int chunkX, sectionY, chunkZ;
+
+        /**
+         * Block set indices to place in this section.
+         */
+        public final int[] indices;
+
+        public Section(int chunkX, int sectionY, int chunkZ, int[] indices) {
+            this.chunkX = chunkX;
+            this.sectionY = sectionY;
+            this.chunkZ = chunkZ;
+            this.indices = indices;
+        }
+    }
+
+    public final CuboidBlockSet set;
+
+    public final BlockSet.InputParams input;
+
+    public final World world;
+
+    // Block set storage is replaced (never modified in place) by rotations and flips, so holding these references keeps the paste consistent even if the set changes mid-paste.
+    public final ArrayList<FullBlockData> palette;
+
+    public final int[] blockIndices;
+
+    public final Int2ObjectOpenHashMap<CompoundTag> tileEntities;
+
+    public final Int2ObjectOpenHashMap<MapTag> blockFlags;
+
+    public final int xWidth, yLength, zHeight;
+
+    public final int baseX, baseY, baseZ;
+
+    public final List<Section> sections = new ArrayList<>();
+
+    public int nextSection = 0;
+
+    /**
+     * Position within the indices of the section at {@link #nextSection} to resume from, when the time budget ran out part way through a section.
+     */
+    public int nextIndex = 0;
+
+    public CuboidPasteJob(CuboidBlockSet set, BlockSet.InputParams input) {
+        this.set = set;
+        this.input = input;
+        world = input.centerLocation.getWorld();
+        palette = set.palette;
+        blockIndices = set.indices;
+        tileEntities = set.tileEntities;
+        blockFlags = set.blockFlags;
+        xWidth = set.x_width;
+        yLength = set.y_length;
+        zHeight = set.z_height;
+        baseX = input.centerLocation.getBlockX() - set.center_x;
+        baseY = input.centerLocation.getBlockY() - set.center_y;
+        baseZ = input.centerLocation.getBlockZ() - set.center_z;
+    }
+
+    public FullBlockData getBlock(int index) {
+        FullBlockData block = palette.get(blockIndices[index]);
+        CompoundTag tileEntity = tileEntities.isEmpty() ? null : tileEntities.get(index);
+        MapTag flags = blockFlags.isEmpty() ? null : blockFlags.get(index);
+        if (tileEntity == null && flags == null) {
+            return block;
+        }
+        return new FullBlockData(block.data, tileEntity, flags);
+    }
+
+    /**
+     * Groups the blocks to place by chunk section, skipping any that would never be placed (structure voids, air with 'noair', or outside the world's height range).
+     * Does not touch the world, so is safe to call from any thread.
+     */
+    public void prepare() {
+        int yLow = Math.max(0, world.getMinHeight() - baseY), yHigh = Math.min(yLength, world.getMaxHeight() + 1 - baseY);
+        if (yLow >= yHigh) {
+            return;
+        }
+        IntArrayList buffer = new IntArrayList();
+        for (int chunkX = Math.floorDiv(baseX, 16); chunkX <= Math.floorDiv(baseX + xWidth - 1, 16); chunkX++) {
+            int xStart = Math.max(0, chunkX * 16 - baseX), xEnd = Math.min(xWidth, chunkX * 16 + 16 - baseX);
+            for (int chunkZ = Math.floorDiv(baseZ, 16); chunkZ <= Math.floorDiv(baseZ + zHeight - 1, 16); chunkZ++) {
+                int zStart = Math.max(0, chunkZ * 16 - baseZ), zEnd = Math.min(zHeight, chunkZ * 16 + 16 - baseZ);
+                for (int sectionY = Math.floorDiv(baseY + yLow, 16); sectionY <= Math.floorDiv(baseY + yHigh - 1, 16); sectionY++) {
+                    int yStart = Math.max(yLow, sectionY * 16 - baseY), yEnd = Math.min(yHigh, sectionY * 16 + 16 - baseY);
+                    buffer.clear();
+                    for (int x = xStart; x < xEnd; x++) {
+                        for (int y = yStart; y < yEnd; y++) {
+                            int rowIndex = y * zHeight + x * zHeight * yLength;
+                            for (int z = zStart; z < zEnd; z++) {
+                                int index = rowIndex + z;
+                                Material material = palette.get(blockIndices[index]).data.getMaterial();
+                                if (material == Material.STRUCTURE_VOID || (input.noAir && material == Material.AIR)) {
+                                    continue;
+                                }
+                                buffer.add(index);
+                            }
+                        }
+                    }
+                    if (!buffer.isEmpty()) {
+                        sections.add(new Section(chunkX, sectionY, chunkZ, buffer.toIntArray()));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Places the section's blocks starting from the given position within its indices, checking the time budget every 256 blocks.
+     * Returns the position to resume from, which is the length of the indices array if the section is done.
+     */
+    public int commitSection(Section section, int from, long start, long maxDelayMs) {
+        int layer = zHeight * yLength;
+        int[] indices = section.indices;
+        for (int i = from; i < indices.length; i++) {
+            if (i > from && (i - from) % 256 == 0 && CoreUtilities.monotonicMillis() - start > maxDelayMs) {
+                return i;
+            }
+            int index = indices[i];
+            int x = index / layer;
+            int y = (index / zHeight) % yLength;
+            int z = index % zHeight;
+            set.setBlockSingle(getBlock(index), world.getBlockAt(baseX + x, baseY + y, baseZ + z), input);
+        }
+        return indices.length;
+    }
+
+    /**
+     * Places blocks until either all are done or the time budget runs out. Must be called on the main thread.
+     * Returns true if the paste is complete.
+     */
+    public boolean commit(long maxDelayMs) {
+        SchematicCommand.noPhys = true;
+        try {
+            long start = CoreUtilities.monotonicMillis();
+            while (nextSection < sections.size()) {
+                Section section = sections.get(nextSection);
+                nextIndex = commitSection(section, nextIndex, start, maxDelayMs);
+                if (nextIndex < section.indices.length) {
+                    return false;
+                }
+                nextSection++;
+                nextIndex = 0;
+                if (CoreUtilities.monotonicMillis() - start > maxDelayMs) {
+                    return nextSection >= sections.size();
+                }
+            }
+            return true;
+        }
+        finally {
+            SchematicCommand.noPhys = false;
+        }
+    }
+}
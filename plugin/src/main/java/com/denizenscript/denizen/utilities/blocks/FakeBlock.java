@@ -8,8 +8,12 @@ import com.denizenscript.denizen.objects.MaterialTag;
 import com.denizenscript.denizen.objects.PlayerTag;
 import com.denizenscript.denizen.utilities.packets.NetworkInterceptHelper;
 import com.denizenscript.denizencore.objects.core.DurationTag;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.scheduler.BukkitTask;
 
@@ -20,35 +24,162 @@ import java.util.*;
  */
 public class FakeBlock {
 
-    public static class FakeBlockMap {
+    /**
+     * Packs a block position into a single long key: 26 bits X, 26 bits Z, 12 bits Y.
+     */
+    public static long packPosition(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    public static long packChunk(int chunkX, int chunkZ) {
+        return (chunkX & 0xFFFFFFFFL) | ((long) chunkZ << 32);
+    }
+
+    /**
+     * All the fake blocks a single player has in a single chunk, sub-divided by chunk section.
+     * The section mask has one bit per section (section Y modulo 64), allowing for a fast allocation-free check of whether a section might have any fake blocks at all.
+     */
+    public static class ChunkFakeBlocks {
 
-        public Map<LocationTag, FakeBlock> byLocation = new HashMap<>();
+        public ChunkFakeBlocks(WorldFakeBlocks world) {
+            this.world = world;
+        }
 
-        public Map<ChunkCoordinate, List<FakeBlock>> byChunk = new HashMap<>();
+        public final WorldFakeBlocks world;
+
+        public final List<FakeBlock> blocks = new ArrayList<>();
+
+        public final Int2ObjectOpenHashMap<List<FakeBlock>> bySection = new Int2ObjectOpenHashMap<>();
+
+        public long sectionMask = 0;
+
+        public static long sectionBit(int sectionY) {
+            return 1L << (sectionY & 63);
+        }
+
+        public boolean mightHaveSection(int sectionY) {
+            return (sectionMask & sectionBit(sectionY)) != 0;
+        }
+
+        /**
+         * Returns the fake blocks in the given section, or null if none.
+         */
+        public List<FakeBlock> getSection(int sectionY) {
+            if (!mightHaveSection(sectionY)) {
+                return null;
+            }
+            return bySection.get(sectionY);
+        }
+
+        public FakeBlock get(int x, int y, int z) {
+            return world.byPosition.get(packPosition(x, y, z));
+        }
+
+        public void add(FakeBlock block) {
+            blocks.add(block);
+            int sectionY = block.y >> 4;
+            List<FakeBlock> section = bySection.get(sectionY);
+            if (section == null) {
+                section = new ArrayList<>();
+                bySection.put(sectionY, section);
+            }
+            section.add(block);
+            sectionMask |= sectionBit(sectionY);
+        }
+
+        public void remove(FakeBlock block) {
+            blocks.remove(block);
+            int sectionY = block.y >> 4;
+            List<FakeBlock> section = bySection.get(sectionY);
+            if (section != null) {
+                section.remove(block);
+                if (section.isEmpty()) {
+                    bySection.remove(sectionY);
+                    sectionMask = 0;
+                    for (int existingY : bySection.keySet()) {
+                        sectionMask |= sectionBit(existingY);
+                    }
+                }
+            }
+        }
+    }
+
+    public static class WorldFakeBlocks {
+
+        public final Long2ObjectOpenHashMap<FakeBlock> byPosition = new Long2ObjectOpenHashMap<>();
+
+        public final Long2ObjectOpenHashMap<ChunkFakeBlocks> byChunk = new Long2ObjectOpenHashMap<>();
+    }
+
+    public static class FakeBlockMap {
+
+        public final Map<String, WorldFakeBlocks> byWorld = new HashMap<>();
 
         public FakeBlock getOrAdd(PlayerTag player, LocationTag location) {
-            location = new LocationTag(location.getBlockX(), location.getBlockY(), location.getBlockZ(), location.getWorldName());
-            FakeBlock block = byLocation.get(location);
+            String worldName = location.getWorldName();
+            int x = location.getBlockX(), y = location.getBlockY(), z = location.getBlockZ();
+            WorldFakeBlocks world = byWorld.get(worldName);
+            if (world == null) {
+                world = new WorldFakeBlocks();
+                byWorld.put(worldName, world);
+            }
+            long position = packPosition(x, y, z);
+            FakeBlock block = world.byPosition.get(position);
             if (block != null) {
                 return block;
             }
-            block = new FakeBlock(player, location);
-            byLocation.put(location, block);
-            List<FakeBlock> chunkBlocks = byChunk.computeIfAbsent(block.chunkCoord, k -> new ArrayList<>());
-            chunkBlocks.add(block);
+            block = new FakeBlock(player, new LocationTag(x, y, z, worldName));
+            world.byPosition.put(position, block);
+            long chunkKey = packChunk(x >> 4, z >> 4);
+            ChunkFakeBlocks chunk = world.byChunk.get(chunkKey);
+            if (chunk == null) {
+                chunk = new ChunkFakeBlocks(world);
+                world.byChunk.put(chunkKey, chunk);
+            }
+            chunk.add(block);
             return block;
         }
 
         public void remove(FakeBlock block) {
-            if (byLocation.remove(block.location) != null) {
-                List<FakeBlock> chunkBlocks = byChunk.get(block.chunkCoord);
-                if (chunkBlocks != null) {
-                    chunkBlocks.remove(block);
-                    if (chunkBlocks.isEmpty()) {
-                        byChunk.remove(block.chunkCoord);
-                    }
+            WorldFakeBlocks world = byWorld.get(block.chunkCoord.worldName);
+            if (world == null || world.byPosition.remove(packPosition(block.x, block.y, block.z)) == null) {
+                return;
+            }
+            long chunkKey = packChunk(block.chunkCoord.x, block.chunkCoord.z);
+            ChunkFakeBlocks chunk = world.byChunk.get(chunkKey);
+            if (chunk != null) {
+                chunk.remove(block);
+                if (chunk.blocks.isEmpty()) {
+                    world.byChunk.remove(chunkKey);
                 }
             }
+            if (world.byPosition.isEmpty()) {
+                byWorld.remove(block.chunkCoord.worldName);
+            }
+        }
+
+        public FakeBlock get(String worldName, int x, int y, int z) {
+            WorldFakeBlocks world = byWorld.get(worldName);
+            if (world == null) {
+                return null;
+            }
+            return world.byPosition.get(packPosition(x, y, z));
+        }
+
+        public FakeBlock get(LocationTag location) {
+            return get(location.getWorldName(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+        }
+
+        public ChunkFakeBlocks getChunk(String worldName, int chunkX, int chunkZ) {
+            WorldFakeBlocks world = byWorld.get(worldName);
+            if (world == null) {
+                return null;
+            }
+            return world.byChunk.get(packChunk(chunkX, chunkZ));
+        }
+
+        public boolean isEmpty() {
+            return byWorld.isEmpty();
         }
     }
 
@@ -59,27 +190,45 @@ public class FakeBlock {
         if (map == null) {
             return null;
         }
-        return map.byLocation.get(location);
+        return map.get(location);
     }
 
-    public static List<FakeBlock> getFakeBlocksFor(UUID id, ChunkCoordinate chunkCoord) {
+    public static FakeBlock getFakeBlockFor(UUID id, String worldName, int x, int y, int z) {
         FakeBlockMap map = blocks.get(id);
         if (map == null) {
             return null;
         }
-        return map.byChunk.get(chunkCoord);
+        return map.get(worldName, x, y, z);
+    }
+
+    public static ChunkFakeBlocks getFakeBlocksFor(UUID id, String worldName, int chunkX, int chunkZ) {
+        FakeBlockMap map = blocks.get(id);
+        if (map == null) {
+            return null;
+        }
+        return map.getChunk(worldName, chunkX, chunkZ);
+    }
+
+    public static List<FakeBlock> getFakeBlocksFor(UUID id, ChunkCoordinate chunkCoord) {
+        ChunkFakeBlocks chunk = getFakeBlocksFor(id, chunkCoord.worldName, chunkCoord.x, chunkCoord.z);
+        return chunk == null ? null : chunk.blocks;
     }
 
     public final PlayerTag player;
     public final LocationTag location;
     public final ChunkCoordinate chunkCoord;
+    public final int x, y, z;
     public MaterialTag material;
     public BukkitTask currentTask = null;
+    public boolean sendQueued = false;
 
     private FakeBlock(PlayerTag player, LocationTag location) {
         this.player = player;
         this.location = location;
         this.chunkCoord = new ChunkCoordinate(location);
+        this.x = location.getBlockX();
+        this.y = location.getBlockY();
+        this.z = location.getBlockZ();
     }
 
     public static void showFakeBlockTo(List<PlayerTag> players, LocationTag location, MaterialTag material, DurationTag duration, boolean sendNow) {
@@ -103,7 +252,7 @@ public class FakeBlock {
         for (PlayerTag player : players) {
             FakeBlockMap playerBlocks = blocks.get(player.getPlayerEntity().getUniqueId());
             if (playerBlocks != null) {
-                FakeBlock block = playerBlocks.byLocation.get(location);
+                FakeBlock block = playerBlocks.get(location);
                 if (block != null) {
                     block.cancelBlock();
                 }
@@ -124,6 +273,75 @@ public class FakeBlock {
         }, 1));
     }
 
+    public static HashMap<UUID, Long2ObjectOpenHashMap<List<FakeBlock>>> pendingSends = new HashMap<>();
+
+    public static BukkitTask pendingSendTask = null;
+
+    /**
+     * Queues a fake block to be sent to its player next tick, batched into one multi-block packet per chunk section.
+     */
+    public static void queueSend(FakeBlock block) {
+        if (block.sendQueued) {
+            return;
+        }
+        block.sendQueued = true;
+        UUID uuid = block.player.getUUID();
+        Long2ObjectOpenHashMap<List<FakeBlock>> sections = pendingSends.get(uuid);
+        if (sections == null) {
+            sections = new Long2ObjectOpenHashMap<>();
+            pendingSends.put(uuid, sections);
+        }
+        long sectionKey = packPosition(block.x >> 4, block.y >> 4, block.z >> 4);
+        List<FakeBlock> section = sections.get(sectionKey);
+        if (section == null) {
+            section = new ArrayList<>();
+            sections.put(sectionKey, section);
+        }
+        section.add(block);
+        if (pendingSendTask == null) {
+            pendingSendTask = Bukkit.getScheduler().runTaskLater(Denizen.getInstance(), FakeBlock::flushPendingSends, 1);
+        }
+    }
+
+    public static void flushPendingSends() {
+        pendingSendTask = null;
+        HashMap<UUID, Long2ObjectOpenHashMap<List<FakeBlock>>> toSend = pendingSends;
+        pendingSends = new HashMap<>();
+        for (Map.Entry<UUID, Long2ObjectOpenHashMap<List<FakeBlock>>> entry : toSend.entrySet()) {
+            Player player = Bukkit.getPlayer(entry.getKey());
+            for (List<FakeBlock> section : entry.getValue().values()) {
+                short[] positions = new short[section.size()];
+                BlockData[] data = new BlockData[section.size()];
+                int count = 0;
+                FakeBlock first = null;
+                for (FakeBlock block : section) {
+                    block.sendQueued = false;
+                    if (player == null || block.material == null || !block.chunkCoord.worldName.equals(player.getWorld().getName())) {
+                        continue;
+                    }
+                    BukkitTask refresh = scheduled.get(block.chunkCoord);
+                    if (refresh != null && !refresh.isCancelled()) {
+                        continue; // A full chunk refresh is already on its way, which will include this block.
+                    }
+                    if (first == null) {
+                        first = block;
+                    }
+                    positions[count] = (short) (((block.x & 15) << 8) | ((block.z & 15) << 4) | (block.y & 15));
+                    data[count] = block.material.getModernData();
+                    count++;
+                }
+                if (count == 0) {
+                    continue;
+                }
+                if (count < positions.length) {
+                    positions = Arrays.copyOf(positions, count);
+                    data = Arrays.copyOf(data, count);
+                }
+                NMSHandler.packetHelper.showMultiBlockChange(player, player.getWorld(), first.x >> 4, first.y >> 4, first.z >> 4, positions, data);
+            }
+        }
+    }
+
     public void cancelBlock() {
         if (currentTask != null) {
             currentTask.cancel();
@@ -132,7 +350,7 @@ public class FakeBlock {
         material = null;
         FakeBlockMap mapping = blocks.get(player.getUUID());
         mapping.remove(this);
-        if (mapping.byChunk.isEmpty()) {
+        if (mapping.isEmpty()) {
             blocks.remove(player.getUUID());
         }
         if (player.isOnline()) {
@@ -149,10 +367,17 @@ public class FakeBlock {
         }
         this.material = material;
         if (player.hasChunkLoaded(location.getChunk())) {
-            if (sendNow || !NMSHandler.getVersion().isAtLeast(NMSVersion.v1_18)) {
+            if (sendNow) {
                 player.getPlayerEntity().sendBlockChange(location, material.getModernData());
+                scheduleChunkRefresh(location.getWorld(), chunkCoord);
+            }
+            else {
+                queueSend(this);
+                // The block packet doesn't carry block entity data (for fake chests, signs, heads, etc. or a real one being covered), only the chunk rewrite does
+                if (NMSHandler.blockHelper.hasBlockEntity(material.getModernData()) || NMSHandler.blockHelper.hasBlockEntity(location.getBlock().getBlockData())) {
+                    scheduleChunkRefresh(location.getWorld(), chunkCoord);
+                }
             }
-            scheduleChunkRefresh(location.getWorld(), chunkCoord);
         }
         if (duration != null && duration.getTicks() > 0) {
             currentTask = new BukkitRunnable() {
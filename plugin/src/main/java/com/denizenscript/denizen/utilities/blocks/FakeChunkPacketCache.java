@@ -0,0 +1,107 @@
+package com.denizenscript.denizen.utilities.blocks;
+
+import it.unimi.dsi.fastutil.HashCommon;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Caches the rewritten section data of chunk packets that had fake blocks applied to them, so that many players seeing the same fake blocks in the same chunk only cost one rewrite.
+ * Entries are keyed by chunk and by a hash of the fake block contents (rather than by any one player's fake blocks), and are only reused if the original chunk data is byte-for-byte identical,
+ * so any change to either the real chunk or the fake blocks naturally misses the cache.
+ * Can be used from any thread.
+ */
+public class FakeChunkPacketCache {
+
+    public static int maxEntries = 128;
+
+    public static class Key {
+
+        public final String worldName;
+
+        public final int chunkX, chunkZ;
+
+        public final long fakeHash;
+
+        public Key(String worldName, int chunkX, int chunkZ, long fakeHash) {
+            this.worldName = worldName;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.fakeHash = fakeHash;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) HashCommon.mix(fakeHash + chunkX * 31L + chunkZ) ^ worldName.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return fakeHash == key.fakeHash && chunkX == key.chunkX && chunkZ == key.chunkZ && Objects.equals(worldName, key.worldName);
+        }
+    }
+
+    public static class Entry {
+
+        public final byte[] original;
+
+        public final byte[] rewritten;
+
+        public Entry(byte[] original, byte[] rewritten) {
+            this.original = original;
+            this.rewritten = rewritten;
+        }
+    }
+
+    public static final Map<Key, Entry> cache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    /**
+     * Returns a hash of a single fake block's position and block state ID, to be summed across all fake blocks in a chunk.
+     */
+    public static long hashBlock(FakeBlock block, int stateId) {
+        return HashCommon.mix(FakeBlock.packPosition(block.x, block.y, block.z) * 31 + stateId);
+    }
+
+    /**
+     * Returns the cached rewritten section data for the given chunk and fake block contents, or null if the original data doesn't match anything cached.
+     */
+    public static byte[] get(Key key, byte[] original) {
+        Entry entry;
+        synchronized (cache) {
+            entry = cache.get(key);
+        }
+        if (entry == null || !Arrays.equals(entry.original, original)) {
+            return null;
+        }
+        return entry.rewritten;
+    }
+
+    public static void put(Key key, byte[] original, byte[] rewritten) {
+        synchronized (cache) {
+            cache.put(key, new Entry(original, rewritten));
+        }
+    }
+
+    public static void removeWorld(String worldName) {
+        synchronized (cache) {
+            cache.keySet().removeIf((key) -> key.worldName.equals(worldName));
+        }
+    }
+
+    public static void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+}
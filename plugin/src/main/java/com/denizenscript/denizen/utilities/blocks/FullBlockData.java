@@ -37,6 +37,7 @@ public class FullBlockData {
             if (classesHandled.add(data.getClass())) {
                 initBlockDataClass(data);
             }
+            SpongeSchematicHelper.blockDataCache.putIfAbsent(data.getAsString(), data);
         }
     }
 
@@ -71,17 +72,22 @@ public class FullBlockData {
     public FullBlockData(Block block, boolean copyFlags) {
         this(block);
         if (copyFlags) {
-            MapTagBasedFlagTracker flagMap = (MapTagBasedFlagTracker) new LocationTag(block.getLocation()).getFlagTracker();
-            flags = new MapTag();
-            for (String flag : flagMap.listAllFlags()) {
-                flags.putObject(flag, flagMap.getRootMap(flag));
-            }
-            if (flags.isEmpty()) {
-                flags = null;
-            }
+            flags = getFlagsFor(block);
         }
     }
 
+    /**
+     * Returns a copy of all flags on the block, or null if it has none.
+     */
+    public static MapTag getFlagsFor(Block block) {
+        MapTagBasedFlagTracker flagMap = (MapTagBasedFlagTracker) new LocationTag(block.getLocation()).getFlagTracker();
+        MapTag flags = new MapTag();
+        for (String flag : flagMap.listAllFlags()) {
+            flags.putObject(flag, flagMap.getRootMap(flag));
+        }
+        return flags.isEmpty() ? null : flags;
+    }
+
     public FullBlockData(Block block) {
         this(block.getBlockData());
         tileEntityData = NMSHandler.blockHelper.getNbtData(block);
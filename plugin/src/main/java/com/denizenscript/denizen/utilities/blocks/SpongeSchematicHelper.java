@@ -1,6 +1,5 @@
 package com.denizenscript.denizen.utilities.blocks;
 
-import com.denizenscript.denizen.Denizen;
 import com.denizenscript.denizen.nms.NMSHandler;
 import com.denizenscript.denizen.nms.interfaces.BlockHelper;
 import com.denizenscript.denizen.nms.util.jnbt.*;
@@ -9,14 +8,12 @@ import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizencore.objects.core.ListTag;
 import com.denizenscript.denizencore.objects.core.MapTag;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
-import org.bukkit.Bukkit;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import org.bukkit.Material;
 import org.bukkit.block.data.BlockData;
-import org.bukkit.util.BlockVector;
 
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -35,8 +32,14 @@ public class SpongeSchematicHelper {
         return t.toString();
     }
 
+    /**
+     * Cache of parsed block state strings. Prefilled with the default state of every block during FullBlockData.init, and safe to use from any thread.
+     */
     public static ConcurrentHashMap<String, BlockData> blockDataCache = new ConcurrentHashMap<>();
 
+    /**
+     * Parses a block state string. Safe to call from any thread once FullBlockData.init has run, as block state parsing only reads the (by then frozen) block registries.
+     */
     public static BlockData unstableParseMaterial(String key) {
         BlockData data;
         try {
@@ -50,131 +53,195 @@ public class SpongeSchematicHelper {
         return data;
     }
 
-    public static class BoolHolder {
-        public boolean bool;
+    public static void checkType(int type, int expected, String name) throws Exception {
+        if (type != expected) {
+            throw new Exception(name + " tag is not of tag type " + NBTUtils.getTypeClass(expected).getName());
+        }
+    }
+
+    /**
+     * Marks a block that the 'BlockData' tag didn't include (if it's shorter than the schematic's volume), to be left as block set palette ID 0.
+     */
+    public static final int MISSING_BLOCK = -1;
+
+    /**
+     * Decodes the varint block IDs of the 'BlockData' tag straight into the block set's index array.
+     * The values stored are the raw schematic palette IDs (or {@link #MISSING_BLOCK}), which must be remapped to block set palette IDs after.
+     */
+    public static void readBlockIds(DataInputStream input, int byteLength, CuboidBlockSet cbs) throws Exception {
+        int width = cbs.x_width, layer = cbs.x_width * cbs.z_height;
+        int[] indices = cbs.indices;
+        int i = 0;
+        int index = 0;
+        while (i < byteLength) {
+            int value = 0;
+            int varintLength = 0;
+            while (true) {
+                byte b = input.readByte();
+                i++;
+                value |= (b & 127) << (varintLength++ * 7);
+                if (varintLength > 5) {
+                    throw new Exception("Schem file blocks tag data corrupted");
+                }
+                if ((b & 128) != 128) {
+                    break;
+                }
+            }
+            if (index >= indices.length) {
+                throw new Exception("Schem file blocks tag data corrupted");
+            }
+            int y = index / layer;
+            int z = (index % layer) / width;
+            int x = (index % layer) % width;
+            indices[cbs.indexOf(x, y, z)] = value;
+            index++;
+        }
+        for (; index < indices.length; index++) {
+            int y = index / layer;
+            int z = (index % layer) / width;
+            int x = (index % layer) % width;
+            indices[cbs.indexOf(x, y, z)] = MISSING_BLOCK;
+        }
     }
 
     // Referenced from WorldEdit source and Sponge schematic format v2 documentation
     // Some values are custom and specific to Denizen
     public static CuboidBlockSet fromSpongeStream(InputStream is) {
-        boolean isPrimary = Bukkit.isPrimaryThread();
         CuboidBlockSet cbs = new CuboidBlockSet();
         try {
-            NBTInputStream nbtStream = new NBTInputStream(new GZIPInputStream(is));
-            NamedTag rootTag = nbtStream.readNamedTag();
-            nbtStream.close();
-            if (!rootTag.getName().equals("Schematic")) {
+            NBTStreamReader reader = new NBTStreamReader(new BufferedInputStream(new GZIPInputStream(is), 65536));
+            if (reader.nextTag() != NBTConstants.TYPE_COMPOUND || !reader.name.equals("Schematic")) {
                 throw new Exception("Tag 'Schematic' does not exist or is not first!");
             }
-            CompoundTag schematicTag = (CompoundTag) rootTag.getTag();
-            Map<String, Tag> schematic = schematicTag.getValue();
-            if (schematic.containsKey("DenizenEntities")) {
-                String entities = stringifyTag(schematic.get("DenizenEntities"));
-                cbs.entities = ListTag.valueOf(entities, CoreUtilities.errorButNoDebugContext);
+            int width = -1, length = -1, height = -1;
+            Map<String, Tag> paletteMap = null;
+            byte[] delayedBlocks = null;
+            boolean hasBlocks = false;
+            List<CompoundTag> tileEntities = new ArrayList<>();
+            Map<String, Tag> flags = null;
+            int type;
+            while ((type = reader.nextTag()) != NBTConstants.TYPE_END) {
+                switch (reader.name) {
+                    case "Width":
+                        checkType(type, NBTConstants.TYPE_SHORT, reader.name);
+                        width = reader.input.readShort();
+                        break;
+                    case "Length":
+                        checkType(type, NBTConstants.TYPE_SHORT, reader.name);
+                        length = reader.input.readShort();
+                        break;
+                    case "Height":
+                        checkType(type, NBTConstants.TYPE_SHORT, reader.name);
+                        height = reader.input.readShort();
+                        break;
+                    case "DenizenOffset":
+                        // Note: "Offset" contains complete nonsense from WE, so just don't touch it.
+                        checkType(type, NBTConstants.TYPE_INT_ARRAY, reader.name);
+                        int[] offsetArr = ((IntArrayTag) reader.readPayload(type)).getValue();
+                        cbs.center_x = offsetArr[0];
+                        cbs.center_y = offsetArr[1];
+                        cbs.center_z = offsetArr[2];
+                        break;
+                    case "DenizenEntities":
+                        cbs.entities = ListTag.valueOf(stringifyTag(reader.readPayload(type)), CoreUtilities.errorButNoDebugContext);
+                        break;
+                    case "Palette":
+                        checkType(type, NBTConstants.TYPE_COMPOUND, reader.name);
+                        paletteMap = ((CompoundTag) reader.readPayload(type)).getValue();
+                        break;
+                    case "BlockData":
+                        checkType(type, NBTConstants.TYPE_BYTE_ARRAY, reader.name);
+                        int byteLength = reader.input.readInt();
+                        hasBlocks = true;
+                        if (width >= 0 && length >= 0 && height >= 0) {
+                            cbs.x_width = width;
+                            cbs.z_height = length;
+                            cbs.y_length = height;
+                            cbs.initStorage();
+                            readBlockIds(reader.input, byteLength, cbs);
+                        }
+                        else {
+                            // Size isn't known yet, so the index order isn't either - very unusual, but legal, so just hold the raw data until the end
+                            delayedBlocks = new byte[byteLength];
+                            reader.input.readFully(delayedBlocks);
+                        }
+                        break;
+                    case "BlockEntities":
+                        checkType(type, NBTConstants.TYPE_LIST, reader.name);
+                        int childType = reader.readListHeader();
+                        int count = reader.listLength;
+                        for (int i = 0; i < count; i++) {
+                            Tag tag = reader.readPayload(childType);
+                            if (tag instanceof CompoundTag) {
+                                tileEntities.add((CompoundTag) tag);
+                            }
+                        }
+                        break;
+                    case "DenizenFlags":
+                        checkType(type, NBTConstants.TYPE_COMPOUND, reader.name);
+                        flags = ((CompoundTag) reader.readPayload(type)).getValue();
+                        break;
+                    default:
+                        reader.skipPayload(type);
+                        break;
+                }
+            }
+            reader.close();
+            if (width < 0) {
+                throw new Exception("Schem file is missing a 'Width' tag");
+            }
+            if (length < 0) {
+                throw new Exception("Schem file is missing a 'Length' tag");
+            }
+            if (height < 0) {
+                throw new Exception("Schem file is missing a 'Height' tag");
+            }
+            if (paletteMap == null) {
+                throw new Exception("Schem file is missing a 'Palette' tag");
+            }
+            if (!hasBlocks) {
+                throw new Exception("Schem file is missing a 'BlockData' tag");
             }
-            short width = getChildTag(schematic, "Width", ShortTag.class).getValue();
-            short length = getChildTag(schematic, "Length", ShortTag.class).getValue();
-            short height = getChildTag(schematic, "Height", ShortTag.class).getValue();
-            int originX = 0;
-            int originY = 0;
-            int originZ = 0;
-            if (schematic.containsKey("DenizenOffset")) {
-                // Note: "Offset" contains complete nonsense from WE, so just don't touch it.
-                int[] offsetArr = getChildTag(schematic, "DenizenOffset", IntArrayTag.class).getValue();
-                originX = offsetArr[0];
-                originY = offsetArr[1];
-                originZ = offsetArr[2];
+            if (cbs.indices == null) {
+                cbs.x_width = width;
+                cbs.z_height = length;
+                cbs.y_length = height;
+                cbs.initStorage();
+                readBlockIds(new DataInputStream(new ByteArrayInputStream(delayedBlocks)), delayedBlocks.length, cbs);
             }
-            cbs.x_width = width;
-            cbs.z_height = length;
-            cbs.y_length = height;
-            cbs.center_x = originX;
-            cbs.center_y = originY;
-            cbs.center_z = originZ;
-            cbs.blocks = new FullBlockData[width * length * height];
-            Map<String, Tag> paletteMap = getChildTag(schematic, "Palette", CompoundTag.class).getValue();
-            HashMap<Integer, BlockData> palette = new HashMap<>(256);
-            List<Map.Entry<Integer, String>> latePairs = isPrimary ? null : new ArrayList<>();
+            Int2IntOpenHashMap paletteIds = new Int2IntOpenHashMap(paletteMap.size());
+            paletteIds.defaultReturnValue(-1);
             for (String key : paletteMap.keySet()) {
                 int id = getChildTag(paletteMap, key, IntTag.class).getValue();
-                if (isPrimary) {
-                    palette.put(id, blockDataCache.computeIfAbsent(key, SpongeSchematicHelper::unstableParseMaterial));
-                }
-                else {
-                    BlockData entry = blockDataCache.get(key);
-                    if (entry != null) {
-                        palette.put(id, entry);
-                    }
-                    else {
-                        latePairs.add(new AbstractMap.SimpleEntry<>(id, key));
-                    }
-                }
+                BlockData data = blockDataCache.computeIfAbsent(key, SpongeSchematicHelper::unstableParseMaterial);
+                paletteIds.put(id, cbs.getPaletteId(data));
             }
-            if (!isPrimary && !latePairs.isEmpty()) {
-                BoolHolder bool = new BoolHolder();
-                Bukkit.getScheduler().runTask(Denizen.getInstance(), () -> {
-                    for (Map.Entry<Integer, String> pair : latePairs) {
-                        palette.put(pair.getKey(), blockDataCache.computeIfAbsent(pair.getValue(), SpongeSchematicHelper::unstableParseMaterial));
-                    }
-                    bool.bool = true;
-                });
-                for (int i = 0; i < 1000; i++) {
-                    Thread.sleep(50);
-                    if (bool.bool) {
-                        break;
-                    }
+            int[] indices = cbs.indices;
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] == MISSING_BLOCK) {
+                    indices[i] = 0;
+                    continue;
                 }
-            }
-            Map<BlockVector, Map<String, Tag>> tileEntitiesMap = new HashMap<>();
-            if (schematic.containsKey("BlockEntities")) {
-                List<Tag> tileEntities = getChildTag(schematic, "BlockEntities", JNBTListTag.class).getValue();
-                for (Tag tag : tileEntities) {
-                    if (!(tag instanceof CompoundTag)) {
-                        continue;
-                    }
-                    CompoundTag t = (CompoundTag) tag;
-                    int[] pos = getChildTag(t.getValue(), "Pos", IntArrayTag.class).getValue();
-                    int x = pos[0];
-                    int y = pos[1];
-                    int z = pos[2];
-                    BlockVector vec = new BlockVector(x, y, z);
-                    tileEntitiesMap.put(vec, t.getValue());
+                int paletteId = paletteIds.get(indices[i]);
+                if (paletteId == -1) {
+                    throw new Exception("Schem file blocks tag references unknown palette entry " + indices[i]);
                 }
+                indices[i] = paletteId;
             }
-            byte[] blocks = getChildTag(schematic, "BlockData", ByteArrayTag.class).getValue();
-            int i = 0;
-            int index = 0;
-            while (i < blocks.length) {
-                int value = 0;
-                int varintLength = 0;
-                while (true) {
-                    value |= (blocks[i] & 127) << (varintLength++ * 7);
-                    if (varintLength > 5) {
-                        throw new Exception("Schem file blocks tag data corrupted");
-                    }
-                    if ((blocks[i] & 128) != 128) {
-                        i++;
-                        break;
-                    }
-                    i++;
+            for (CompoundTag tileEntity : tileEntities) {
+                int[] pos = getChildTag(tileEntity.getValue(), "Pos", IntArrayTag.class).getValue();
+                int x = pos[0];
+                int y = pos[1];
+                int z = pos[2];
+                if (x < 0 || y < 0 || z < 0 || x >= width || y >= height || z >= length) {
+                    continue;
                 }
-                FullBlockData block = new FullBlockData(palette.get(value));
-                int y = index / (width * length);
-                int z = (index % (width * length)) / width;
-                int x = (index % (width * length)) % width;
-                int cbsIndex = z + y * cbs.z_height + x * cbs.z_height * cbs.y_length;
-                BlockVector pt = new BlockVector(x, y, z);
-                if (tileEntitiesMap.containsKey(pt)) {
-                    block.tileEntityData = NMSHandler.instance.createCompoundTag(tileEntitiesMap.get(pt));
-                }
-                cbs.blocks[cbsIndex] = block;
-                index++;
+                cbs.tileEntities.put(cbs.indexOf(x, y, z), tileEntity);
             }
-            if (schematic.containsKey("DenizenFlags")) {
-                Map<String, Tag> flags = getChildTag(schematic, "DenizenFlags", CompoundTag.class).getValue();
+            if (flags != null) {
                 for (Map.Entry<String, Tag> flagData : flags.entrySet()) {
                     int flagIndex = Integer.parseInt(flagData.getKey());
-                    cbs.blocks[flagIndex].flags = MapTag.valueOf(stringifyTag(flagData.getValue()), CoreUtilities.noDebugContext);
+                    cbs.blockFlags.put(flagIndex, MapTag.valueOf(stringifyTag(flagData.getValue()), CoreUtilities.noDebugContext));
                 }
             }
         }
@@ -195,67 +262,82 @@ public class SpongeSchematicHelper {
         return expected.cast(tag);
     }
 
+    public static int varIntLength(int value) {
+        int length = 1;
+        while ((value & -128) != 0) {
+            length++;
+            value >>>= 7;
+        }
+        return length;
+    }
+
     public static void saveToSpongeStream(CuboidBlockSet blockSet, OutputStream os) {
         try {
-            HashMap<String, Tag> schematic = new HashMap<>();
-            schematic.put("Width", new ShortTag((short) (blockSet.x_width)));
-            schematic.put("Length", new ShortTag((short) (blockSet.z_height)));
-            schematic.put("Height", new ShortTag((short) (blockSet.y_length)));
-            schematic.put("DenizenOffset", new IntArrayTag(new int[] {blockSet.center_x, blockSet.center_y, blockSet.center_z}));
-            if (blockSet.entities != null) {
-                schematic.put("DenizenEntities", new ByteArrayTag(blockSet.entities.toString().getBytes(StandardCharsets.UTF_8)));
-            }
+            // Assign schematic palette IDs up front, so the palette can be written before the block data and the block data length is known
             Map<String, Tag> palette = new HashMap<>();
-            ByteArrayOutputStream blocksBuffer = new ByteArrayOutputStream((blockSet.x_width) * (blockSet.y_length) * (blockSet.z_height));
-            ArrayList<Tag> tileEntities = new ArrayList<>();
             int paletteMax = 0;
+            int[] schemIds = new int[blockSet.palette.size()];
+            Arrays.fill(schemIds, -1);
+            long blockDataLength = 0;
+            for (int paletteId : blockSet.indices) {
+                int blockId = schemIds[paletteId];
+                if (blockId == -1) {
+                    String dataStr = blockSet.palette.get(paletteId).data.getAsString();
+                    Tag blockIdTag = palette.get(dataStr);
+                    if (blockIdTag == null) {
+                        blockIdTag = new IntTag(paletteMax++);
+                        palette.put(dataStr, blockIdTag);
+                    }
+                    blockId = ((IntTag) blockIdTag).getValue();
+                    schemIds[paletteId] = blockId;
+                }
+                blockDataLength += varIntLength(blockId);
+            }
+            if (blockDataLength > Integer.MAX_VALUE) {
+                throw new Exception("Schematic is too large to save");
+            }
+            NBTStreamWriter writer = new NBTStreamWriter(new BufferedOutputStream(new GZIPOutputStream(os), 65536));
+            writer.beginCompound("Schematic");
+            writer.writeShort("Width", (short) (blockSet.x_width));
+            writer.writeShort("Length", (short) (blockSet.z_height));
+            writer.writeShort("Height", (short) (blockSet.y_length));
+            writer.writeIntArray("DenizenOffset", new int[] {blockSet.center_x, blockSet.center_y, blockSet.center_z});
+            if (blockSet.entities != null) {
+                writer.writeNamedTag("DenizenEntities", new ByteArrayTag(blockSet.entities.toString().getBytes(StandardCharsets.UTF_8)));
+            }
+            writer.writeInt("PaletteMax", paletteMax);
+            writer.writeNamedTag("Palette", NMSHandler.instance.createCompoundTag(palette));
+            writer.beginByteArray("BlockData", (int) blockDataLength);
+            DataOutputStream output = writer.output;
             for (int y = 0; y < blockSet.y_length; y++) {
                 for (int z = 0; z < blockSet.z_height; z++) {
                     for (int x = 0; x < blockSet.x_width; x++) {
-                        int cbsIndex = z + y * blockSet.z_height + x * blockSet.z_height * blockSet.y_length;
-                        FullBlockData bd = blockSet.blocks[cbsIndex];
-                        String dataStr = bd.data.getAsString();
-                        Tag blockIdTag = palette.get(dataStr);
-                        if (blockIdTag == null) {
-                            blockIdTag = new IntTag(paletteMax++);
-                            palette.put(dataStr, blockIdTag);
-                        }
-                        int blockId = ((IntTag) blockIdTag).getValue();
+                        int blockId = schemIds[blockSet.indices[blockSet.indexOf(x, y, z)]];
                         while ((blockId & -128) != 0) {
-                            blocksBuffer.write(blockId & 127 | 128);
+                            output.write(blockId & 127 | 128);
                             blockId >>>= 7;
                         }
-                        blocksBuffer.write(blockId);
-                        CompoundTag rawTag = bd.tileEntityData;
-                        if (rawTag != null) {
-                            HashMap<String, Tag> values = new HashMap<>(rawTag.getValue());
-                            values.put("Pos", new IntArrayTag(new int[] { x, y, z }));
-                            CompoundTag tileEntityTag = NMSHandler.instance.createCompoundTag(values);
-                            tileEntities.add(tileEntityTag);
-                        }
+                        output.write(blockId);
                     }
                 }
             }
-            schematic.put("PaletteMax", new IntTag(paletteMax));
-            schematic.put("Palette", NMSHandler.instance.createCompoundTag(palette));
-            schematic.put("BlockData", new ByteArrayTag(blocksBuffer.toByteArray()));
-            schematic.put("BlockEntities", new JNBTListTag(CompoundTag.class, tileEntities));
-            if (blockSet.hasFlags) {
-                Map<String, Tag> flagMap = new HashMap<>();
-                for (int i = 0; i < blockSet.blocks.length; i++) {
-                    if (blockSet.blocks[i].flags != null) {
-                        flagMap.put(String.valueOf(i), new ByteArrayTag(blockSet.blocks[i].flags.toString().getBytes(StandardCharsets.UTF_8)));
-                    }
-                }
-                if (!flagMap.isEmpty()) {
-                    schematic.put("DenizenFlags", NMSHandler.instance.createCompoundTag(flagMap));
+            writer.beginList("BlockEntities", NBTConstants.TYPE_COMPOUND, blockSet.tileEntities.size());
+            int layer = blockSet.z_height * blockSet.y_length;
+            for (Int2ObjectMap.Entry<CompoundTag> entry : blockSet.tileEntities.int2ObjectEntrySet()) {
+                int cbsIndex = entry.getIntKey();
+                HashMap<String, Tag> values = new HashMap<>(entry.getValue().getValue());
+                values.put("Pos", new IntArrayTag(new int[] { cbsIndex / layer, (cbsIndex / blockSet.z_height) % blockSet.y_length, cbsIndex % blockSet.z_height }));
+                writer.writePayload(NMSHandler.instance.createCompoundTag(values));
+            }
+            if (blockSet.hasFlags && !blockSet.blockFlags.isEmpty()) {
+                writer.beginCompound("DenizenFlags");
+                for (Int2ObjectMap.Entry<MapTag> entry : blockSet.blockFlags.int2ObjectEntrySet()) {
+                    writer.writeNamedTag(String.valueOf(entry.getIntKey()), new ByteArrayTag(entry.getValue().toString().getBytes(StandardCharsets.UTF_8)));
                 }
+                writer.endCompound();
             }
-            CompoundTag schematicTag = NMSHandler.instance.createCompoundTag(schematic);
-            NBTOutputStream stream = new NBTOutputStream(new GZIPOutputStream(os));
-            stream.writeNamedTag("Schematic", schematicTag);
-            os.flush();
-            stream.close();
+            writer.endCompound();
+            writer.close();
         }
         catch (Exception ex) {
             Debug.echoError(ex);
@@ -5,6 +5,7 @@ import com.denizenscript.denizen.nms.NMSHandler;
 import com.denizenscript.denizen.objects.EntityTag;
 import com.denizenscript.denizen.utilities.packets.NetworkInterceptHelper;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
@@ -27,7 +28,51 @@ public class HideEntitiesHelper {
 
         public HashSet<String> matchersHidden = new HashSet<>();
 
+        /**
+         * Cached results of {@link #matchersHidden} by entity ID, so that the many packets sent for an entity don't each re-run every matcher.
+         * Results are refreshed whenever the entity is spawned for the player, and dropped when the matchers change or the entity is adjusted or flagged.
+         * Packets are processed off the main thread, so access is synchronized on {@link #matcherHiddenIds}.
+         */
+        public final IntOpenHashSet matcherHiddenIds = new IntOpenHashSet();
+
+        public final IntOpenHashSet matcherShownIds = new IntOpenHashSet();
+
+        /**
+         * Incremented on every invalidation, so a result computed from before an invalidation is not stored afterward.
+         */
+        public int matcherCacheVersion = 0;
+
+        public void addMatcher(String matcher) {
+            matchersHidden.add(matcher);
+            invalidateMatcherCache();
+        }
+
+        public void removeMatcher(String matcher) {
+            matchersHidden.remove(matcher);
+            invalidateMatcherCache();
+        }
+
+        public void invalidateMatcherCache() {
+            synchronized (matcherHiddenIds) {
+                matcherCacheVersion++;
+                matcherHiddenIds.clear();
+                matcherShownIds.clear();
+            }
+        }
+
+        public void invalidateMatcherCache(int entityId) {
+            synchronized (matcherHiddenIds) {
+                matcherCacheVersion++;
+                matcherHiddenIds.remove(entityId);
+                matcherShownIds.remove(entityId);
+            }
+        }
+
         public boolean shouldHideViaMatcher(Entity entity) {
+            return shouldHideViaMatcher(entity, false);
+        }
+
+        public boolean shouldHideViaMatcher(Entity entity, boolean refresh) {
             if (entity == null) {
                 return false;
             }
@@ -35,23 +80,63 @@ public class HideEntitiesHelper {
                 if (overridinglyShow.contains(entity.getUniqueId())) {
                     return false;
                 }
-                EntityTag entityTag = new EntityTag(entity);
-                for (String matchable : matchersHidden) {
-                    if (entityTag.tryAdvancedMatcher(matchable, CoreUtilities.noDebugContext)) {
-                        if (entity instanceof Player) {
-                            Player thisPlayer = Bukkit.getPlayer(player);
-                            if (thisPlayer != null && thisPlayer.canSee((Player) entity)) {
-                                thisPlayer.hidePlayer(Denizen.getInstance(), (Player) entity);
-                            }
+                int id = entity.getEntityId();
+                int version;
+                synchronized (matcherHiddenIds) {
+                    if (!refresh) {
+                        if (matcherHiddenIds.contains(id)) {
+                            return true;
+                        }
+                        if (matcherShownIds.contains(id)) {
+                            return false;
                         }
-                        return true;
                     }
+                    version = matcherCacheVersion;
+                }
+                boolean hide = matchesAnyHidden(entity);
+                synchronized (matcherHiddenIds) {
+                    if (version != matcherCacheVersion) {
+                        return hide;
+                    }
+                    if (matcherHiddenIds.size() + matcherShownIds.size() > MAX_CACHED_IDS) { // Entity IDs are never reused, so don't let dead ones pile up
+                        matcherHiddenIds.clear();
+                        matcherShownIds.clear();
+                    }
+                    if (hide) {
+                        matcherShownIds.remove(id);
+                        matcherHiddenIds.add(id);
+                    }
+                    else {
+                        matcherHiddenIds.remove(id);
+                        matcherShownIds.add(id);
+                    }
+                }
+                return hide;
+            }
+            return false;
+        }
+
+        public boolean matchesAnyHidden(Entity entity) {
+            EntityTag entityTag = new EntityTag(entity);
+            for (String matchable : matchersHidden) {
+                if (entityTag.tryAdvancedMatcher(matchable, CoreUtilities.noDebugContext)) {
+                    if (entity instanceof Player) {
+                        Player thisPlayer = Bukkit.getPlayer(player);
+                        if (thisPlayer != null && thisPlayer.canSee((Player) entity)) {
+                            thisPlayer.hidePlayer(Denizen.getInstance(), (Player) entity);
+                        }
+                    }
+                    return true;
                 }
             }
             return false;
         }
 
         public boolean shouldHide(Entity entity) {
+            return shouldHide(entity, false);
+        }
+
+        public boolean shouldHide(Entity entity, boolean refresh) {
             if (entity == null) {
                 return false;
             }
@@ -64,10 +149,12 @@ public class HideEntitiesHelper {
             if (defaultHidden.contains(entity.getUniqueId())) {
                 return true;
             }
-            return shouldHideViaMatcher(entity);
+            return shouldHideViaMatcher(entity, refresh);
         }
     }
 
+    public static final int MAX_CACHED_IDS = 16384;
+
     public static HashMap<UUID, PlayerHideMap> playerHides = new HashMap<>();
 
     public static HashSet<UUID> defaultHidden = new HashSet<>();
@@ -87,11 +174,33 @@ public class HideEntitiesHelper {
     }
 
     public static boolean playerShouldHide(UUID player, Entity ent) {
+        return playerShouldHide(player, ent, false);
+    }
+
+    /**
+     * Returns whether the entity should be hidden from the player. Set 'refresh' when the entity is being spawned for the player, to re-check any hide matchers rather than using a cached result.
+     */
+    public static boolean playerShouldHide(UUID player, Entity ent, boolean refresh) {
         PlayerHideMap map = playerHides.get(player);
         if (map == null) {
             return defaultHidden.contains(ent.getUniqueId()) && !player.equals(ent.getUniqueId());
         }
-        return map.shouldHide(ent);
+        return map.shouldHide(ent, refresh);
+    }
+
+    /**
+     * Drops any cached hide matcher results for the entity, to be called when something a matcher might check has changed.
+     */
+    public static void invalidateMatcherCache(Entity entity) {
+        if (entity == null || playerHides.isEmpty()) {
+            return;
+        }
+        int id = entity.getEntityId();
+        for (PlayerHideMap map : playerHides.values()) {
+            if (!map.matchersHidden.isEmpty()) {
+                map.invalidateMatcherCache(id);
+            }
+        }
     }
 
     public static boolean addHide(UUID player, UUID entity) {
@@ -0,0 +1,162 @@
+package com.denizenscript.denizen.utilities.flags;
+
+import com.denizenscript.denizencore.flags.SavableMapFlagTracker;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import com.denizenscript.denizencore.utilities.text.StringHolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * Helper for the optional compact binary flag file format, used for player and world flag files.
+ * Format: magic int, version int, flag count int, then per flag: name (length-prefixed UTF-8), 'can expire' boolean, value (length-prefixed UTF-8).
+ * Values are kept as their savable string form so that the flag tracker can still lazily parse each flag only when it's actually read,
+ * but the file as a whole no longer needs to be escaped into (and unescaped back out of) one giant MapTag text.
+ * Loading always falls back to the text format ('.dat' files), and whichever of the two files is newer wins, so switching the format in either direction migrates automatically on the next save.
+ */
+public class BinaryFlagFileHelper {
+
+    public static boolean enabled = false;
+
+    public static final int MAGIC = 0x44464C47; // "DFLG"
+
+    public static final int VERSION = 1;
+
+    public static final String EXTENSION = ".dfb", TEXT_EXTENSION = ".dat";
+
+    /**
+     * Encodes a flag tracker to the binary format. Must be called on the main thread, as flag values may need to be serialized.
+     */
+    public static byte[] toBytes(SavableMapFlagTracker tracker) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + tracker.map.size() * 64);
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(tracker.map.size());
+            for (Map.Entry<StringHolder, SavableMapFlagTracker.SaveOptimizedFlag> flag : tracker.map.entrySet()) {
+                writeString(output, flag.getKey().str);
+                output.writeBoolean(flag.getValue().canExpire);
+                writeString(output, flag.getValue().getString());
+            }
+            output.flush();
+            return bytes.toByteArray();
+        }
+        catch (IOException ex) {
+            throw new RuntimeException(ex); // Not possible for an in-memory stream
+        }
+    }
+
+    /**
+     * Decodes a flag tracker from the binary format. Can be called from any thread.
+     */
+    public static SavableMapFlagTracker fromBytes(byte[] data) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Invalid binary flag file header");
+        }
+        int version = input.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary flag file version " + version);
+        }
+        int count = input.readInt();
+        SavableMapFlagTracker tracker = new SavableMapFlagTracker();
+        for (int i = 0; i < count; i++) {
+            String name = readString(input);
+            SavableMapFlagTracker.SaveOptimizedFlag flag = new SavableMapFlagTracker.SaveOptimizedFlag();
+            flag.canExpire = input.readBoolean();
+            flag.string = readString(input);
+            tracker.map.put(new StringHolder(name), flag);
+        }
+        return tracker;
+    }
+
+    public static void writeString(DataOutputStream output, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    public static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Loads a flag file from the given path (without extension), from whichever format is newest on disk.
+     * The binary file is only read once: the header check and the decode both work from the same bytes.
+     */
+    public static SavableMapFlagTracker loadFlagFile(String path, boolean async) {
+        File binaryFile = new File(path + EXTENSION);
+        long binaryModified = binaryFile.lastModified(); // 0 if the file doesn't exist
+        if (binaryModified != 0 && binaryModified >= new File(path + TEXT_EXTENSION).lastModified()) {
+            try {
+                SavableMapFlagTracker tracker = fromBytes(Files.readAllBytes(binaryFile.toPath()));
+                tracker.modified = false;
+                return tracker;
+            }
+            catch (NoSuchFileException ex) {
+                // Removed by a text format save since the timestamp check, so the text file is current
+            }
+            catch (Throwable ex) {
+                Debug.echoError("Failed to load binary flag file '" + binaryFile.getPath() + "', falling back to text format...");
+                Debug.echoError(ex);
+            }
+        }
+        return SavableMapFlagTracker.loadFlagFile(path, async);
+    }
+
+    /**
+     * Writes pre-encoded binary data to the given path (without extension), and removes any outdated text format file. Can be called from any thread.
+     */
+    public static void saveBinary(String path, byte[] data) {
+        File target = new File(path + EXTENSION);
+        File temp = new File(path + EXTENSION + ".tmp");
+        try {
+            Files.write(temp.toPath(), data);
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            File textFile = new File(path + TEXT_EXTENSION);
+            if (textFile.exists()) {
+                textFile.delete();
+            }
+        }
+        catch (IOException ex) {
+            Debug.echoError("Failed to save binary flag file '" + target.getPath() + "'");
+            Debug.echoError(ex);
+        }
+    }
+
+    /**
+     * Writes text format data to the given path (without extension), and removes any outdated binary format file. Can be called from any thread.
+     */
+    public static void saveText(String path, String data) {
+        CoreUtilities.journallingFileSave(path + TEXT_EXTENSION, data);
+        File binaryFile = new File(path + EXTENSION);
+        if (binaryFile.exists()) {
+            binaryFile.delete();
+        }
+    }
+
+    /**
+     * Prepares a save of the given tracker in the configured format. Must be called on the main thread.
+     * The returned runnable performs the actual file write, and may be run on any thread.
+     */
+    public static Runnable prepareSave(SavableMapFlagTracker tracker, String path) {
+        if (enabled) {
+            byte[] data = toBytes(tracker);
+            return () -> saveBinary(path, data);
+        }
+        String text = tracker.toString();
+        return () -> saveText(path, text);
+    }
+}
@@ -0,0 +1,125 @@
+package com.denizenscript.denizen.utilities.flags;
+
+import com.denizenscript.denizen.nms.NMSHandler;
+import com.denizenscript.denizen.utilities.nbt.CustomNBT;
+import com.denizenscript.denizencore.flags.MapTagFlagTracker;
+import com.denizenscript.denizencore.objects.ObjectTag;
+import com.denizenscript.denizencore.objects.core.ListTag;
+import com.denizenscript.denizencore.objects.core.MapTag;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import com.denizenscript.denizencore.utilities.text.StringHolder;
+import org.bukkit.inventory.ItemStack;
+
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches parsed item flags, so that checking the flags of many copies of the same item doesn't re-parse the same flag text every time.
+ * Parsed trackers are shared, and so must never be modified: use {@link #copyOf(MapTagFlagTracker)} to get a tracker that can be changed.
+ * Lookups first go by the identity of the item's custom data component (where available), which is replaced whenever the item's data changes, then by the flags text itself.
+ */
+public class ItemFlagCache {
+
+    public static class IdentityEntry {
+
+        public final WeakReference<Object> identity;
+
+        /**
+         * The shared tracker, or null if the item has no flags.
+         */
+        public final MapTagFlagTracker tracker;
+
+        public IdentityEntry(Object identity, MapTagFlagTracker tracker) {
+            this.identity = new WeakReference<>(identity);
+            this.tracker = tracker;
+        }
+    }
+
+    public static final int MAX_PAYLOADS = 512;
+
+    /**
+     * Recently seen custom data components, in slots by identity hash. Entries are only ever replaced whole, so this is safe to read from any thread.
+     */
+    public static final IdentityEntry[] byIdentity = new IdentityEntry[512];
+
+    /**
+     * Parsed trackers by flags text, least recently used first.
+     */
+    public static final LinkedHashMap<String, SoftReference<MapTagFlagTracker>> byPayload = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SoftReference<MapTagFlagTracker>> eldest) {
+            return size() > MAX_PAYLOADS;
+        }
+    };
+
+    /**
+     * Returns the shared (read-only) flag tracker for the item, or null if it has no flags.
+     */
+    public static MapTagFlagTracker getShared(ItemStack item) {
+        Object identity = NMSHandler.itemHelper.getCustomDataIdentity(item);
+        int slot = 0;
+        if (identity != null) {
+            slot = System.identityHashCode(identity) & (byIdentity.length - 1);
+            IdentityEntry entry = byIdentity[slot];
+            if (entry != null && entry.identity.get() == identity) {
+                return entry.tracker;
+            }
+        }
+        String payload = CustomNBT.getCustomNBT(item, "flags", "Denizen");
+        MapTagFlagTracker tracker = payload == null ? null : getForPayload(payload);
+        if (identity != null) {
+            byIdentity[slot] = new IdentityEntry(identity, tracker);
+        }
+        return tracker;
+    }
+
+    public static MapTagFlagTracker getForPayload(String payload) {
+        synchronized (byPayload) {
+            SoftReference<MapTagFlagTracker> reference = byPayload.get(payload);
+            MapTagFlagTracker tracker = reference == null ? null : reference.get();
+            if (tracker != null) {
+                return tracker;
+            }
+        }
+        MapTagFlagTracker tracker = new MapTagFlagTracker(payload, CoreUtilities.noDebugContext);
+        synchronized (byPayload) {
+            byPayload.put(payload, new SoftReference<>(tracker));
+        }
+        return tracker;
+    }
+
+    /**
+     * Returns a deep copy of a shared tracker that is safe to modify. Much cheaper than parsing the flags text again.
+     */
+    public static MapTagFlagTracker copyOf(MapTagFlagTracker tracker) {
+        return new MapTagFlagTracker((MapTag) deepCopy(tracker.map));
+    }
+
+    public static ObjectTag deepCopy(ObjectTag value) {
+        if (value instanceof MapTag) {
+            MapTag result = new MapTag();
+            for (Map.Entry<StringHolder, ObjectTag> entry : ((MapTag) value).entrySet()) {
+                result.putObject(entry.getKey().str, deepCopy(entry.getValue()));
+            }
+            return result;
+        }
+        if (value instanceof ListTag) {
+            ListTag result = new ListTag();
+            for (ObjectTag entry : ((ListTag) value).objectForms) {
+                result.addObject(deepCopy(entry));
+            }
+            return result;
+        }
+        return value == null ? null : value.duplicate();
+    }
+
+    public static void clear() {
+        Arrays.fill(byIdentity, null);
+        synchronized (byPayload) {
+            byPayload.clear();
+        }
+    }
+}
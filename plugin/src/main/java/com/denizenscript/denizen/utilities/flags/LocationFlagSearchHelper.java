@@ -1,36 +1,210 @@
 package com.denizenscript.denizen.utilities.flags;
 
-import com.denizenscript.denizen.objects.LocationTag;
+import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizen.utilities.DataPersistenceHelper;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.NamespacedKey;
 import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
+/**
+ * Helper for finding flagged block locations within a chunk.
+ * Each chunk holds an index of flag name to packed block positions (see {@link #packPosition}), maintained by {@link LocationFlagTracker},
+ * so that a search only needs to read one key rather than scan through every key in the chunk's persistent data.
+ * Chunks flagged before the index existed are indexed once, the first time they're searched or have a location flag added.
+ * Chunks without any location flags are never written to: searches of them just scan their keys.
+ */
 public class LocationFlagSearchHelper {
 
+    public static final String INDEX_PREFIX = "location_flag_index_";
+
+    public static final int INDEX_VERSION = 1;
+
+    public static final NamespacedKey INDEX_VERSION_KEY = new NamespacedKey(Denizen.getInstance(), "location_flag_index_version");
+
+    /**
+     * Packs a block position into a single int, relative to its chunk: 4 bits X, 4 bits Z, and the rest (signed) for Y.
+     */
+    public static int packPosition(int x, int y, int z) {
+        return (y << 8) | ((z & 15) << 4) | (x & 15);
+    }
+
+    public static NamespacedKey indexKeyFor(String cleanFlagName) {
+        return new NamespacedKey(Denizen.getInstance(), INDEX_PREFIX + cleanFlagName);
+    }
+
+    public static boolean isIndexed(PersistentDataContainer container) {
+        Integer version = container.get(INDEX_VERSION_KEY, PersistentDataType.INTEGER);
+        return version != null && version == INDEX_VERSION;
+    }
+
+    /**
+     * Computes the index for a chunk by scanning through all location flag keys, without writing anything.
+     */
+    public static HashMap<String, IntArrayList> scanIndex(PersistentDataContainer container) {
+        HashMap<String, IntArrayList> index = new HashMap<>();
+        for (NamespacedKey key : container.getKeys()) {
+            if (key.getNamespace().equals("denizen") && key.getKey().startsWith("flag_tracker_")) {
+                List<String> split = CoreUtilities.split(key.getKey(), '_', 6);
+                if (split.size() == 6) {
+                    try {
+                        int position = packPosition(Integer.parseInt(split.get(2)), Integer.parseInt(split.get(3)), Integer.parseInt(split.get(4)));
+                        index.computeIfAbsent(split.get(5), (k) -> new IntArrayList()).add(position);
+                    }
+                    catch (NumberFormatException ex) {
+                        // Not a valid location flag key, ignore
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Builds the index for a chunk from scratch, replacing any outdated index. Returns the index.
+     * The index is only stored if the chunk has any location flags, so that chunks without them are left unmodified.
+     */
+    public static HashMap<String, IntArrayList> buildIndex(PersistentDataContainer container) {
+        HashMap<String, IntArrayList> index = scanIndex(container);
+        for (NamespacedKey key : container.getKeys()) {
+            if (key.getNamespace().equals("denizen") && key.getKey().startsWith(INDEX_PREFIX)) {
+                container.remove(key);
+            }
+        }
+        if (index.isEmpty()) {
+            return index;
+        }
+        for (Map.Entry<String, IntArrayList> entry : index.entrySet()) {
+            container.set(indexKeyFor(entry.getKey()), PersistentDataType.INTEGER_ARRAY, entry.getValue().toIntArray());
+        }
+        container.set(INDEX_VERSION_KEY, PersistentDataType.INTEGER, INDEX_VERSION);
+        return index;
+    }
+
+    public static void addToIndex(Chunk chunk, String cleanFlagName, int position) {
+        PersistentDataContainer container = chunk.getPersistentDataContainer();
+        if (!isIndexed(container)) {
+            buildIndex(container); // Will include the new flag already
+            return;
+        }
+        NamespacedKey key = indexKeyFor(cleanFlagName);
+        int[] positions = container.get(key, PersistentDataType.INTEGER_ARRAY);
+        if (positions == null) {
+            container.set(key, PersistentDataType.INTEGER_ARRAY, new int[] { position });
+            return;
+        }
+        for (int existing : positions) {
+            if (existing == position) {
+                return;
+            }
+        }
+        int[] newPositions = new int[positions.length + 1];
+        System.arraycopy(positions, 0, newPositions, 0, positions.length);
+        newPositions[positions.length] = position;
+        container.set(key, PersistentDataType.INTEGER_ARRAY, newPositions);
+    }
+
+    public static void removeFromIndex(Chunk chunk, String cleanFlagName, int position) {
+        PersistentDataContainer container = chunk.getPersistentDataContainer();
+        if (!isIndexed(container)) {
+            buildIndex(container); // Will exclude the removed flag already
+            return;
+        }
+        NamespacedKey key = indexKeyFor(cleanFlagName);
+        int[] positions = container.get(key, PersistentDataType.INTEGER_ARRAY);
+        if (positions == null) {
+            return;
+        }
+        IntArrayList remaining = new IntArrayList(positions.length);
+        for (int existing : positions) {
+            if (existing != position) {
+                remaining.add(existing);
+            }
+        }
+        if (remaining.isEmpty()) {
+            container.remove(key);
+        }
+        else if (remaining.size() != positions.length) {
+            container.set(key, PersistentDataType.INTEGER_ARRAY, remaining.toIntArray());
+        }
+    }
+
+    /**
+     * Calls the consumer with the packed position (see {@link #packPosition}) of every block in the chunk that has any flag, according to the index.
+     * A position may be given more than once (once per flag), and may occasionally be stale.
+     */
+    public static void getAllFlaggedPositions(Chunk chunk, IntConsumer handlePosition) {
+        PersistentDataContainer container = chunk.getPersistentDataContainer();
+        if (!isIndexed(container)) {
+            for (IntArrayList positions : buildIndex(container).values()) {
+                positions.forEach(handlePosition);
+            }
+            return;
+        }
+        for (NamespacedKey key : container.getKeys()) {
+            if (key.getNamespace().equals("denizen") && key.getKey().startsWith(INDEX_PREFIX)) {
+                int[] positions = container.get(key, PersistentDataType.INTEGER_ARRAY);
+                if (positions != null) {
+                    for (int position : positions) {
+                        handlePosition.accept(position);
+                    }
+                }
+            }
+        }
+    }
+
     public static void getFlaggedLocations(Chunk chunk, String flagName, Consumer<Location> handleLocation) {
         int subKeyIndex = flagName.indexOf('.');
         String fullPath = flagName;
         if (subKeyIndex != -1) {
             flagName = flagName.substring(0, subKeyIndex);
         }
+        flagName = DataPersistenceFlagTracker.cleanKeyName(flagName);
         PersistentDataContainer container = chunk.getPersistentDataContainer();
+        int[] positions;
+        if (isIndexed(container)) {
+            positions = container.get(indexKeyFor(flagName), PersistentDataType.INTEGER_ARRAY);
+        }
+        else {
+            IntArrayList indexed = buildIndex(container).get(flagName);
+            positions = indexed == null ? null : indexed.toIntArray();
+        }
+        if (positions == null) {
+            return;
+        }
+        int baseX = chunk.getX() << 4, baseZ = chunk.getZ() << 4;
         Location ref = new Location(chunk.getWorld(), 0, 0, 0);
-        for (NamespacedKey key : container.getKeys()) {
-            if (key.getNamespace().equals("denizen") && key.getKey().startsWith("flag_tracker_") && key.getKey().endsWith(flagName)) {
-                List<String> split = CoreUtilities.split(key.getKey(), '_', 6);
-                if (split.size() == 6 && split.get(5).equals(flagName)) {
-                    ref.setX(Integer.parseInt(split.get(2)));
-                    ref.setY(Integer.parseInt(split.get(3)));
-                    ref.setZ(Integer.parseInt(split.get(4)));
-                    if (new LocationTag(ref).getFlagTracker().hasFlag(fullPath)) {
-                        handleLocation.accept(ref);
-                    }
+        DataPersistenceFlagTracker tracker = new DataPersistenceFlagTracker(chunk);
+        IntArrayList stale = null;
+        for (int position : positions) {
+            int x = baseX + (position & 15), y = position >> 8, z = baseZ + ((position >> 4) & 15);
+            tracker.keyPrefix = "flag_tracker_" + x + "_" + y + "_" + z + "_";
+            if (tracker.hasFlag(fullPath)) {
+                ref.setX(x);
+                ref.setY(y);
+                ref.setZ(z);
+                handleLocation.accept(ref);
+            }
+            else if (!DataPersistenceHelper.hasDenizenKey(chunk, tracker.keyPrefix + flagName)) {
+                // Flag was removed without going through the index (eg expired via a chunk-wide flag clean), so prune it from the index
+                if (stale == null) {
+                    stale = new IntArrayList();
                 }
+                stale.add(position);
+            }
+        }
+        if (stale != null) {
+            for (int position : stale) {
+                removeFromIndex(chunk, flagName, position);
             }
         }
     }
@@ -0,0 +1,35 @@
+package com.denizenscript.denizen.utilities.flags;
+
+import com.denizenscript.denizen.utilities.DataPersistenceHelper;
+import com.denizenscript.denizencore.objects.core.MapTag;
+import org.bukkit.Chunk;
+
+/**
+ * Flag tracker for a single block location, stored in the chunk's persistent data.
+ * Keeps the chunk's flagged-location index (see {@link LocationFlagSearchHelper}) up to date whenever a root flag is added or removed.
+ */
+public class LocationFlagTracker extends DataPersistenceFlagTracker {
+
+    public LocationFlagTracker(Chunk chunk, int x, int y, int z) {
+        super(chunk, "flag_tracker_" + x + "_" + y + "_" + z + "_");
+        this.chunk = chunk;
+        this.packedPosition = LocationFlagSearchHelper.packPosition(x, y, z);
+    }
+
+    public Chunk chunk;
+
+    public int packedPosition;
+
+    @Override
+    public void setRootMap(String key, MapTag map) {
+        String cleanKey = cleanKeyName(key);
+        boolean existed = DataPersistenceHelper.hasDenizenKey(holder, keyPrefix + cleanKey);
+        super.setRootMap(key, map);
+        if (map == null && existed) {
+            LocationFlagSearchHelper.removeFromIndex(chunk, cleanKey, packedPosition);
+        }
+        else if (map != null && !existed) {
+            LocationFlagSearchHelper.addToIndex(chunk, cleanKey, packedPosition);
+        }
+    }
+}
@@ -16,14 +16,10 @@ import org.bukkit.scheduler.BukkitRunnable;
 
 import java.io.File;
 import java.lang.ref.SoftReference;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PlayerFlagHandler implements Listener {
 
@@ -33,6 +29,10 @@ public class PlayerFlagHandler implements Listener {
 
     public static boolean saveOnlyWhenWorldSaveOn = false;
 
+    public static int loaderThreads = 2;
+
+    public static int prefetchBatchSize = 32;
+
     public static class CachedPlayerFlag {
 
         public long lastAccessed;
@@ -41,6 +41,33 @@ public class PlayerFlagHandler implements Listener {
 
         public AtomicBoolean savingNow = new AtomicBoolean(false), loadingNow = new AtomicBoolean(false);
 
+        /**
+         * Set by whichever thread performs the file read, to guarantee the file is only read once even if the main thread takes over a queued async load.
+         */
+        public AtomicBoolean loadClaimed = new AtomicBoolean(false);
+
+        /**
+         * Completed by whichever thread performed the file read, once it's done.
+         */
+        public CompletableFuture<Void> fileLoaded = new CompletableFuture<>();
+
+        /**
+         * Completed on the main thread once the tracker is fully loaded and ready for use.
+         */
+        public CompletableFuture<AbstractFlagTracker> loadFuture = new CompletableFuture<>();
+
+        /**
+         * Completed once the current save (if any) has been written.
+         */
+        public volatile CompletableFuture<Void> saveFinished = CompletableFuture.completedFuture(null);
+
+        /**
+         * Set (while synchronized on the cache) by whichever file read finishes first, after which other reads of the same file are discarded.
+         */
+        public boolean trackerPublished = false;
+
+        public boolean loadFinished = false;
+
         public boolean shouldExpire() {
             if (cacheTimeoutSeconds == -1) {
                 return false;
@@ -125,134 +152,243 @@ public class PlayerFlagHandler implements Listener {
             return;
         }
         cache.tracker.modified = false;
-        String text = cache.tracker.toString();
+        PlayerFlagIndex.update(id, cache.tracker);
+        Runnable save = BinaryFlagFileHelper.prepareSave(cache.tracker, flagPathFor(id));
         cache.savingNow.set(true);
+        CompletableFuture<Void> saveFinished = new CompletableFuture<>();
+        cache.saveFinished = saveFinished;
         new BukkitRunnable() {
             @Override
             public void run() {
                 try {
-                    saveFlags(id, text);
+                    save.run();
                 }
                 catch (Throwable ex) {
                     Debug.echoError(ex);
                 }
                 cache.savingNow.set(false);
+                saveFinished.complete(null);
                 expireTask.runTaskLater(Denizen.getInstance(), 1);
             }
         }.runTaskAsynchronously(Denizen.getInstance());
     }
 
+    private static ExecutorService loaderPool;
+
+    public static ExecutorService getLoaderPool() {
+        if (loaderPool == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            loaderPool = Executors.newFixedThreadPool(Math.max(1, loaderThreads), (task) -> {
+                Thread thread = new Thread(task, "Denizen Player Flag Loader " + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return loaderPool;
+    }
+
+    public static void shutdown() {
+        if (loaderPool != null) {
+            loaderPool.shutdown();
+            loaderPool = null;
+        }
+    }
+
+    /**
+     * Reads the flag file for a cache and publishes the result, unless another read of the same file already finished first. Can be called from any thread.
+     */
     public static void loadFlags(UUID id, CachedPlayerFlag cache) {
         try {
-            cache.tracker = SavableMapFlagTracker.loadFlagFile(new File(dataFolder, id.toString()).getPath(), false);
+            SavableMapFlagTracker tracker = BinaryFlagFileHelper.loadFlagFile(flagPathFor(id), false);
+            synchronized (cache) {
+                if (!cache.trackerPublished) {
+                    cache.tracker = tracker;
+                    cache.trackerPublished = true;
+                }
+            }
         }
         finally {
             cache.loadingNow.set(false);
         }
     }
 
-    public static AbstractFlagTracker getTrackerFor(UUID id) {
+    /**
+     * Reads the flag file for a cache, if no other thread has claimed the read already. Can be called from any thread.
+     * Returns true if the read was performed by this call, or false if some other thread has it.
+     */
+    public static boolean tryLoadFlags(UUID id, CachedPlayerFlag cache) {
+        if (!cache.loadClaimed.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            loadFlags(id, cache);
+        }
+        catch (Throwable ex) {
+            Debug.echoError(ex);
+        }
+        finally {
+            cache.fileLoaded.complete(null);
+        }
+        return true;
+    }
+
+    /**
+     * Finalizes a loaded cache, only after the file read has completed. Should be called on the main thread.
+     */
+    public static void finishLoad(UUID id, CachedPlayerFlag cache) {
+        if (cache.loadFinished) {
+            return;
+        }
+        cache.loadFinished = true;
+        if (CoreConfiguration.debugVerbose) {
+            Debug.echoError("Verbose - flag tracker load finished for " + id);
+        }
+        if (cache.tracker != null && !CoreConfiguration.skipAllFlagCleanings) {
+            cache.tracker.doTotalClean();
+        }
+        cache.loadFuture.complete(cache.tracker);
+    }
+
+    /**
+     * Returns the existing cache for a player (moving it from the secondary cache to the main cache if needed), or null if there is none.
+     */
+    public static CachedPlayerFlag getExistingCache(UUID id, String reason) {
         CachedPlayerFlag cache = playerFlagTrackerCache.get(id);
-        if (cache == null) {
-            SoftReference<CachedPlayerFlag> softRef = secondaryPlayerFlagTrackerCache.get(id);
-            if (softRef != null) {
-                cache = softRef.get();
-                if (cache != null) {
-                    cache.lastAccessed = CoreUtilities.monotonicMillis();
-                    if (CoreConfiguration.debugVerbose) {
-                        Debug.echoError("Verbose - (getTrackerFor) flag tracker updated from soft to main for " + id);
-                    }
-                    playerFlagTrackerCache.put(id, cache);
-                    secondaryPlayerFlagTrackerCache.remove(id);
-                    return cache.tracker;
-                }
-            }
-            cache = new CachedPlayerFlag();
-            cache.lastAccessed = CoreUtilities.monotonicMillis();
-            cache.loadingNow.set(true);
+        if (cache != null) {
             if (CoreConfiguration.debugVerbose) {
-                Debug.echoError("Verbose - (getTrackerFor) flag tracker created for " + id);
+                Debug.echoError("Verbose - (" + reason + ") flag tracker was cached for " + id);
             }
-            playerFlagTrackerCache.put(id, cache);
-            loadFlags(id, cache);
-            if (cache.tracker != null && !CoreConfiguration.skipAllFlagCleanings) {
-                cache.tracker.doTotalClean();
+            return cache;
+        }
+        SoftReference<CachedPlayerFlag> softRef = secondaryPlayerFlagTrackerCache.get(id);
+        if (softRef != null) {
+            cache = softRef.get();
+            if (cache != null) {
+                cache.lastAccessed = CoreUtilities.monotonicMillis();
+                if (CoreConfiguration.debugVerbose) {
+                    Debug.echoError("Verbose - (" + reason + ") flag tracker updated from soft to main for " + id);
+                }
+                playerFlagTrackerCache.put(id, cache);
+                secondaryPlayerFlagTrackerCache.remove(id);
+                return cache;
             }
         }
-        else {
-            if (CoreConfiguration.debugVerbose) {
-                Debug.echoError("Verbose - (getTrackerFor) flag tracker was cached for " + id);
+        return null;
+    }
+
+    public static CachedPlayerFlag createCache(UUID id, String reason) {
+        CachedPlayerFlag cache = new CachedPlayerFlag();
+        cache.lastAccessed = CoreUtilities.monotonicMillis();
+        cache.loadingNow.set(true);
+        if (CoreConfiguration.debugVerbose) {
+            Debug.echoError("Verbose - (" + reason + ") flag tracker created for " + id);
+        }
+        playerFlagTrackerCache.put(id, cache);
+        return cache;
+    }
+
+    /**
+     * Queues a batch of caches to be loaded by the loader pool, and then finished on the main thread.
+     */
+    public static void submitLoadBatch(List<UUID> ids, List<CachedPlayerFlag> caches) {
+        Runnable load = () -> {
+            for (int i = 0; i < ids.size(); i++) {
+                tryLoadFlags(ids.get(i), caches.get(i));
             }
-            if (cache.loadingNow.get()) {
-                long start = CoreUtilities.monotonicMillis();
-                while (cache.loadingNow.get()) {
-                    if (CoreConfiguration.debugVerbose) {
-                        Debug.echoError("Verbose - (getTrackerFor) flag tracker is loading, so waiting, for " + id + " ... at " + (CoreUtilities.monotonicMillis() - start) + "ms");
-                    }
-                    if (CoreUtilities.monotonicMillis() - start > 15 * 1000) {
-                        Debug.echoError("Flag loading timeout, errors may follow");
-                        playerFlagTrackerCache.remove(id);
-                        return null;
-                    }
-                    try {
-                        Thread.sleep(1);
-                    }
-                    catch (InterruptedException ex) {
-                        Debug.echoError(ex);
-                        return cache.tracker;
-                    }
+            Bukkit.getScheduler().runTask(Denizen.getInstance(), () -> {
+                for (int i = 0; i < ids.size(); i++) {
+                    finishLoad(ids.get(i), caches.get(i));
                 }
+            });
+        };
+        try {
+            getLoaderPool().execute(load);
+        }
+        catch (RejectedExecutionException ex) {
+            for (int i = 0; i < ids.size(); i++) {
+                tryLoadFlags(ids.get(i), caches.get(i));
+                finishLoad(ids.get(i), caches.get(i));
             }
         }
-        return cache.tracker;
     }
 
-    public static Future loadAsync(UUID id) { // Note: this method is called sync, but triggers an async load
-        try {
-            CachedPlayerFlag cache = playerFlagTrackerCache.get(id);
-            if (cache != null) {
+    public static AbstractFlagTracker getTrackerFor(UUID id) {
+        CachedPlayerFlag cache = getExistingCache(id, "getTrackerFor");
+        if (cache == null) {
+            cache = createCache(id, "getTrackerFor");
+            tryLoadFlags(id, cache);
+            finishLoad(id, cache);
+            return cache.tracker;
+        }
+        if (!cache.loadFinished) {
+            // Take over the load if the loader pool hasn't gotten to it yet.
+            // If a loader thread is already reading the file, read it again here rather than waiting on that thread: whichever read finishes first is used.
+            if (!tryLoadFlags(id, cache) && !cache.fileLoaded.isDone()) {
                 if (CoreConfiguration.debugVerbose) {
-                    Debug.echoError("Verbose - (loadAsync) flag tracker ignored due to cache for " + id);
+                    Debug.echoError("Verbose - (getTrackerFor) flag tracker is loading, so reading directly, for " + id);
                 }
-                return null;
-            }
-            SoftReference<CachedPlayerFlag> softRef = secondaryPlayerFlagTrackerCache.get(id);
-            if (softRef != null) {
-                cache = softRef.get();
-                if (cache != null) {
-                    cache.lastAccessed = CoreUtilities.monotonicMillis();
-                    if (CoreConfiguration.debugVerbose) {
-                        Debug.echoError("Verbose - (loadAsync) flag tracker updated from softref to main for " + id);
-                    }
-                    playerFlagTrackerCache.put(id, cache);
-                    secondaryPlayerFlagTrackerCache.remove(id);
-                    return null;
+                try {
+                    loadFlags(id, cache);
+                }
+                catch (Throwable ex) {
+                    Debug.echoError(ex);
                 }
             }
-            CachedPlayerFlag newCache = new CachedPlayerFlag();
-            newCache.lastAccessed = CoreUtilities.monotonicMillis();
-            newCache.loadingNow.set(true);
-            if (CoreConfiguration.debugVerbose) {
-                Debug.echoError("Verbose - (loadAsync) flag tracker created " + id);
+            synchronized (cache) {
+                // Sync on the cache to be sure to see a tracker published by a loader thread
+                finishLoad(id, cache);
             }
-            playerFlagTrackerCache.put(id, newCache);
-            CompletableFuture future = new CompletableFuture();
-            new BukkitRunnable() {
-                @Override
-                public void run() {
-                    loadFlags(id, newCache);
-                    Bukkit.getScheduler().scheduleSyncDelayedTask(Denizen.instance, () -> {
-                        if (CoreConfiguration.debugVerbose) {
-                            Debug.echoError("Verbose - flag tracker async loaded " + id);
-                        }
-                        if (newCache.tracker != null && !CoreConfiguration.skipAllFlagCleanings) {
-                            newCache.tracker.doTotalClean();
-                        }
-                    });
-                    future.complete(null);
+        }
+        return cache.tracker;
+    }
+
+    /**
+     * Gets the flag tracker for a player without blocking. Must be called on the main thread.
+     * The returned future is completed on the main thread once the tracker is loaded and ready for use (which is immediately, if already cached).
+     */
+    public static CompletableFuture<AbstractFlagTracker> getTrackerAsync(UUID id) {
+        CachedPlayerFlag cache = getExistingCache(id, "getTrackerAsync");
+        if (cache == null) {
+            cache = createCache(id, "getTrackerAsync");
+            submitLoadBatch(Collections.singletonList(id), Collections.singletonList(cache));
+        }
+        return cache.loadFuture;
+    }
+
+    /**
+     * Loads the flag trackers of many players at once, in batches on the loader pool. Must be called on the main thread.
+     * The returned future is completed on the main thread once all the trackers are loaded and ready for use.
+     */
+    public static CompletableFuture<Void> prefetch(Collection<UUID> ids) {
+        List<CompletableFuture<AbstractFlagTracker>> futures = new ArrayList<>(ids.size());
+        List<UUID> batchIds = new ArrayList<>(prefetchBatchSize);
+        List<CachedPlayerFlag> batchCaches = new ArrayList<>(prefetchBatchSize);
+        for (UUID id : ids) {
+            CachedPlayerFlag cache = getExistingCache(id, "prefetch");
+            if (cache == null) {
+                cache = createCache(id, "prefetch");
+                batchIds.add(id);
+                batchCaches.add(cache);
+                if (batchIds.size() >= prefetchBatchSize) {
+                    submitLoadBatch(batchIds, batchCaches);
+                    batchIds = new ArrayList<>(prefetchBatchSize);
+                    batchCaches = new ArrayList<>(prefetchBatchSize);
                 }
-            }.runTaskAsynchronously(Denizen.getInstance());
-            return future;
+            }
+            futures.add(cache.loadFuture);
+        }
+        if (!batchIds.isEmpty()) {
+            submitLoadBatch(batchIds, batchCaches);
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    public static Future loadAsync(UUID id) { // Note: this method is called sync, but triggers an async load
+        try {
+            if (getExistingCache(id, "loadAsync") != null) {
+                return null;
+            }
+            return getTrackerAsync(id);
         }
         catch (Throwable ex) {
             Debug.echoError(ex);
@@ -263,25 +399,28 @@ public class PlayerFlagHandler implements Listener {
     public static void saveAllNow(boolean lockUntilDone) {
         for (Map.Entry<UUID, CachedPlayerFlag> entry : playerFlagTrackerCache.entrySet()) {
             CachedPlayerFlag flags = entry.getValue();
-            if (flags.tracker.modified) {
+            if (flags.tracker != null && flags.tracker.modified) {
                 if (!lockUntilDone && flags.savingNow.get() || flags.loadingNow.get()) {
                     continue;
                 }
-                while (flags.savingNow.get() || flags.loadingNow.get()) {
-                    try {
-                        Thread.sleep(10);
-                    }
-                    catch (InterruptedException ex) {
-                        Debug.echoError(ex);
-                    }
+                if (flags.savingNow.get()) {
+                    // Only reachable when locking (eg on shutdown), where the earlier async save must be written before this one can be
+                    flags.saveFinished.join();
                 }
                 flags.savingNow.set(true);
+                CompletableFuture<Void> saveFinished = new CompletableFuture<>();
+                flags.saveFinished = saveFinished;
                 flags.tracker.modified = false;
-                final UUID id = entry.getKey();
-                final String data = flags.tracker.toString();
+                PlayerFlagIndex.update(entry.getKey(), flags.tracker);
+                final Runnable save = BinaryFlagFileHelper.prepareSave(flags.tracker, flagPathFor(entry.getKey()));
                 Runnable doSave = () -> {
-                    saveFlags(id, data);
-                    flags.savingNow.set(false);
+                    try {
+                        save.run();
+                    }
+                    finally {
+                        flags.savingNow.set(false);
+                        saveFinished.complete(null);
+                    }
                 };
                 if (lockUntilDone) {
                     doSave.run();
@@ -291,10 +430,16 @@ public class PlayerFlagHandler implements Listener {
                 }
             }
         }
+        PlayerFlagIndex.save(lockUntilDone);
+    }
+
+    public static String flagPathFor(UUID id) {
+        return new File(dataFolder, id.toString()).getPath();
     }
 
     public static void saveFlags(UUID id, String flagData) {
-        CoreUtilities.journallingFileSave(new File(dataFolder, id.toString() + ".dat").getPath(), flagData);
+        PlayerFlagIndex.markUnknown(id);
+        BinaryFlagFileHelper.saveText(flagPathFor(id), flagData);
     }
 
     @EventHandler
@@ -0,0 +1,319 @@
+package com.denizenscript.denizen.utilities.flags;
+
+import com.denizenscript.denizencore.DenizenCore;
+import com.denizenscript.denizencore.flags.SavableMapFlagTracker;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import com.denizenscript.denizencore.utilities.text.StringHolder;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * An inverted index of top-level player flag names to the players that have them saved, kept on disk so that "which players have flag X" doesn't need to load every player's flag file.
+ * The index is updated whenever a player's flags are saved, and on startup any flag file modified since the index was last written is re-read (async) to bring it up to date.
+ * The index is only ever a superset: expired flags and sub-keys still need to be checked against the real tracker, and players with cached (possibly unsaved) flags are always candidates.
+ * File format: magic int, version int, index time long, flag name count int, then per flag name: name (length-prefixed UTF-8), player count int, then that many UUIDs as two longs.
+ * Version 2 adds a trailing count int and UUIDs of players whose flag files have no flags at all, so they are known to the index without being re-read on every startup.
+ */
+public class PlayerFlagIndex {
+
+    public static final int MAGIC = 0x44464C49; // "DFLI"
+
+    public static final int VERSION = 2;
+
+    public static File indexFile;
+
+    /**
+     * True once the index has been loaded and caught up with the flag files on disk. Until then, lookups return null.
+     */
+    public static boolean ready = false;
+
+    public static boolean dirty = false;
+
+    public static final HashMap<UUID, String[]> flagsByPlayer = new HashMap<>();
+
+    public static final HashMap<String, HashSet<UUID>> playersByFlag = new HashMap<>();
+
+    /**
+     * Players whose flag files were written in a way the index couldn't see, who are treated as candidates for any flag.
+     */
+    public static final HashSet<UUID> unknownPlayers = new HashSet<>();
+
+    /**
+     * Players saved from the main thread while the index was still catching up, whose index entries are newer than anything read from disk.
+     */
+    public static final HashSet<UUID> liveUpdated = new HashSet<>();
+
+    public static String[] flagNamesOf(SavableMapFlagTracker tracker) {
+        String[] names = new String[tracker.map.size()];
+        int i = 0;
+        for (StringHolder name : tracker.map.keySet()) {
+            names[i++] = CoreUtilities.toLowerCase(name.str);
+        }
+        Arrays.sort(names);
+        return names;
+    }
+
+    public static synchronized void set(UUID id, String[] names) {
+        unknownPlayers.remove(id);
+        String[] old = flagsByPlayer.put(id, names);
+        if (old != null) {
+            if (Arrays.equals(old, names)) {
+                return;
+            }
+            removeNames(id, old);
+        }
+        for (String name : names) {
+            playersByFlag.computeIfAbsent(name, k -> new HashSet<>()).add(id);
+        }
+        dirty = true;
+    }
+
+    public static void removeNames(UUID id, String[] names) {
+        for (String name : names) {
+            HashSet<UUID> players = playersByFlag.get(name);
+            if (players != null) {
+                players.remove(id);
+                if (players.isEmpty()) {
+                    playersByFlag.remove(name);
+                }
+            }
+        }
+    }
+
+    public static synchronized void remove(UUID id) {
+        String[] old = flagsByPlayer.remove(id);
+        if (old != null) {
+            removeNames(id, old);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Sets the flags of a player as read from disk during the startup catch-up, unless the main thread has already recorded a newer save.
+     */
+    public static synchronized void setFromDisk(UUID id, String[] names) {
+        if (!liveUpdated.contains(id)) {
+            set(id, names);
+        }
+    }
+
+    /**
+     * Records the flags of a player that are about to be saved. Must be called on the main thread, with the same tracker state that is being saved.
+     */
+    public static synchronized void update(UUID id, SavableMapFlagTracker tracker) {
+        if (!ready) {
+            liveUpdated.add(id);
+        }
+        set(id, flagNamesOf(tracker));
+    }
+
+    public static synchronized void markUnknown(UUID id) {
+        unknownPlayers.add(id);
+    }
+
+    /**
+     * Returns the set of players that might have the given flag (by top-level name), or null if the index isn't available yet.
+     * Players with flag data currently in the cache are always included, as they may have changes that aren't saved yet.
+     */
+    public static synchronized Set<UUID> getCandidates(String flagName) {
+        if (!ready) {
+            return null;
+        }
+        int dot = flagName.indexOf('.');
+        String topLevel = CoreUtilities.toLowerCase(dot == -1 ? flagName : flagName.substring(0, dot));
+        HashSet<UUID> result = new HashSet<>(unknownPlayers);
+        HashSet<UUID> indexed = playersByFlag.get(topLevel);
+        if (indexed != null) {
+            result.addAll(indexed);
+        }
+        result.addAll(PlayerFlagHandler.playerFlagTrackerCache.keySet());
+        result.addAll(PlayerFlagHandler.secondaryPlayerFlagTrackerCache.keySet());
+        return result;
+    }
+
+    public static UUID idFromFileName(String name) {
+        String base;
+        if (name.endsWith(BinaryFlagFileHelper.EXTENSION)) {
+            base = name.substring(0, name.length() - BinaryFlagFileHelper.EXTENSION.length());
+        }
+        else if (name.endsWith(BinaryFlagFileHelper.TEXT_EXTENSION)) {
+            base = name.substring(0, name.length() - BinaryFlagFileHelper.TEXT_EXTENSION.length());
+        }
+        else {
+            return null;
+        }
+        try {
+            return UUID.fromString(base);
+        }
+        catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the index file (if any), then re-reads only the flag files that changed since it was written. Can be called from any thread.
+     */
+    public static void loadAndCatchUp() {
+        long indexTime = 0;
+        if (indexFile.exists()) {
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+                if (input.readInt() != MAGIC) {
+                    throw new IOException("Invalid player flag index header");
+                }
+                int version = input.readInt();
+                if (version != 1 && version != VERSION) {
+                    throw new IOException("Unsupported player flag index version " + version);
+                }
+                long fileTime = input.readLong();
+                HashMap<UUID, ArrayList<String>> loaded = new HashMap<>();
+                int flagCount = input.readInt();
+                for (int i = 0; i < flagCount; i++) {
+                    String name = BinaryFlagFileHelper.readString(input);
+                    int playerCount = input.readInt();
+                    for (int p = 0; p < playerCount; p++) {
+                        loaded.computeIfAbsent(new UUID(input.readLong(), input.readLong()), k -> new ArrayList<>()).add(name);
+                    }
+                }
+                for (Map.Entry<UUID, ArrayList<String>> entry : loaded.entrySet()) {
+                    String[] names = entry.getValue().toArray(new String[0]);
+                    Arrays.sort(names);
+                    setFromDisk(entry.getKey(), names);
+                }
+                if (version >= 2) {
+                    int emptyCount = input.readInt();
+                    for (int i = 0; i < emptyCount; i++) {
+                        setFromDisk(new UUID(input.readLong(), input.readLong()), new String[0]);
+                    }
+                }
+                indexTime = fileTime;
+            }
+            catch (Throwable ex) {
+                Debug.echoError("Failed to read player flag index, it will be rebuilt...");
+                Debug.echoError(ex);
+                synchronized (PlayerFlagIndex.class) {
+                    for (UUID id : new ArrayList<>(flagsByPlayer.keySet())) {
+                        if (!liveUpdated.contains(id)) {
+                            remove(id);
+                        }
+                    }
+                }
+            }
+        }
+        File[] files = PlayerFlagHandler.dataFolder.listFiles();
+        HashSet<UUID> onDisk = new HashSet<>();
+        if (files != null) {
+            for (File file : files) {
+                UUID id = idFromFileName(file.getName());
+                if (id == null) {
+                    continue;
+                }
+                onDisk.add(id);
+                boolean known;
+                synchronized (PlayerFlagIndex.class) {
+                    known = flagsByPlayer.containsKey(id);
+                }
+                // Allow a little slack on the timestamp, as file times can be coarse
+                if (known && file.lastModified() < indexTime - 2000) {
+                    continue;
+                }
+                try {
+                    SavableMapFlagTracker tracker = BinaryFlagFileHelper.loadFlagFile(PlayerFlagHandler.flagPathFor(id), true);
+                    if (tracker != null) {
+                        setFromDisk(id, flagNamesOf(tracker));
+                    }
+                }
+                catch (Throwable ex) {
+                    Debug.echoError(ex);
+                    markUnknown(id);
+                }
+            }
+        }
+        synchronized (PlayerFlagIndex.class) {
+            for (UUID id : new ArrayList<>(flagsByPlayer.keySet())) {
+                if (!onDisk.contains(id) && !liveUpdated.contains(id)) {
+                    remove(id);
+                }
+            }
+            liveUpdated.clear();
+            ready = true;
+        }
+    }
+
+    public static void loadAsync() {
+        indexFile = new File(PlayerFlagHandler.dataFolder.getParentFile(), "player_flag_index.dfi");
+        DenizenCore.runAsync(() -> {
+            try {
+                loadAndCatchUp();
+            }
+            catch (Throwable ex) {
+                Debug.echoError(ex);
+            }
+        });
+    }
+
+    /**
+     * Writes the index to disk if it has changed. Must be called on the main thread, the write itself happens async unless lockUntilDone is set.
+     */
+    public static void save(boolean lockUntilDone) {
+        byte[] data;
+        synchronized (PlayerFlagIndex.class) {
+            if (!ready || !dirty) {
+                return;
+            }
+            dirty = false;
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024 + flagsByPlayer.size() * 32);
+                DataOutputStream output = new DataOutputStream(bytes);
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeLong(System.currentTimeMillis());
+                output.writeInt(playersByFlag.size());
+                for (Map.Entry<String, HashSet<UUID>> entry : playersByFlag.entrySet()) {
+                    BinaryFlagFileHelper.writeString(output, entry.getKey());
+                    output.writeInt(entry.getValue().size());
+                    for (UUID id : entry.getValue()) {
+                        output.writeLong(id.getMostSignificantBits());
+                        output.writeLong(id.getLeastSignificantBits());
+                    }
+                }
+                ArrayList<UUID> emptyPlayers = new ArrayList<>();
+                for (Map.Entry<UUID, String[]> entry : flagsByPlayer.entrySet()) {
+                    if (entry.getValue().length == 0) {
+                        emptyPlayers.add(entry.getKey());
+                    }
+                }
+                output.writeInt(emptyPlayers.size());
+                for (UUID id : emptyPlayers) {
+                    output.writeLong(id.getMostSignificantBits());
+                    output.writeLong(id.getLeastSignificantBits());
+                }
+                output.flush();
+                data = bytes.toByteArray();
+            }
+            catch (IOException ex) {
+                throw new RuntimeException(ex); // Not possible for an in-memory stream
+            }
+        }
+        Runnable write = () -> {
+            File temp = new File(indexFile.getPath() + ".tmp");
+            try {
+                Files.write(temp.toPath(), data);
+                Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (IOException ex) {
+                Debug.echoError("Failed to save player flag index");
+                Debug.echoError(ex);
+            }
+        };
+        if (lockUntilDone) {
+            write.run();
+        }
+        else {
+            DenizenCore.runAsync(write);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.denizenscript.denizen.utilities.flags;
 
 import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizencore.DenizenCore;
 import com.denizenscript.denizencore.flags.SavableMapFlagTracker;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
@@ -30,7 +31,7 @@ public class WorldFlagHandler implements Listener {
     public void saveAll(boolean lockUntilDone) {
         for (Map.Entry<String, SavableMapFlagTracker> flagTracker : worldFlagTrackers.entrySet()) {
             if (flagTracker.getValue().modified) {
-                flagTracker.getValue().saveToFile(flagPathFor(flagTracker.getKey()), lockUntilDone);
+                saveFlags(flagTracker.getKey(), flagTracker.getValue(), lockUntilDone);
                 flagTracker.getValue().modified = false;
             }
         }
@@ -41,6 +42,17 @@ public class WorldFlagHandler implements Listener {
         worldFlagTrackers.clear();
     }
 
+    public static void saveFlags(String worldName, SavableMapFlagTracker tracker, boolean lockUntilDone) {
+        // Goes through the helper in both formats, so a text save also removes any outdated binary file (which would otherwise be preferred on load)
+        Runnable save = BinaryFlagFileHelper.prepareSave(tracker, flagPathFor(worldName));
+        if (lockUntilDone) {
+            save.run();
+        }
+        else {
+            DenizenCore.runAsync(save);
+        }
+    }
+
     public static String flagPathFor(String worldName) {
         return Bukkit.getWorldContainer().getPath() + "/" + worldName + "/denizen_flags";
     }
@@ -49,7 +61,7 @@ public class WorldFlagHandler implements Listener {
         if (worldFlagTrackers.containsKey(world.getName())) {
             return;
         }
-        worldFlagTrackers.put(world.getName(), SavableMapFlagTracker.loadFlagFile(flagPathFor(world.getName()), true));
+        worldFlagTrackers.put(world.getName(), BinaryFlagFileHelper.loadFlagFile(flagPathFor(world.getName()), true));
     }
 
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -62,7 +74,7 @@ public class WorldFlagHandler implements Listener {
         SavableMapFlagTracker flags = worldFlagTrackers.remove(event.getWorld().getName());
         if (flags != null && flags.modified) {
             flags.modified = false;
-            flags.saveToFile(flagPathFor(event.getWorld().getName()), true);
+            saveFlags(event.getWorld().getName(), flags, true);
         }
     }
 }
@@ -1,14 +1,20 @@
 package com.denizenscript.denizen.utilities.implementation;
 
 import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizen.events.AreaSwitchPredicate;
+import com.denizenscript.denizen.events.FlagSwitchPredicate;
 import com.denizenscript.denizen.utilities.Settings;
 import com.denizenscript.denizen.events.bukkit.ScriptReloadEvent;
 import com.denizenscript.denizen.objects.*;
 import com.denizenscript.denizen.scripts.containers.core.*;
 import com.denizenscript.denizen.tags.BukkitTagContext;
 import com.denizenscript.denizen.utilities.Utilities;
+import com.denizenscript.denizen.utilities.blocks.BlockSearchHelper;
+import com.denizenscript.denizen.utilities.blocks.FakeChunkPacketCache;
 import com.denizenscript.denizen.utilities.debugging.DebugConsoleSender;
+import com.denizenscript.denizen.utilities.flags.ItemFlagCache;
 import com.denizenscript.denizen.utilities.flags.PlayerFlagHandler;
+import com.denizenscript.denizen.utilities.inventory.ItemMatcher;
 import com.denizenscript.denizencore.objects.core.VectorObject;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizen.utilities.depends.Depends;
@@ -73,6 +79,13 @@ public class DenizenCoreImplementation implements DenizenImplementation {
         }
         // Give map image downloads a new chance
         DenizenMapManager.failedUrls.clear();
+        // Drop compiled 'in:' switches, as the scripts that use them are being replaced
+        AreaSwitchPredicate.cache.clear();
+        FlagSwitchPredicate.cache.clear();
+        ItemMatcher.cache.clear();
+        ItemFlagCache.clear();
+        FakeChunkPacketCache.clear();
+        BlockSearchHelper.materialMatcherCache.clear();
     }
 
     @Override
@@ -178,6 +191,7 @@ public class DenizenCoreImplementation implements DenizenImplementation {
         EntityScriptHelper.scripts.clear();
         ItemScriptHelper.item_scripts.clear();
         ItemScriptHelper.item_scripts_by_hash_id.clear();
+        ItemScriptHelper.clearScriptLookupCache();
     }
 
     @Override
@@ -0,0 +1,158 @@
+package com.denizenscript.denizen.utilities.inventory;
+
+import com.denizenscript.denizen.objects.ItemTag;
+import com.denizenscript.denizen.scripts.containers.core.ItemScriptHelper;
+import com.denizenscript.denizencore.events.ScriptEvent;
+import com.denizenscript.denizencore.tags.TagContext;
+import com.denizenscript.denizencore.utilities.CoreUtilities;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An item matcher (see 'Advanced Object Matching') that is parsed once, for testing against many raw ItemStacks (eg every slot of an inventory).
+ * Matchers that only depend on material are answered from a per-material table for any item that isn't an item script, without copying the item.
+ * Single 'raw_exact:' and 'item_flagged:' matchers are parsed once, and reject items by material before reading any item data.
+ * Anything else falls back to the regular per-item matcher.
+ */
+public class ItemMatcher {
+
+    public enum Kind { MATERIAL, RAW_EXACT, FLAGGED, GENERIC }
+
+    public static final byte UNKNOWN = 0, MATCH = 1, NO_MATCH = 2;
+
+    /**
+     * Compiled matchers that don't depend on any changeable data, by matcher text. Cleared on script reload.
+     */
+    public static final Map<String, ItemMatcher> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Returns a compiled form of the given item matcher, reusing a cached one where possible.
+     */
+    public static ItemMatcher get(String matcher) {
+        ItemMatcher result = cache.get(matcher);
+        if (result != null) {
+            return result;
+        }
+        result = new ItemMatcher(matcher);
+        if (result.cacheable) {
+            if (cache.size() > 1024) {
+                cache.clear();
+            }
+            cache.put(matcher, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if every prefix (anything before a ':') in the matcher is one whose result only depends on an item's material.
+     */
+    public static boolean isMaterialOnly(String matcherLow) {
+        if (matcherLow.contains("[")) {
+            return false;
+        }
+        int colon = matcherLow.indexOf(':');
+        while (colon != -1) {
+            String before = matcherLow.substring(0, colon);
+            if (!before.endsWith("vanilla_tagged") && !before.endsWith("material_flagged")) {
+                return false;
+            }
+            colon = matcherLow.indexOf(':', colon + 1);
+        }
+        return true;
+    }
+
+    public static boolean isSingleTerm(String matcherLow) {
+        return !matcherLow.startsWith("!") && !matcherLow.contains("|") && !matcherLow.contains("&&");
+    }
+
+    public final String matcher;
+
+    public Kind kind;
+
+    public boolean cacheable;
+
+    /**
+     * For {@link Kind#MATERIAL}, the result for each material ordinal, filled in as materials are seen.
+     */
+    public byte[] materialResults;
+
+    /**
+     * For {@link Kind#RAW_EXACT}, the item to compare against (null if invalid) and its single-item identity.
+     */
+    public ItemTag rawExactItem;
+
+    public String rawExactIdentity;
+
+    /**
+     * For {@link Kind#FLAGGED}, the flag check text.
+     */
+    public String flagCheck;
+
+    public ItemMatcher(String matcher) {
+        this.matcher = matcher;
+        String matcherLow = CoreUtilities.toLowerCase(matcher);
+        if (isSingleTerm(matcherLow) && matcherLow.startsWith("raw_exact:")) {
+            kind = Kind.RAW_EXACT;
+            rawExactItem = ItemTag.valueOf(matcher.substring("raw_exact:".length()), CoreUtilities.errorButNoDebugContext);
+            if (rawExactItem != null) {
+                ItemTag singleItem = rawExactItem;
+                if (singleItem.getItemStack().getAmount() != 1) {
+                    singleItem = new ItemTag(singleItem.getItemStack().clone());
+                    singleItem.getItemStack().setAmount(1);
+                }
+                rawExactIdentity = singleItem.identify();
+            }
+        }
+        else if (isSingleTerm(matcherLow) && matcherLow.startsWith("item_flagged:")) {
+            kind = Kind.FLAGGED;
+            flagCheck = matcher.substring("item_flagged:".length());
+        }
+        else if (isMaterialOnly(matcherLow)) {
+            kind = Kind.MATERIAL;
+            materialResults = new byte[Material.values().length];
+            // Material flags can change at any time, so only cache tables that can't depend on them
+            cacheable = !matcherLow.contains("material_flagged:");
+        }
+        else {
+            kind = Kind.GENERIC;
+        }
+    }
+
+    public boolean doesMatch(ItemStack item, TagContext context) {
+        Material material = item == null ? Material.AIR : item.getType();
+        switch (kind) {
+            case MATERIAL: {
+                // Item scripts match by script name rather than material name, so need the full check
+                if (!material.isAir() && ItemScriptHelper.isItemscript(item)) {
+                    return new ItemTag(item).tryAdvancedMatcher(matcher, context);
+                }
+                byte result = materialResults[material.ordinal()];
+                if (result == UNKNOWN) {
+                    result = new ItemTag(new ItemStack(material)).tryAdvancedMatcher(matcher, context) ? MATCH : NO_MATCH;
+                    materialResults[material.ordinal()] = result;
+                }
+                return result == MATCH;
+            }
+            case RAW_EXACT: {
+                if (rawExactItem == null || material != rawExactItem.getBukkitMaterial()) {
+                    return false;
+                }
+                ItemTag singleItem = new ItemTag(item);
+                if (singleItem.getItemStack().getAmount() != 1) {
+                    singleItem.getItemStack().setAmount(1);
+                }
+                return rawExactIdentity.equals(singleItem.identify());
+            }
+            case FLAGGED:
+                if (material.isAir()) {
+                    return false;
+                }
+                return ScriptEvent.coreFlaggedCheck(flagCheck, new ItemTag(item).getReadOnlyFlagTracker());
+            default:
+                return new ItemTag(item).tryAdvancedMatcher(matcher, context);
+        }
+    }
+}
@@ -42,6 +42,7 @@ public class DenizenMapManager {
         }
         mapRenderers.clear();
         downloadedByUrl.clear();
+        MapImageCache.clear();
         mapsConfig = YamlConfiguration.loadConfiguration(mapsFile);
         ConfigurationSection mapsSection = mapsConfig.getConfigurationSection("MAPS");
         if (mapsSection == null) {
@@ -24,6 +24,11 @@ public class DenizenMapRenderer extends MapRenderer {
 
     public boolean hasChanged = true;
 
+    /**
+     * Whether a map image may skip redrawing when it would draw exactly what it last drew to the canvas, ie when nothing else draws to the canvas.
+     */
+    public boolean canSkipUnchangedImages = false;
+
     public DenizenMapRenderer(List<MapRenderer> oldMapRenderers, boolean autoUpdate, boolean contextual) {
         super(contextual);
         this.oldMapRenderers = oldMapRenderers;
@@ -97,6 +102,7 @@ public class DenizenMapRenderer extends MapRenderer {
                     oldR.render(mapView, mapCanvas, player);
                 }
             }
+            canSkipUnchangedImages = !displayOriginal && mapObjects.size() == 1 && mapObjects.get(0) instanceof MapImage;
             UUID uuid = player.getUniqueId();
             PlayerTag p = PlayerTag.mirrorBukkitPlayer(player);
             for (MapObject object : mapObjects) {
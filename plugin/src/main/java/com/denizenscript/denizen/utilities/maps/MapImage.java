@@ -3,6 +3,7 @@ package com.denizenscript.denizen.utilities.maps;
 import com.denizenscript.denizen.nms.NMSHandler;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizen.objects.PlayerTag;
+import it.unimi.dsi.fastutil.ints.Int2ByteOpenHashMap;
 import org.bukkit.map.MapCanvas;
 import org.bukkit.map.MapPalette;
 import org.bukkit.map.MapView;
@@ -17,6 +18,7 @@ import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.UUID;
+import java.util.WeakHashMap;
 
 public class MapImage extends MapObject {
 
@@ -30,6 +32,26 @@ public class MapImage extends MapObject {
     public String actualFile = null;
     public boolean disabled = false;
     public DenizenMapRenderer renderer;
+    public String cacheKey = null;
+    public boolean useImageIcon = false;
+
+    /**
+     * What this image last drew to each canvas, to skip redrawing identical data when nothing else could have drawn over it.
+     */
+    public WeakHashMap<MapCanvas, DrawState> lastDrawn = new WeakHashMap<>();
+
+    public static class DrawState {
+
+        public final byte[] data;
+
+        public final int x, y;
+
+        public DrawState(byte[] data, int x, int y) {
+            this.data = data;
+            this.x = x;
+            this.y = y;
+        }
+    }
 
     public MapImage(DenizenMapRenderer renderer, String xTag, String yTag, String visibilityTag, boolean debug, String fileTag, int width, int height) {
         super(xTag, yTag, visibilityTag, debug);
@@ -60,80 +82,120 @@ public class MapImage extends MapObject {
                     disabled = true;
                     return;
                 }
-                imageIcon = new ImageIcon(actualFile);
-                image = imageIcon.getImage();
-                image.getSource().addConsumer(new ImageConsumer() {
-                    @Override
-                    public void setDimensions(int width, int height) {
-                    }
-
-                    @Override
-                    public void setProperties(Hashtable<?, ?> props) {
-                    }
-
-                    @Override
-                    public void setColorModel(ColorModel model) {
-                    }
-
-                    @Override
-                    public void setHints(int hintflags) {
-                    }
-
-                    @Override
-                    public void setPixels(int x, int y, int w, int h, ColorModel model, byte[] pixels, int off, int scansize) {
-                        // When the internal pixels are updated, the cache is no longer current.
-                        cachedImageData = null;
-                        renderer.hasChanged = true;
-                    }
-
-                    @Override
-                    public void setPixels(int x, int y, int w, int h, ColorModel model, int[] pixels, int off, int scansize) {
-                    }
-
-                    @Override
-                    public void imageComplete(int status) {
-                    }
-                });
-                if (width == 0) {
-                    width = image.getWidth(null);
-                }
-                if (height == 0) {
-                    height = image.getHeight(null);
-                }
-                if (width == -1 || height == -1) {
-                    Debug.echoError("Image loading failed (bad width/height) for image " + fileTag);
-                    disabled = true;
-                    return;
-                }
-                disabled = false;
+                cacheKey = MapImageCache.getKey(actualFile, width, height);
             }
             if (disabled) {
                 return;
             }
-            // Use custom functions to draw image to allow transparency and reduce lag intensely
-            byte[] bytes;
-            if (cachedImageData == null || image != imageForCache) {
-                bytes = imageToBytes(image, width, height);
-                if (bytes == null) {
-                    Debug.echoError("Image loading failed (bad imageToBytes) for image " + fileTag);
+            byte[] bytes = null;
+            if (!useImageIcon) {
+                MapImageCache.Entry entry = MapImageCache.get(cacheKey, actualFile, width, height, renderer);
+                if (entry == null) {
+                    return; // Still loading
+                }
+                if (entry == MapImageCache.FAILED) {
                     disabled = true;
                     return;
                 }
-                cachedImageData = bytes;
-                imageForCache = image;
+                if (entry.useImageIcon) {
+                    useImageIcon = true;
+                    if (!loadImageIcon()) {
+                        return;
+                    }
+                }
+                else {
+                    width = entry.width;
+                    height = entry.height;
+                    bytes = entry.data;
+                }
             }
-            else {
-                bytes = cachedImageData;
+            if (useImageIcon) {
+                bytes = getImageIconBytes();
+                if (bytes == null) {
+                    return;
+                }
             }
             int x = getX(player);
             int y = getY(player);
+            DrawState last = lastDrawn.get(mapCanvas);
+            if (renderer.canSkipUnchangedImages && last != null && last.data == bytes && last.x == x && last.y == y) {
+                return;
+            }
             NMSHandler.packetHelper.setMapData(mapCanvas, bytes, x, y, this);
+            lastDrawn.put(mapCanvas, new DrawState(bytes, x, y));
         }
         catch (Throwable ex) {
             Debug.echoError(ex);
         }
     }
 
+    /**
+     * Loads the image through an ImageIcon, which keeps animated images (like GIFs) updating. Returns false if loading failed.
+     */
+    public boolean loadImageIcon() {
+        imageIcon = new ImageIcon(actualFile);
+        image = imageIcon.getImage();
+        image.getSource().addConsumer(new ImageConsumer() {
+            @Override
+            public void setDimensions(int width, int height) {
+            }
+
+            @Override
+            public void setProperties(Hashtable<?, ?> props) {
+            }
+
+            @Override
+            public void setColorModel(ColorModel model) {
+            }
+
+            @Override
+            public void setHints(int hintflags) {
+            }
+
+            @Override
+            public void setPixels(int x, int y, int w, int h, ColorModel model, byte[] pixels, int off, int scansize) {
+                // When the internal pixels are updated, the cache is no longer current.
+                cachedImageData = null;
+                renderer.hasChanged = true;
+            }
+
+            @Override
+            public void setPixels(int x, int y, int w, int h, ColorModel model, int[] pixels, int off, int scansize) {
+            }
+
+            @Override
+            public void imageComplete(int status) {
+            }
+        });
+        if (width == 0) {
+            width = image.getWidth(null);
+        }
+        if (height == 0) {
+            height = image.getHeight(null);
+        }
+        if (width == -1 || height == -1) {
+            Debug.echoError("Image loading failed (bad width/height) for image " + fileTag);
+            disabled = true;
+            return false;
+        }
+        return true;
+    }
+
+    public byte[] getImageIconBytes() {
+        // Use custom functions to draw image to allow transparency and reduce lag intensely
+        if (cachedImageData == null || image != imageForCache) {
+            byte[] bytes = imageToBytes(image, width, height);
+            if (bytes == null) {
+                Debug.echoError("Image loading failed (bad imageToBytes) for image " + fileTag);
+                disabled = true;
+                return null;
+            }
+            cachedImageData = bytes;
+            imageForCache = image;
+        }
+        return cachedImageData;
+    }
+
     private static final Color[] bukkitColors;
 
     static {
@@ -150,6 +212,13 @@ public class MapImage extends MapObject {
     }
 
     public static byte[] imageToBytes(Image image, int width, int height) {
+        return imageToBytes(image, width, height, null);
+    }
+
+    /**
+     * Converts an image to map palette bytes. If a local color cache is given, it's used instead of the shared one, which makes this safe to call off the main thread.
+     */
+    public static byte[] imageToBytes(Image image, int width, int height, Int2ByteOpenHashMap localCache) {
         BufferedImage temp = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         Graphics2D graphics = temp.createGraphics();
         graphics.drawImage(image, 0, 0, width, height, null);
@@ -158,7 +227,21 @@ public class MapImage extends MapObject {
         temp.getRGB(0, 0, width, height, pixels, 0, width);
         byte[] result = new byte[width * height];
         for (int i = 0; i < pixels.length; i++) {
-            result[i] = matchColor(new Color(pixels[i], true));
+            if (localCache == null) {
+                result[i] = matchColor(new Color(pixels[i], true));
+            }
+            else if ((pixels[i] >>> 24) < 128) {
+                result[i] = 0;
+            }
+            else {
+                int rgb = pixels[i] & 0xFFFFFF;
+                byte color = localCache.getOrDefault(rgb, (byte) -1);
+                if (color == -1 && !localCache.containsKey(rgb)) {
+                    color = findClosestColor(new Color(rgb));
+                    localCache.put(rgb, color);
+                }
+                result[i] = color;
+            }
         }
         return result;
     }
@@ -173,6 +256,14 @@ public class MapImage extends MapObject {
         if (result != null) {
             return result;
         }
+        byte gotten = findClosestColor(color);
+        if (colorCache.size() < 1024 * 16) {
+            colorCache.put(color, gotten);
+        }
+        return gotten;
+    }
+
+    public static byte findClosestColor(Color color) {
         int index = 0;
         double best = -1;
         for (int i = 4; i < bukkitColors.length; i++) {
@@ -182,11 +273,7 @@ public class MapImage extends MapObject {
                 index = i;
             }
         }
-        byte gotten = (byte) (index < 128 ? index : -129 + (index - 127));
-        if (colorCache.size() < 1024 * 16) {
-            colorCache.put(color, gotten);
-        }
-        return gotten;
+        return (byte) (index < 128 ? index : -129 + (index - 127));
     }
 
     public static double getDistance(Color c1, Color c2) {
@@ -0,0 +1,166 @@
+package com.denizenscript.denizen.utilities.maps;
+
+import com.denizenscript.denizen.Denizen;
+import com.denizenscript.denizencore.DenizenCore;
+import com.denizenscript.denizencore.utilities.debugging.Debug;
+import it.unimi.dsi.fastutil.ints.Int2ByteOpenHashMap;
+import org.bukkit.Bukkit;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.*;
+
+/**
+ * A global cache of map images already converted to map palette bytes, shared by every map that shows the same file at the same size.
+ * Images are read and converted off the main thread, and maps waiting on an image are re-rendered once it's ready.
+ * Animated images (and formats ImageIO can't read) are flagged to be loaded the old way, through an ImageIcon per map object.
+ */
+public class MapImageCache {
+
+    public static class Entry {
+
+        public final byte[] data;
+
+        public final int width, height;
+
+        /**
+         * True if the image can't be cached as a single frame, and should be loaded through an ImageIcon instead.
+         */
+        public final boolean useImageIcon;
+
+        public Entry(byte[] data, int width, int height, boolean useImageIcon) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+            this.useImageIcon = useImageIcon;
+        }
+    }
+
+    public static final Entry USE_IMAGE_ICON = new Entry(null, 0, 0, true);
+
+    public static final Entry FAILED = new Entry(null, 0, 0, false);
+
+    public static long maxBytes = 64L * 1024 * 1024;
+
+    public static long totalBytes = 0;
+
+    /**
+     * Loaded images by cache key, least recently used first. Only accessed on the main thread.
+     */
+    public static final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * Renderers waiting on an image that is currently loading, by cache key.
+     */
+    public static final HashMap<String, List<DenizenMapRenderer>> loading = new HashMap<>();
+
+    /**
+     * Returns the cache key for an image file at the given requested size (0 for the image's own size).
+     * Includes the file's modification time, so that changed files get reloaded.
+     */
+    public static String getKey(String file, int width, int height) {
+        return file + "|" + new File(file).lastModified() + "|" + width + "x" + height;
+    }
+
+    /**
+     * Returns the image for the given key if it's loaded, or null if not (in which case it will be loaded async, and the renderer re-rendered once it's ready).
+     * Must be called on the main thread.
+     */
+    public static Entry get(String key, String file, int width, int height, DenizenMapRenderer renderer) {
+        Entry entry = cache.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        List<DenizenMapRenderer> waiting = loading.get(key);
+        if (waiting != null) {
+            if (!waiting.contains(renderer)) {
+                waiting.add(renderer);
+            }
+            return null;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(renderer);
+        loading.put(key, waiting);
+        DenizenCore.runAsync(() -> {
+            Entry loaded;
+            try {
+                loaded = load(file, width, height);
+            }
+            catch (Throwable ex) {
+                Debug.echoError("Image loading failed for image " + file);
+                Debug.echoError(ex);
+                loaded = FAILED;
+            }
+            Entry result = loaded;
+            Bukkit.getScheduler().runTask(Denizen.getInstance(), () -> finishLoad(key, result));
+        });
+        return null;
+    }
+
+    public static void finishLoad(String key, Entry entry) {
+        List<DenizenMapRenderer> waiting = loading.remove(key);
+        if (waiting == null) {
+            return; // Cache was cleared while loading
+        }
+        cache.put(key, entry);
+        if (entry.data != null) {
+            totalBytes += entry.data.length;
+            Iterator<Entry> iterator = cache.values().iterator();
+            while (totalBytes > maxBytes && cache.size() > 1 && iterator.hasNext()) {
+                Entry eldest = iterator.next();
+                if (eldest == entry) {
+                    continue;
+                }
+                if (eldest.data != null) {
+                    totalBytes -= eldest.data.length;
+                }
+                iterator.remove();
+            }
+        }
+        for (DenizenMapRenderer renderer : waiting) {
+            renderer.hasChanged = true;
+        }
+    }
+
+    /**
+     * Reads and converts an image. Safe to call from any thread.
+     */
+    public static Entry load(String file, int width, int height) throws Exception {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(file))) {
+            if (input == null) {
+                return USE_IMAGE_ICON;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return USE_IMAGE_ICON;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input);
+                if (reader.getNumImages(true) != 1) {
+                    return USE_IMAGE_ICON;
+                }
+                BufferedImage image = reader.read(0);
+                int actualWidth = width > 0 ? width : image.getWidth();
+                int actualHeight = height > 0 ? height : image.getHeight();
+                if (actualWidth <= 0 || actualHeight <= 0) {
+                    Debug.echoError("Image loading failed (bad width/height) for image " + file);
+                    return FAILED;
+                }
+                return new Entry(MapImage.imageToBytes(image, actualWidth, actualHeight, new Int2ByteOpenHashMap()), actualWidth, actualHeight, false);
+            }
+            finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    public static void clear() {
+        cache.clear();
+        loading.clear();
+        totalBytes = 0;
+    }
+}
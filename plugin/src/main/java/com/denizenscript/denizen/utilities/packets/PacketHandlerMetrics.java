@@ -0,0 +1,47 @@
+package com.denizenscript.denizen.utilities.packets;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks how many times each outgoing packet handler ran and how much network thread time it took.
+ * Written to from network threads, so all counters are thread-safe.
+ */
+public class PacketHandlerMetrics {
+
+    public static class Entry {
+
+        public final String name;
+
+        public final LongAdder calls = new LongAdder();
+
+        public final LongAdder nanos = new LongAdder();
+
+        public Entry(String name) {
+            this.name = name;
+        }
+
+        public void record(long timeNanos) {
+            calls.increment();
+            nanos.add(timeNanos);
+        }
+
+        public void reset() {
+            calls.reset();
+            nanos.reset();
+        }
+    }
+
+    public static final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public static Entry getEntry(String name) {
+        return entries.computeIfAbsent(name, Entry::new);
+    }
+
+    public static void reset() {
+        for (Entry entry : entries.values()) {
+            entry.reset();
+        }
+    }
+}
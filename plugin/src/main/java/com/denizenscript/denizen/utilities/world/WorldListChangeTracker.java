@@ -1,5 +1,6 @@
 package com.denizenscript.denizen.utilities.world;
 
+import com.denizenscript.denizen.utilities.blocks.FakeChunkPacketCache;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.world.WorldInitEvent;
@@ -18,6 +19,7 @@ public class WorldListChangeTracker implements Listener {
     @EventHandler
     public void onWorldUnloaded(WorldUnloadEvent event) {
         changes++;
+        FakeChunkPacketCache.removeWorld(event.getWorld().getName());
     }
 
     @EventHandler
@@ -30,6 +30,7 @@ import org.bukkit.block.Bell;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
 import org.bukkit.block.Skull;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.craftbukkit.v1_17_R1.CraftChunk;
 import org.bukkit.craftbukkit.v1_17_R1.CraftWorld;
 import org.bukkit.craftbukkit.v1_17_R1.block.CraftBlock;
@@ -278,4 +279,8 @@ public class BlockHelperImpl implements BlockHelper {
         return Color.fromRGB(craftBlock.getNMS().getMapColor(craftBlock.getHandle(), craftBlock.getPosition()).col);
     }
 
+    @Override
+    public boolean hasBlockEntity(BlockData data) {
+        return ((CraftBlockData) data).getState().hasBlockEntity();
+    }
 }
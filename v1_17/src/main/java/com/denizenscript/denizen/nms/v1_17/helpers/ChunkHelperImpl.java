@@ -14,14 +14,18 @@ import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.biome.Biome;
 import net.minecraft.world.level.chunk.ChunkBiomeContainer;
 import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
 import net.minecraft.world.level.levelgen.Heightmap;
+import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.Chunk;
 import org.bukkit.craftbukkit.v1_17_R1.CraftChunk;
 import org.bukkit.craftbukkit.v1_17_R1.CraftWorld;
+import org.bukkit.craftbukkit.v1_17_R1.util.CraftMagicNumbers;
 
 import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
+import java.util.function.Predicate;
 
 public class ChunkHelperImpl implements ChunkHelper {
 
@@ -118,4 +122,18 @@ public class ChunkHelperImpl implements ChunkHelper {
         }
         nmsChunk.markUnsaved();
     }
+
+    @Override
+    public boolean sectionMayContain(Chunk chunk, int sectionY, Predicate<Material> matcher) {
+        LevelChunk nmsChunk = ((CraftChunk) chunk).getHandle();
+        int index = nmsChunk.getSectionIndexFromSectionY(sectionY);
+        if (index < 0 || index >= nmsChunk.getSections().length) {
+            return true;
+        }
+        LevelChunkSection section = nmsChunk.getSections()[index];
+        if (section == null) {
+            return matcher.test(Material.AIR);
+        }
+        return section.maybeHas((state) -> matcher.test(CraftMagicNumbers.getMaterial(state.getBlock())));
+    }
 }
@@ -53,10 +53,28 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.RecipeChoice;
 import org.bukkit.inventory.ShapedRecipe;
 
+import java.lang.reflect.Field;
 import java.util.*;
 
 public class ItemHelperImpl extends ItemHelper {
 
+    public static final Field CraftItemStack_handle = ReflectionHelper.getFields(CraftItemStack.class).get("handle");
+
+    /**
+     * Returns the NMS stack backing the item without copying it where possible (ie for CraftItemStacks), or a copy otherwise. The result must not be modified.
+     */
+    public static net.minecraft.world.item.ItemStack getHandleNoCopy(ItemStack item) {
+        if (item instanceof CraftItemStack) {
+            try {
+                return (net.minecraft.world.item.ItemStack) CraftItemStack_handle.get(item);
+            }
+            catch (Throwable ex) {
+                Debug.echoError(ex);
+            }
+        }
+        return CraftItemStack.asNMSCopy(item);
+    }
+
     public static net.minecraft.world.item.crafting.Recipe<?> getNMSRecipe(NamespacedKey key) {
         ResourceLocation nmsKey = CraftNamespacedKey.toMinecraft(key);
         for (Object2ObjectLinkedOpenHashMap<ResourceLocation, net.minecraft.world.item.crafting.Recipe<?>> recipeMap : ((CraftServer) Bukkit.getServer()).getServer().getRecipeManager().recipes.values()) {
@@ -228,6 +246,15 @@ public class ItemHelperImpl extends ItemHelper {
         return new CompoundTagImpl(new HashMap<>());
     }
 
+    @Override
+    public String getCustomDataString(ItemStack item, String key) {
+        net.minecraft.world.item.ItemStack nmsItemStack = getHandleNoCopy(item);
+        if (nmsItemStack == null || !nmsItemStack.hasTag()) {
+            return null;
+        }
+        return nmsItemStack.getTag().getString(key);
+    }
+
     @Override
     public ItemStack setNbtData(ItemStack itemStack, CompoundTag compoundTag) {
         net.minecraft.world.item.ItemStack nmsItemStack = CraftItemStack.asNMSCopy(itemStack);
@@ -418,7 +418,7 @@ public class PacketHelperImpl implements PacketHelper {
             return;
         }
         try {
-            boolean anyChanged = false;
+            int dirtyMinX = 128, dirtyMinY = 128, dirtyMaxX = -1, dirtyMaxY = -1;
             byte[] buffer = (byte[]) CANVAS_GET_BUFFER.invoke(canvas);
             for (int x2 = x < 0 ? -x : 0; x2 < width; ++x2) {
                 for (int y2 = y < 0 ? -y : 0; y2 < height; ++y2) {
@@ -427,16 +427,19 @@ public class PacketHelperImpl implements PacketHelper {
                         int index = (y2 + y) * 128 + (x2 + x);
                         if (buffer[index] != p) {
                             buffer[index] = p;
-                            anyChanged = true;
+                            dirtyMinX = Math.min(dirtyMinX, x2 + x);
+                            dirtyMinY = Math.min(dirtyMinY, y2 + y);
+                            dirtyMaxX = Math.max(dirtyMaxX, x2 + x);
+                            dirtyMaxY = Math.max(dirtyMaxY, y2 + y);
                         }
                     }
                 }
             }
-            if (anyChanged) {
-                // Flag the whole image as dirty
+            if (dirtyMaxX != -1) {
+                // Flag only the pixels that actually changed as dirty, so the update packet only needs to carry that region
                 MapItemSavedData map = (MapItemSavedData) MAPVIEW_WORLDMAP.get(canvas.getMapView());
-                map.setColorsDirty(Math.max(x, 0), Math.max(y, 0));
-                map.setColorsDirty(width + x - 1, height + y - 1);
+                map.setColorsDirty(dirtyMinX, dirtyMinY);
+                map.setColorsDirty(dirtyMaxX, dirtyMaxY);
             }
         }
         catch (Throwable ex) {
@@ -303,6 +303,18 @@ public class Handler extends NMSHandler {
         return null;
     }
 
+    @Override
+    public byte[] containerGetBytes(PersistentDataContainer container, String key) {
+        net.minecraft.nbt.Tag base = ((CraftPersistentDataContainer) container).getRaw().get(key);
+        if (base instanceof ByteArrayTag) {
+            return ((ByteArrayTag) base).getAsByteArray();
+        }
+        else if (base instanceof StringTag) {
+            return base.getAsString().getBytes(StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
     public static BaseComponent[] componentToSpigot(Component nms) {
         if (nms == null) {
             return null;
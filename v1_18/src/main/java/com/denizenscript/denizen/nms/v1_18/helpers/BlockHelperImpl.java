@@ -37,6 +37,7 @@ import net.minecraft.world.level.chunk.LevelChunk;
 import net.minecraft.world.level.material.PushReaction;
 import org.bukkit.*;
 import org.bukkit.block.*;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.craftbukkit.v1_18_R2.CraftChunk;
 import org.bukkit.craftbukkit.v1_18_R2.CraftServer;
 import org.bukkit.craftbukkit.v1_18_R2.CraftWorld;
@@ -381,4 +382,8 @@ public class BlockHelperImpl implements BlockHelper {
         }
     }
 
+    @Override
+    public boolean hasBlockEntity(BlockData data) {
+        return ((CraftBlockData) data).getState().hasBlockEntity();
+    }
 }
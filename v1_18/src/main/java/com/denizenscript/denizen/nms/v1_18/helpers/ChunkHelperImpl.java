@@ -17,13 +17,16 @@ import net.minecraft.world.level.chunk.LevelChunk;
 import net.minecraft.world.level.chunk.LevelChunkSection;
 import net.minecraft.world.level.chunk.PalettedContainer;
 import net.minecraft.world.level.levelgen.Heightmap;
+import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.Chunk;
 import org.bukkit.craftbukkit.v1_18_R2.CraftChunk;
 import org.bukkit.craftbukkit.v1_18_R2.CraftWorld;
+import org.bukkit.craftbukkit.v1_18_R2.util.CraftMagicNumbers;
 
 import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
+import java.util.function.Predicate;
 
 public class ChunkHelperImpl implements ChunkHelper {
 
@@ -115,4 +118,14 @@ public class ChunkHelperImpl implements ChunkHelper {
             datapaletteblock.release();
         }
     }
+
+    @Override
+    public boolean sectionMayContain(Chunk chunk, int sectionY, Predicate<Material> matcher) {
+        LevelChunk nmsChunk = ((CraftChunk) chunk).getHandle();
+        int index = nmsChunk.getSectionIndexFromSectionY(sectionY);
+        if (index < 0 || index >= nmsChunk.getSections().length) {
+            return true;
+        }
+        return nmsChunk.getSection(index).maybeHas((state) -> matcher.test(CraftMagicNumbers.getMaterial(state.getBlock())));
+    }
 }
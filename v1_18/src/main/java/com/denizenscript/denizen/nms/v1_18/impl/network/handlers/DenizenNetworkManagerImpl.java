@@ -12,13 +12,11 @@ import com.denizenscript.denizen.nms.v1_18.impl.ProfileEditorImpl;
 import com.denizenscript.denizen.nms.v1_18.impl.blocks.BlockLightImpl;
 import com.denizenscript.denizen.nms.v1_18.impl.entities.EntityFakePlayerImpl;
 import com.denizenscript.denizen.nms.v1_18.impl.network.packets.PacketOutChatImpl;
-import com.denizenscript.denizen.objects.LocationTag;
 import com.denizenscript.denizen.objects.PlayerTag;
 import com.denizenscript.denizen.scripts.commands.entity.*;
 import com.denizenscript.denizen.scripts.commands.player.DisguiseCommand;
 import com.denizenscript.denizen.utilities.FormattedTextHelper;
 import com.denizenscript.denizen.utilities.Settings;
-import com.denizenscript.denizen.utilities.blocks.ChunkCoordinate;
 import com.denizenscript.denizen.utilities.blocks.FakeBlock;
 import com.denizenscript.denizen.utilities.entity.EntityAttachmentHelper;
 import com.denizenscript.denizen.utilities.entity.FakeEntity;
@@ -1026,8 +1024,8 @@ public class DenizenNetworkManagerImpl extends Connection {
         return false;
     }
 
-    public boolean isHidden(Entity entity) {
-        return entity != null && HideEntitiesHelper.playerShouldHide(player.getBukkitEntity().getUniqueId(), entity.getBukkitEntity());
+    public boolean isHidden(Entity entity, boolean spawned) {
+        return entity != null && HideEntitiesHelper.playerShouldHide(player.getBukkitEntity().getUniqueId(), entity.getBukkitEntity(), spawned);
     }
 
     public boolean processHiddenEntitiesForPacket(Packet<?> packet) {
@@ -1037,20 +1035,26 @@ public class DenizenNetworkManagerImpl extends Connection {
         try {
             int ider = -1;
             Entity e = null;
+            boolean spawned = false;
             if (packet instanceof ClientboundAddPlayerPacket) {
                 ider = ((ClientboundAddPlayerPacket) packet).getEntityId();
+                spawned = true;
             }
             else if (packet instanceof ClientboundAddEntityPacket) {
                 ider = ((ClientboundAddEntityPacket) packet).getId();
+                spawned = true;
             }
             else if (packet instanceof ClientboundAddMobPacket) {
                 ider = ((ClientboundAddMobPacket) packet).getId();
+                spawned = true;
             }
             else if (packet instanceof ClientboundAddPaintingPacket) {
                 ider = ((ClientboundAddPaintingPacket) packet).getId();
+                spawned = true;
             }
             else if (packet instanceof ClientboundAddExperienceOrbPacket) {
                 ider = ((ClientboundAddExperienceOrbPacket) packet).getId();
+                spawned = true;
             }
             else if (packet instanceof ClientboundMoveEntityPacket) {
                 e = ((ClientboundMoveEntityPacket) packet).getEntity(player.getLevel());
@@ -1068,7 +1072,7 @@ public class DenizenNetworkManagerImpl extends Connection {
                 e = player.getLevel().getEntity(ider);
             }
             if (e != null) {
-                if (isHidden(e)) {
+                if (isHidden(e, spawned)) {
                     return true;
                 }
             }
@@ -1137,12 +1141,11 @@ public class DenizenNetworkManagerImpl extends Connection {
                 }
                 int chunkX = ((ClientboundLevelChunkWithLightPacket) packet).getX();
                 int chunkZ = ((ClientboundLevelChunkWithLightPacket) packet).getZ();
-                ChunkCoordinate chunkCoord = new ChunkCoordinate(chunkX, chunkZ, player.getLevel().getWorld().getName());
-                List<FakeBlock> blocks = FakeBlock.getFakeBlocksFor(player.getUUID(), chunkCoord);
-                if (blocks == null || blocks.isEmpty()) {
+                FakeBlock.ChunkFakeBlocks chunk = map.getChunk(player.getLevel().getWorld().getName(), chunkX, chunkZ);
+                if (chunk == null || chunk.blocks.isEmpty()) {
                     return false;
                 }
-                ClientboundLevelChunkWithLightPacket newPacket = FakeBlockHelper.handleMapChunkPacket(player.getBukkitEntity().getWorld(), (ClientboundLevelChunkWithLightPacket) packet, chunkX, chunkZ, blocks);
+                ClientboundLevelChunkWithLightPacket newPacket = FakeBlockHelper.handleMapChunkPacket(player.getBukkitEntity().getWorld(), (ClientboundLevelChunkWithLightPacket) packet, chunkX, chunkZ, chunk);
                 oldManager.send(newPacket, genericfuturelistener);
                 return true;
             }
@@ -1152,12 +1155,11 @@ public class DenizenNetworkManagerImpl extends Connection {
                     return false;
                 }
                 SectionPos coord = (SectionPos) SECTIONPOS_MULTIBLOCKCHANGE.get(packet);
-                ChunkCoordinate coordinateDenizen = new ChunkCoordinate(coord.getX(), coord.getZ(), player.getLevel().getWorld().getName());
-                if (!map.byChunk.containsKey(coordinateDenizen)) {
+                FakeBlock.ChunkFakeBlocks chunk = map.getChunk(player.getLevel().getWorld().getName(), coord.getX(), coord.getZ());
+                if (chunk == null || !chunk.mightHaveSection(coord.getY())) {
                     return false;
                 }
                 ClientboundSectionBlocksUpdatePacket newPacket = new ClientboundSectionBlocksUpdatePacket(copyPacket(packet));
-                LocationTag location = new LocationTag(player.getLevel().getWorld(), 0, 0, 0);
                 short[] originalOffsetArray = (short[])OFFSETARRAY_MULTIBLOCKCHANGE.get(newPacket);
                 BlockState[] originalDataArray = (BlockState[])BLOCKARRAY_MULTIBLOCKCHANGE.get(newPacket);
                 short[] offsetArray = Arrays.copyOf(originalOffsetArray, originalOffsetArray.length);
@@ -1167,10 +1169,7 @@ public class DenizenNetworkManagerImpl extends Connection {
                 for (int i = 0; i < offsetArray.length; i++) {
                     short offset = offsetArray[i];
                     BlockPos pos = coord.relativeToBlockPos(offset);
-                    location.setX(pos.getX());
-                    location.setY(pos.getY());
-                    location.setZ(pos.getZ());
-                    FakeBlock block = map.byLocation.get(location);
+                    FakeBlock block = chunk.get(pos.getX(), pos.getY(), pos.getZ());
                     if (block != null) {
                         dataArray[i] = FakeBlockHelper.getNMSState(block);
                     }
@@ -1180,8 +1179,7 @@ public class DenizenNetworkManagerImpl extends Connection {
             }
             else if (packet instanceof ClientboundBlockUpdatePacket) {
                 BlockPos pos = ((ClientboundBlockUpdatePacket) packet).getPos();
-                LocationTag loc = new LocationTag(player.getLevel().getWorld(), pos.getX(), pos.getY(), pos.getZ());
-                FakeBlock block = FakeBlock.getFakeBlockFor(player.getUUID(), loc);
+                FakeBlock block = FakeBlock.getFakeBlockFor(player.getUUID(), player.getLevel().getWorld().getName(), pos.getX(), pos.getY(), pos.getZ());
                 if (block != null) {
                     ClientboundBlockUpdatePacket newPacket = new ClientboundBlockUpdatePacket(((ClientboundBlockUpdatePacket) packet).getPos(), FakeBlockHelper.getNMSState(block));
                     oldManager.send(newPacket, genericfuturelistener);
@@ -1191,8 +1189,7 @@ public class DenizenNetworkManagerImpl extends Connection {
             else if (packet instanceof ClientboundBlockBreakAckPacket) {
                 ClientboundBlockBreakAckPacket origPack = (ClientboundBlockBreakAckPacket) packet;
                 BlockPos pos = origPack.pos();
-                LocationTag loc = new LocationTag(player.getLevel().getWorld(), pos.getX(), pos.getY(), pos.getZ());
-                FakeBlock block = FakeBlock.getFakeBlockFor(player.getUUID(), loc);
+                FakeBlock block = FakeBlock.getFakeBlockFor(player.getUUID(), player.getLevel().getWorld().getName(), pos.getX(), pos.getY(), pos.getZ());
                 if (block != null) {
                     ClientboundBlockBreakAckPacket newPacket = new ClientboundBlockBreakAckPacket(origPack.pos(), FakeBlockHelper.getNMSState(block), origPack.action(), false);
                     oldManager.send(newPacket, genericfuturelistener);
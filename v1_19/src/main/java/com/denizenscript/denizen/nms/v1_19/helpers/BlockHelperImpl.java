@@ -42,6 +42,7 @@ import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
 import org.bukkit.block.CreatureSpawner;
 import org.bukkit.block.Skull;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.craftbukkit.v1_19_R3.CraftChunk;
 import org.bukkit.craftbukkit.v1_19_R3.CraftServer;
 import org.bukkit.craftbukkit.v1_19_R3.CraftWorld;
@@ -359,4 +360,9 @@ public class BlockHelperImpl implements BlockHelper {
             PacketHelperImpl.send(player, tagsPacket);
         }
     }
+
+    @Override
+    public boolean hasBlockEntity(BlockData data) {
+        return ((CraftBlockData) data).getState().hasBlockEntity();
+    }
 }
@@ -21,8 +21,10 @@ import com.denizenscript.denizencore.objects.core.DurationTag;
 import com.denizenscript.denizencore.utilities.ReflectionHelper;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.shorts.ShortArraySet;
 import net.md_5.bungee.api.ChatColor;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.protocol.Packet;
@@ -43,6 +45,7 @@ import net.minecraft.world.entity.monster.Spider;
 import net.minecraft.world.inventory.AbstractContainerMenu;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.entity.BlockEntityType;
+import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.saveddata.maps.MapItemSavedData;
 import net.minecraft.world.scores.PlayerTeam;
 import net.minecraft.world.scores.Team;
@@ -50,9 +53,12 @@ import org.bukkit.Bukkit;
 import org.bukkit.EntityEffect;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.banner.Pattern;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.craftbukkit.v1_19_R3.CraftServer;
 import org.bukkit.craftbukkit.v1_19_R3.CraftWorld;
+import org.bukkit.craftbukkit.v1_19_R3.block.data.CraftBlockData;
 import org.bukkit.craftbukkit.v1_19_R3.entity.CraftEntity;
 import org.bukkit.craftbukkit.v1_19_R3.entity.CraftPlayer;
 import org.bukkit.craftbukkit.v1_19_R3.inventory.CraftItemStack;
@@ -157,6 +163,15 @@ public class PacketHelperImpl implements PacketHelper {
         send(player, new ClientboundBlockEventPacket(position, block, action, state));
     }
 
+    @Override
+    public void showMultiBlockChange(Player player, World world, int sectionX, int sectionY, int sectionZ, short[] positions, BlockData[] data) {
+        BlockState[] states = new BlockState[data.length];
+        for (int i = 0; i < data.length; i++) {
+            states[i] = ((CraftBlockData) data[i]).getState();
+        }
+        send(player, new ClientboundSectionBlocksUpdatePacket(SectionPos.of(sectionX, sectionY, sectionZ), new ShortArraySet(positions), states));
+    }
+
     @Override
     public void showBlockCrack(Player player, int id, Location location, int progress) {
         BlockPos position = new BlockPos(location.getBlockX(), location.getBlockY(), location.getBlockZ());
@@ -354,7 +369,7 @@ public class PacketHelperImpl implements PacketHelper {
             return;
         }
         try {
-            boolean anyChanged = false;
+            int dirtyMinX = 128, dirtyMinY = 128, dirtyMaxX = -1, dirtyMaxY = -1;
             byte[] buffer = (byte[]) CANVAS_GET_BUFFER.invoke(canvas);
             for (int x2 = x < 0 ? -x : 0; x2 < width; ++x2) {
                 for (int y2 = y < 0 ? -y : 0; y2 < height; ++y2) {
@@ -363,16 +378,19 @@ public class PacketHelperImpl implements PacketHelper {
                         int index = (y2 + y) * 128 + (x2 + x);
                         if (buffer[index] != p) {
                             buffer[index] = p;
-                            anyChanged = true;
+                            dirtyMinX = Math.min(dirtyMinX, x2 + x);
+                            dirtyMinY = Math.min(dirtyMinY, y2 + y);
+                            dirtyMaxX = Math.max(dirtyMaxX, x2 + x);
+                            dirtyMaxY = Math.max(dirtyMaxY, y2 + y);
                         }
                     }
                 }
             }
-            if (anyChanged) {
-                // Flag the whole image as dirty
+            if (dirtyMaxX != -1) {
+                // Flag only the pixels that actually changed as dirty, so the update packet only needs to carry that region
                 MapItemSavedData map = (MapItemSavedData) MAPVIEW_WORLDMAP.get(canvas.getMapView());
-                map.setColorsDirty(Math.max(x, 0), Math.max(y, 0));
-                map.setColorsDirty(width + x - 1, height + y - 1);
+                map.setColorsDirty(dirtyMinX, dirtyMinY);
+                map.setColorsDirty(dirtyMaxX, dirtyMaxY);
             }
         }
         catch (Throwable ex) {
@@ -44,6 +44,7 @@ import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
 import org.bukkit.block.CreatureSpawner;
 import org.bukkit.block.Skull;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.craftbukkit.v1_20_R4.CraftChunk;
 import org.bukkit.craftbukkit.v1_20_R4.CraftRegistry;
 import org.bukkit.craftbukkit.v1_20_R4.CraftServer;
@@ -52,6 +53,7 @@ import org.bukkit.craftbukkit.v1_20_R4.block.CraftBlock;
 import org.bukkit.craftbukkit.v1_20_R4.block.CraftBlockEntityState;
 import org.bukkit.craftbukkit.v1_20_R4.block.CraftCreatureSpawner;
 import org.bukkit.craftbukkit.v1_20_R4.block.CraftSkull;
+import org.bukkit.craftbukkit.v1_20_R4.block.data.CraftBlockData;
 import org.bukkit.craftbukkit.v1_20_R4.entity.CraftEntity;
 import org.bukkit.craftbukkit.v1_20_R4.inventory.CraftItemStack;
 import org.bukkit.craftbukkit.v1_20_R4.tag.CraftBlockTag;
@@ -312,4 +314,9 @@ public class BlockHelperImpl implements BlockHelper {
         }
         PacketHelperImpl.broadcast(new ClientboundUpdateTagsPacket(TagNetworkSerialization.serializeTagsToNetwork(((CraftServer) Bukkit.getServer()).getServer().registries())));
     }
+
+    @Override
+    public boolean hasBlockEntity(BlockData data) {
+        return ((CraftBlockData) data).getState().hasBlockEntity();
+    }
 }
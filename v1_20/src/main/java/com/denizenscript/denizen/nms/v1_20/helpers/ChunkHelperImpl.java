@@ -18,13 +18,16 @@ import net.minecraft.world.level.chunk.LevelChunkSection;
 import net.minecraft.world.level.chunk.PalettedContainer;
 import net.minecraft.world.level.chunk.status.ChunkStatus;
 import net.minecraft.world.level.levelgen.Heightmap;
+import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.Chunk;
 import org.bukkit.craftbukkit.v1_20_R4.CraftChunk;
 import org.bukkit.craftbukkit.v1_20_R4.CraftWorld;
+import org.bukkit.craftbukkit.v1_20_R4.util.CraftMagicNumbers;
 
 import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
+import java.util.function.Predicate;
 
 public class ChunkHelperImpl implements ChunkHelper {
 
@@ -116,4 +119,14 @@ public class ChunkHelperImpl implements ChunkHelper {
             datapaletteblock.release();
         }
     }
+
+    @Override
+    public boolean sectionMayContain(Chunk chunk, int sectionY, Predicate<Material> matcher) {
+        ChunkAccess nmsChunk = ((CraftChunk) chunk).getHandle(ChunkStatus.FULL);
+        int index = nmsChunk.getSectionIndexFromSectionY(sectionY);
+        if (index < 0 || index >= nmsChunk.getSections().length) {
+            return true;
+        }
+        return nmsChunk.getSection(index).maybeHas((state) -> matcher.test(CraftMagicNumbers.getMaterial(state.getBlock())));
+    }
 }
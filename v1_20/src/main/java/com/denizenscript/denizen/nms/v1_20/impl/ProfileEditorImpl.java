@@ -57,7 +57,7 @@ public class ProfileEditorImpl extends ProfileEditor {
     }
 
     public static void registerHandlers() {
-        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundPlayerInfoUpdatePacket.class, ProfileEditorImpl::processPlayerInfoUpdatePacket);
+        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundPlayerInfoUpdatePacket.class, ProfileEditorImpl::processPlayerInfoUpdatePacket, () -> !ProfileEditor.mirrorUUIDs.isEmpty() || RenameCommand.hasAnyDynamicRenames() || !fakeProfiles.isEmpty());
     }
 
     public static ClientboundPlayerInfoUpdatePacket processPlayerInfoUpdatePacket(DenizenNetworkManagerImpl networkManager, ClientboundPlayerInfoUpdatePacket playerInfoUpdatePacket) {
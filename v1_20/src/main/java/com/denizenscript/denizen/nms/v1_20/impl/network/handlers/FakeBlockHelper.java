@@ -2,8 +2,8 @@ package com.denizenscript.denizen.nms.v1_20.impl.network.handlers;
 
 import com.denizenscript.denizen.Denizen;
 import com.denizenscript.denizen.nms.v1_20.ReflectionMappingsInfo;
-import com.denizenscript.denizen.objects.LocationTag;
 import com.denizenscript.denizen.utilities.blocks.FakeBlock;
+import com.denizenscript.denizen.utilities.blocks.FakeChunkPacketCache;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
 import com.denizenscript.denizencore.utilities.ReflectionHelper;
 import io.netty.buffer.Unpooled;
@@ -50,18 +50,6 @@ public class FakeBlockHelper {
         return ((CraftBlockData) block.material.getModernData()).getState();
     }
 
-    public static boolean anyBlocksInSection(List<FakeBlock> blocks, int y) {
-        int minY = y << 4;
-        int maxY = (y << 4) + 16;
-        for (FakeBlock block : blocks) {
-            int blockY = block.location.getBlockY();
-            if (blockY >= minY && blockY < maxY) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     public static Field PAPER_CHUNK_READY;
     public static boolean tryPaperPatch = true;
 
@@ -88,7 +76,7 @@ public class FakeBlockHelper {
         }
     }
 
-    public static ClientboundLevelChunkWithLightPacket handleMapChunkPacket(World world, ClientboundLevelChunkWithLightPacket originalPacket, int chunkX, int chunkZ, List<FakeBlock> blocks) {
+    public static ClientboundLevelChunkWithLightPacket handleMapChunkPacket(World world, ClientboundLevelChunkWithLightPacket originalPacket, int chunkX, int chunkZ, FakeBlock.ChunkFakeBlocks blocks) {
         try {
             ClientboundLevelChunkWithLightPacket duplicateCorePacket = ClientboundLevelChunkWithLightPacket.STREAM_CODEC.decode(DenizenNetworkManagerImpl.copyPacket(originalPacket, ClientboundLevelChunkWithLightPacket.STREAM_CODEC));
             copyPacketPaperPatch(duplicateCorePacket, originalPacket);
@@ -96,7 +84,6 @@ public class FakeBlockHelper {
             originalPacket.getChunkData().write(copier);
             ClientboundLevelChunkPacketData packet = new ClientboundLevelChunkPacketData(copier, chunkX, chunkZ);
             FriendlyByteBuf serial = originalPacket.getChunkData().getReadBuffer();
-            FriendlyByteBuf outputSerial = new FriendlyByteBuf(Unpooled.buffer(serial.readableBytes()));
             List blockEntities = new ArrayList((List) CHUNKDATA_BLOCK_ENTITIES.get(originalPacket.getChunkData()));
             CHUNKDATA_BLOCK_ENTITIES.set(packet, blockEntities);
             for (int i = 0; i < blockEntities.size(); i++) {
@@ -105,56 +92,63 @@ public class FakeBlockHelper {
                 int y = CHUNKDATA_BLOCKENTITYINFO_Y.getInt(blockEnt);
                 int x = (chunkX << 4) + ((xz >> 4) & 15);
                 int z = (chunkZ << 4) + (xz & 15);
-                for (FakeBlock block : blocks) {
-                    LocationTag loc = block.location;
-                    if (loc.getBlockX() == x && loc.getBlockY() == y && loc.getBlockZ() == z && block.material != null) {
-                        BlockEntity newBlockEnt = CraftBlockStates.createNewTileEntity(block.material.getMaterial());
-                        Object newData = CHUNKDATA_BLOCK_ENTITY_CONSTRUCTOR.invoke(xz, y, newBlockEnt.getType(), newBlockEnt.getUpdateTag(CraftRegistry.getMinecraftRegistry()));
-                        blockEntities.set(i, newData);
-                        break;
-                    }
+                FakeBlock block = blocks.get(x, y, z);
+                if (block != null && block.material != null) {
+                    BlockEntity newBlockEnt = CraftBlockStates.createNewTileEntity(block.material.getMaterial());
+                    Object newData = CHUNKDATA_BLOCK_ENTITY_CONSTRUCTOR.invoke(xz, y, newBlockEnt.getType(), newBlockEnt.getUpdateTag(CraftRegistry.getMinecraftRegistry()));
+                    blockEntities.set(i, newData);
                 }
             }
-            int worldMinY = world.getMinHeight();
-            int worldMaxY = world.getMaxHeight();
-            int minChunkY = worldMinY >> 4;
-            int maxChunkY = worldMaxY >> 4;
-            Registry<Biome> biomeRegistry = ((CraftWorld) world).getHandle().registryAccess().registryOrThrow(Registries.BIOME);
-            for (int y = minChunkY; y < maxChunkY; y++) {
-                int blockCount = serial.readShort();
-                // reflected constructors as workaround for spigot remapper bug - Mojang "IdMap" became Spigot "IRegistry" but should be "Registry"
-                PalettedContainer<BlockState> states = (PalettedContainer<BlockState>) PALETTEDCONTAINER_CTOR.newInstance(Block.BLOCK_STATE_REGISTRY, Blocks.AIR.defaultBlockState(), PalettedContainer.Strategy.SECTION_STATES);
-                states.read(serial);
-                PalettedContainer<Biome> biomes = (PalettedContainer<Biome>) PALETTEDCONTAINER_CTOR.newInstance(biomeRegistry, biomeRegistry.getOrThrow(Biomes.PLAINS), PalettedContainer.Strategy.SECTION_BIOMES);
-                biomes.read(serial);
-                if (anyBlocksInSection(blocks, y)) {
-                    int minY = y << 4;
-                    int maxY = (y << 4) + 16;
-                    for (FakeBlock block : blocks) {
-                        int blockY = block.location.getBlockY();
-                        if (blockY >= minY && blockY < maxY && block.material != null) {
-                            int blockX = block.location.getBlockX();
-                            int blockZ = block.location.getBlockZ();
-                            blockX -= (blockX >> 4) * 16;
-                            blockY -= (blockY >> 4) * 16;
-                            blockZ -= (blockZ >> 4) * 16;
-                            BlockState oldState = states.get(blockX, blockY, blockZ);
-                            BlockState newState = getNMSState(block);
-                            if (oldState.isAir() && !newState.isAir()) {
-                                blockCount++;
-                            }
-                            else if (newState.isAir() && !oldState.isAir()) {
-                                blockCount--;
+            long fakeHash = 0;
+            for (FakeBlock block : blocks.blocks) {
+                if (block.material != null) {
+                    fakeHash += FakeChunkPacketCache.hashBlock(block, Block.getId(getNMSState(block)));
+                }
+            }
+            FakeChunkPacketCache.Key cacheKey = new FakeChunkPacketCache.Key(world.getName(), chunkX, chunkZ, fakeHash);
+            byte[] originalBytes = new byte[serial.readableBytes()];
+            serial.getBytes(serial.readerIndex(), originalBytes);
+            byte[] outputBytes = FakeChunkPacketCache.get(cacheKey, originalBytes);
+            if (outputBytes == null) {
+                FriendlyByteBuf outputSerial = new FriendlyByteBuf(Unpooled.buffer(serial.readableBytes()));
+                int worldMinY = world.getMinHeight();
+                int worldMaxY = world.getMaxHeight();
+                int minChunkY = worldMinY >> 4;
+                int maxChunkY = worldMaxY >> 4;
+                Registry<Biome> biomeRegistry = ((CraftWorld) world).getHandle().registryAccess().registryOrThrow(Registries.BIOME);
+                for (int y = minChunkY; y < maxChunkY; y++) {
+                    int blockCount = serial.readShort();
+                    // reflected constructors as workaround for spigot remapper bug - Mojang "IdMap" became Spigot "IRegistry" but should be "Registry"
+                    PalettedContainer<BlockState> states = (PalettedContainer<BlockState>) PALETTEDCONTAINER_CTOR.newInstance(Block.BLOCK_STATE_REGISTRY, Blocks.AIR.defaultBlockState(), PalettedContainer.Strategy.SECTION_STATES);
+                    states.read(serial);
+                    PalettedContainer<Biome> biomes = (PalettedContainer<Biome>) PALETTEDCONTAINER_CTOR.newInstance(biomeRegistry, biomeRegistry.getOrThrow(Biomes.PLAINS), PalettedContainer.Strategy.SECTION_BIOMES);
+                    biomes.read(serial);
+                    List<FakeBlock> sectionBlocks = blocks.getSection(y);
+                    if (sectionBlocks != null) {
+                        for (FakeBlock block : sectionBlocks) {
+                            if (block.material != null) {
+                                int blockX = block.x & 15;
+                                int blockY = block.y & 15;
+                                int blockZ = block.z & 15;
+                                BlockState oldState = states.get(blockX, blockY, blockZ);
+                                BlockState newState = getNMSState(block);
+                                if (oldState.isAir() && !newState.isAir()) {
+                                    blockCount++;
+                                }
+                                else if (newState.isAir() && !oldState.isAir()) {
+                                    blockCount--;
+                                }
+                                states.set(blockX, blockY, blockZ, newState);
                             }
-                            states.set(blockX, blockY, blockZ, newState);
                         }
                     }
+                    outputSerial.writeShort(blockCount);
+                    states.write(outputSerial);
+                    biomes.write(outputSerial);
                 }
-                outputSerial.writeShort(blockCount);
-                states.write(outputSerial);
-                biomes.write(outputSerial);
+                outputBytes = outputSerial.array();
+                FakeChunkPacketCache.put(cacheKey, originalBytes, outputBytes);
             }
-            byte[] outputBytes = outputSerial.array();
             CHUNKDATA_BUFFER_SETTER.invoke(packet, outputBytes);
             CHUNKPACKET_CHUNKDATA_SETTER.invoke(duplicateCorePacket, packet);
             return duplicateCorePacket;
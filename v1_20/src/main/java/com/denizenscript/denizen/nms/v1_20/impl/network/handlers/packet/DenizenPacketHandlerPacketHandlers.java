@@ -12,8 +12,8 @@ import net.minecraft.network.protocol.game.ClientboundSystemChatPacket;
 public class DenizenPacketHandlerPacketHandlers {
 
     public static void registerHandlers() {
-        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundSystemChatPacket.class, DenizenPacketHandlerPacketHandlers::processPacketHandlerForPacket);
-        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundPlayerChatPacket.class, DenizenPacketHandlerPacketHandlers::processPacketHandlerForPacket);
+        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundSystemChatPacket.class, DenizenPacketHandlerPacketHandlers::processPacketHandlerForPacket, () -> DenizenPacketHandler.instance.shouldInterceptChatPacket());
+        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundPlayerChatPacket.class, DenizenPacketHandlerPacketHandlers::processPacketHandlerForPacket, () -> DenizenPacketHandler.instance.shouldInterceptChatPacket());
     }
 
     public static Packet<ClientGamePacketListener> processPacketHandlerForPacket(DenizenNetworkManagerImpl networkManager, Packet<ClientGamePacketListener> packet) {
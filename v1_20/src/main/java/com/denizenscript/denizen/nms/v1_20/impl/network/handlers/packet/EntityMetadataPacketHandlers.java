@@ -23,7 +23,7 @@ import java.util.Optional;
 public class EntityMetadataPacketHandlers {
 
     public static void registerHandlers() {
-        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundSetEntityDataPacket.class, EntityMetadataPacketHandlers::processMetadataChangesForPacket);
+        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundSetEntityDataPacket.class, EntityMetadataPacketHandlers::processMetadataChangesForPacket, () -> RenameCommand.hasAnyDynamicRenames() || !SneakCommand.forceSetSneak.isEmpty() || !InvisibleCommand.helper.noOverrides() || !GlowCommand.helper.noOverrides());
     }
 
     public static ClientboundSetEntityDataPacket getModifiedMetadataFor(DenizenNetworkManagerImpl networkManager, ClientboundSetEntityDataPacket metadataPacket) {
@@ -3,8 +3,6 @@ package com.denizenscript.denizen.nms.v1_20.impl.network.handlers.packet;
 import com.denizenscript.denizen.nms.v1_20.ReflectionMappingsInfo;
 import com.denizenscript.denizen.nms.v1_20.impl.network.handlers.DenizenNetworkManagerImpl;
 import com.denizenscript.denizen.nms.v1_20.impl.network.handlers.FakeBlockHelper;
-import com.denizenscript.denizen.objects.LocationTag;
-import com.denizenscript.denizen.utilities.blocks.ChunkCoordinate;
 import com.denizenscript.denizen.utilities.blocks.FakeBlock;
 import com.denizenscript.denizencore.utilities.ReflectionHelper;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
@@ -16,14 +14,13 @@ import net.minecraft.world.level.block.state.BlockState;
 
 import java.lang.reflect.Field;
 import java.util.Arrays;
-import java.util.List;
 
 public class FakeBlocksPacketHandlers {
 
     public static void registerHandlers() {
-        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundLevelChunkWithLightPacket.class, FakeBlocksPacketHandlers::processShowFakeForPacket);
-        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundSectionBlocksUpdatePacket.class, FakeBlocksPacketHandlers::processShowFakeForPacket);
-        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundBlockUpdatePacket.class, FakeBlocksPacketHandlers::processShowFakeForPacket);
+        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundLevelChunkWithLightPacket.class, FakeBlocksPacketHandlers::processShowFakeForPacket, () -> !FakeBlock.blocks.isEmpty());
+        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundSectionBlocksUpdatePacket.class, FakeBlocksPacketHandlers::processShowFakeForPacket, () -> !FakeBlock.blocks.isEmpty());
+        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundBlockUpdatePacket.class, FakeBlocksPacketHandlers::processShowFakeForPacket, () -> !FakeBlock.blocks.isEmpty());
     }
 
     public static Field SECTIONPOS_MULTIBLOCKCHANGE = ReflectionHelper.getFields(ClientboundSectionBlocksUpdatePacket.class).get(ReflectionMappingsInfo.ClientboundSectionBlocksUpdatePacket_sectionPos, SectionPos.class);
@@ -42,12 +39,11 @@ public class FakeBlocksPacketHandlers {
                 }
                 int chunkX = ((ClientboundLevelChunkWithLightPacket) packet).getX();
                 int chunkZ = ((ClientboundLevelChunkWithLightPacket) packet).getZ();
-                ChunkCoordinate chunkCoord = new ChunkCoordinate(chunkX, chunkZ, networkManager.player.level().getWorld().getName());
-                List<FakeBlock> blocks = FakeBlock.getFakeBlocksFor(networkManager.player.getUUID(), chunkCoord);
-                if (blocks == null || blocks.isEmpty()) {
+                FakeBlock.ChunkFakeBlocks chunk = map.getChunk(networkManager.player.level().getWorld().getName(), chunkX, chunkZ);
+                if (chunk == null || chunk.blocks.isEmpty()) {
                     return packet;
                 }
-                ClientboundLevelChunkWithLightPacket newPacket = FakeBlockHelper.handleMapChunkPacket(networkManager.player.getBukkitEntity().getWorld(), (ClientboundLevelChunkWithLightPacket) packet, chunkX, chunkZ, blocks);
+                ClientboundLevelChunkWithLightPacket newPacket = FakeBlockHelper.handleMapChunkPacket(networkManager.player.getBukkitEntity().getWorld(), (ClientboundLevelChunkWithLightPacket) packet, chunkX, chunkZ, chunk);
                 return newPacket;
             }
             else if (packet instanceof ClientboundSectionBlocksUpdatePacket) {
@@ -56,12 +52,11 @@ public class FakeBlocksPacketHandlers {
                     return packet;
                 }
                 SectionPos coord = (SectionPos) SECTIONPOS_MULTIBLOCKCHANGE.get(packet);
-                ChunkCoordinate coordinateDenizen = new ChunkCoordinate(coord.getX(), coord.getZ(), networkManager.player.level().getWorld().getName());
-                if (!map.byChunk.containsKey(coordinateDenizen)) {
+                FakeBlock.ChunkFakeBlocks chunk = map.getChunk(networkManager.player.level().getWorld().getName(), coord.getX(), coord.getZ());
+                if (chunk == null || !chunk.mightHaveSection(coord.getY())) {
                     return packet;
                 }
                 ClientboundSectionBlocksUpdatePacket newPacket = ClientboundSectionBlocksUpdatePacket.STREAM_CODEC.decode(DenizenNetworkManagerImpl.copyPacket((ClientboundSectionBlocksUpdatePacket) packet, ClientboundSectionBlocksUpdatePacket.STREAM_CODEC));
-                LocationTag location = new LocationTag(networkManager.player.level().getWorld(), 0, 0, 0);
                 short[] originalOffsetArray = (short[])OFFSETARRAY_MULTIBLOCKCHANGE.get(newPacket);
                 BlockState[] originalDataArray = (BlockState[])BLOCKARRAY_MULTIBLOCKCHANGE.get(newPacket);
                 short[] offsetArray = Arrays.copyOf(originalOffsetArray, originalOffsetArray.length);
@@ -71,10 +66,7 @@ public class FakeBlocksPacketHandlers {
                 for (int i = 0; i < offsetArray.length; i++) {
                     short offset = offsetArray[i];
                     BlockPos pos = coord.relativeToBlockPos(offset);
-                    location.setX(pos.getX());
-                    location.setY(pos.getY());
-                    location.setZ(pos.getZ());
-                    FakeBlock block = map.byLocation.get(location);
+                    FakeBlock block = chunk.get(pos.getX(), pos.getY(), pos.getZ());
                     if (block != null) {
                         dataArray[i] = FakeBlockHelper.getNMSState(block);
                     }
@@ -83,8 +75,7 @@ public class FakeBlocksPacketHandlers {
             }
             else if (packet instanceof ClientboundBlockUpdatePacket) {
                 BlockPos pos = ((ClientboundBlockUpdatePacket) packet).getPos();
-                LocationTag loc = new LocationTag(networkManager.player.level().getWorld(), pos.getX(), pos.getY(), pos.getZ());
-                FakeBlock block = FakeBlock.getFakeBlockFor(networkManager.player.getUUID(), loc);
+                FakeBlock block = FakeBlock.getFakeBlockFor(networkManager.player.getUUID(), networkManager.player.level().getWorld().getName(), pos.getX(), pos.getY(), pos.getZ());
                 if (block != null) {
                     ClientboundBlockUpdatePacket newPacket = new ClientboundBlockUpdatePacket(((ClientboundBlockUpdatePacket) packet).getPos(), FakeBlockHelper.getNMSState(block));
                     return newPacket;
@@ -37,6 +37,7 @@ import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
 import org.bukkit.block.CreatureSpawner;
 import org.bukkit.block.Skull;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.craftbukkit.v1_21_R3.CraftChunk;
 import org.bukkit.craftbukkit.v1_21_R3.CraftRegistry;
 import org.bukkit.craftbukkit.v1_21_R3.CraftWorld;
@@ -44,6 +45,7 @@ import org.bukkit.craftbukkit.v1_21_R3.block.CraftBlock;
 import org.bukkit.craftbukkit.v1_21_R3.block.CraftBlockEntityState;
 import org.bukkit.craftbukkit.v1_21_R3.block.CraftCreatureSpawner;
 import org.bukkit.craftbukkit.v1_21_R3.block.CraftSkull;
+import org.bukkit.craftbukkit.v1_21_R3.block.data.CraftBlockData;
 import org.bukkit.craftbukkit.v1_21_R3.entity.CraftEntity;
 import org.bukkit.craftbukkit.v1_21_R3.inventory.CraftItemStack;
 import org.bukkit.craftbukkit.v1_21_R3.util.CraftLocation;
@@ -303,4 +305,9 @@ public class BlockHelperImpl implements BlockHelper {
 //        }
 //        PacketHelperImpl.broadcast(new ClientboundUpdateTagsPacket(TagNetworkSerialization.serializeTagsToNetwork(((CraftServer) Bukkit.getServer()).getServer().registries())));
 //    }
+
+    @Override
+    public boolean hasBlockEntity(BlockData data) {
+        return ((CraftBlockData) data).getState().hasBlockEntity();
+    }
 }
@@ -96,6 +96,23 @@ import java.util.function.Predicate;
 
 public class ItemHelperImpl extends ItemHelper {
 
+    public static final Field CraftItemStack_handle = ReflectionHelper.getFields(CraftItemStack.class).get("handle");
+
+    /**
+     * Returns the NMS stack backing the item without copying it where possible (ie for CraftItemStacks), or a copy otherwise. The result must not be modified.
+     */
+    public static net.minecraft.world.item.ItemStack getHandleNoCopy(ItemStack item) {
+        if (item instanceof CraftItemStack) {
+            try {
+                return (net.minecraft.world.item.ItemStack) CraftItemStack_handle.get(item);
+            }
+            catch (Throwable ex) {
+                Debug.echoError(ex);
+            }
+        }
+        return CraftItemStack.asNMSCopy(item);
+    }
+
     public static net.minecraft.world.item.crafting.RecipeHolder<?> getNMSRecipe(NamespacedKey key) {
         ResourceKey<Recipe<?>> nmsKey = ResourceKey.create(Registries.RECIPE, CraftNamespacedKey.toMinecraft(key));
         return ((CraftServer) Bukkit.getServer()).getServer().getRecipeManager().byKey(nmsKey).orElse(null);
@@ -384,6 +401,22 @@ public class ItemHelperImpl extends ItemHelper {
         return customData != null ? CompoundTagImpl.fromNMSTag(customData.getUnsafe()) : null;
     }
 
+    @Override
+    public String getCustomDataString(ItemStack item, String key) {
+        net.minecraft.world.item.ItemStack nmsItemStack = getHandleNoCopy(item);
+        CustomData customData = nmsItemStack != null ? nmsItemStack.get(DataComponents.CUSTOM_DATA) : null;
+        return customData != null ? customData.getUnsafe().getString(key) : null;
+    }
+
+    @Override
+    public Object getCustomDataIdentity(ItemStack item) {
+        if (!(item instanceof CraftItemStack)) {
+            return null; // Would need a copy, whose components are never seen again
+        }
+        net.minecraft.world.item.ItemStack nmsItemStack = getHandleNoCopy(item);
+        return nmsItemStack != null ? nmsItemStack.get(DataComponents.CUSTOM_DATA) : null;
+    }
+
     @Override
     public ItemStack setCustomData(ItemStack item, CompoundTag data) {
         net.minecraft.world.item.ItemStack nmsItemStack = CraftItemStack.asNMSCopy(item);
@@ -7,6 +7,7 @@ import com.denizenscript.denizen.nms.v1_21.impl.ProfileEditorImpl;
 import com.denizenscript.denizen.nms.v1_21.impl.network.handlers.packet.*;
 import com.denizenscript.denizen.utilities.Settings;
 import com.denizenscript.denizen.utilities.packets.NetworkInterceptCodeGen;
+import com.denizenscript.denizen.utilities.packets.PacketHandlerMetrics;
 import com.denizenscript.denizencore.utilities.CoreUtilities;
 import com.denizenscript.denizencore.utilities.ReflectionHelper;
 import com.denizenscript.denizencore.utilities.debugging.Debug;
@@ -46,6 +47,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -69,17 +71,61 @@ public class DenizenNetworkManagerImpl extends Connection {
         Packet<ClientGamePacketListener> handlePacket(DenizenNetworkManagerImpl networkManager, T packet) throws Exception;
     }
 
-    public static final Map<Class<? extends Packet<ClientGamePacketListener>>, List<PacketHandler<?>>> packetHandlers = new HashMap<>();
+    public static class RegisteredPacketHandler {
+
+        public final PacketHandler<Packet<ClientGamePacketListener>> handler;
+
+        public final BooleanSupplier isActive;
+
+        public final PacketHandlerMetrics.Entry metrics;
+
+        public RegisteredPacketHandler(PacketHandler<Packet<ClientGamePacketListener>> handler, BooleanSupplier isActive, PacketHandlerMetrics.Entry metrics) {
+            this.handler = handler;
+            this.isActive = isActive;
+            this.metrics = metrics;
+        }
+    }
+
+    public static final Map<Class<? extends Packet<ClientGamePacketListener>>, List<RegisteredPacketHandler>> packetHandlers = new HashMap<>();
+
+    public static final RegisteredPacketHandler[] NO_HANDLERS = new RegisteredPacketHandler[0];
+
+    public static final BooleanSupplier ALWAYS_ACTIVE = () -> true;
+
+    /**
+     * Flat per-packet-class handler arrays, built once per class on first use (all handlers are registered during static init).
+     */
+    public static final ClassValue<RegisteredPacketHandler[]> handlersByClass = new ClassValue<>() {
+        @Override
+        protected RegisteredPacketHandler[] computeValue(Class<?> type) {
+            List<RegisteredPacketHandler> handlers = packetHandlers.get(type);
+            return handlers == null ? NO_HANDLERS : handlers.toArray(NO_HANDLERS);
+        }
+    };
 
     public static <T extends Packet<ClientGamePacketListener>> void registerPacketHandler(Class<T> packetClass, PacketHandler<T> handler) {
-        packetHandlers.computeIfAbsent(packetClass, k -> new ArrayList<>()).add(handler);
+        registerPacketHandler(packetClass, handler, ALWAYS_ACTIVE);
+    }
+
+    /**
+     * Registers a packet handler that only runs while 'isActive' returns true, which should be a cheap check of whether the handler's feature is in use at all.
+     */
+    public static <T extends Packet<ClientGamePacketListener>> void registerPacketHandler(Class<T> packetClass, PacketHandler<T> handler, BooleanSupplier isActive) {
+        String owner = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE).walk(frames -> frames.map(StackWalker.StackFrame::getDeclaringClass)
+                .filter(c -> c != DenizenNetworkManagerImpl.class).findFirst().map(Class::getSimpleName).orElse("Unknown"));
+        String name = owner + "/" + packetClass.getName().substring(packetClass.getPackageName().length() + 1);
+        packetHandlers.computeIfAbsent(packetClass, k -> new ArrayList<>()).add(new RegisteredPacketHandler((PacketHandler) handler, isActive, PacketHandlerMetrics.getEntry(name)));
     }
 
     public static <T extends Packet<ClientGamePacketListener>> void registerPacketHandler(Class<T> packetClass, BiConsumer<DenizenNetworkManagerImpl, T> handler) {
+        registerPacketHandler(packetClass, handler, ALWAYS_ACTIVE);
+    }
+
+    public static <T extends Packet<ClientGamePacketListener>> void registerPacketHandler(Class<T> packetClass, BiConsumer<DenizenNetworkManagerImpl, T> handler, BooleanSupplier isActive) {
         registerPacketHandler(packetClass, (networkManager, packet) -> {
             handler.accept(networkManager, packet);
             return packet;
-        });
+        }, isActive);
     }
 
     public final Connection oldManager;
@@ -368,27 +414,30 @@ public class DenizenNetworkManagerImpl extends Connection {
         if (packet == null) {
             return null;
         }
-        List<PacketHandler<?>> packetHandlers = DenizenNetworkManagerImpl.packetHandlers.get(packet.getClass());
-        if (packetHandlers != null) {
-            for (PacketHandler<?> _packetHandler : packetHandlers) {
-                PacketHandler<Packet<ClientGamePacketListener>> packetHandler = (PacketHandler<Packet<ClientGamePacketListener>>) _packetHandler;
-                Packet<ClientGamePacketListener> processed;
-                try {
-                    processed = packetHandler.handlePacket(this, packet);
-                }
-                catch (Exception ex) {
-                    Debug.echoError("Packet handler for " + packet.getClass().getCanonicalName() + " threw an exception:");
-                    Debug.echoError(ex);
-                    continue;
-                }
-                if (processed == null) {
-                    if (NMSHandler.debugPackets) {
-                        doPacketOutput("DENIED PACKET - " + packet.getClass().getCanonicalName() + " DENIED FROM SEND TO " + player.getScoreboardName());
-                    }
-                    return null;
+        for (RegisteredPacketHandler registered : handlersByClass.get(packet.getClass())) {
+            if (!registered.isActive.getAsBoolean()) {
+                continue;
+            }
+            Packet<ClientGamePacketListener> processed;
+            long start = System.nanoTime();
+            try {
+                processed = registered.handler.handlePacket(this, packet);
+            }
+            catch (Exception ex) {
+                Debug.echoError("Packet handler for " + packet.getClass().getCanonicalName() + " threw an exception:");
+                Debug.echoError(ex);
+                continue;
+            }
+            finally {
+                registered.metrics.record(System.nanoTime() - start);
+            }
+            if (processed == null) {
+                if (NMSHandler.debugPackets) {
+                    doPacketOutput("DENIED PACKET - " + packet.getClass().getCanonicalName() + " DENIED FROM SEND TO " + player.getScoreboardName());
                 }
-                packet = processed;
+                return null;
             }
+            packet = processed;
         }
         if (PlayerReceivesPacketScriptEvent.instance.eventData.isEnabled & PlayerReceivesPacketScriptEvent.fireFor(player.getBukkitEntity(), packet)) {
             if (NMSHandler.debugPackets) {
@@ -13,7 +13,7 @@ import org.bukkit.craftbukkit.v1_21_R3.util.CraftChatMessage;
 public class ActionBarEventPacketHandlers {
 
     public static void registerHandlers() {
-        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundSetActionBarTextPacket.class, ActionBarEventPacketHandlers::processActionbarPacket);
+        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundSetActionBarTextPacket.class, ActionBarEventPacketHandlers::processActionbarPacket, () -> PlayerReceivesActionbarScriptEvent.instance.loaded);
     }
 
     public static ClientboundSetActionBarTextPacket processActionbarPacket(DenizenNetworkManagerImpl networkManager, ClientboundSetActionBarTextPacket actionbarPacket) {
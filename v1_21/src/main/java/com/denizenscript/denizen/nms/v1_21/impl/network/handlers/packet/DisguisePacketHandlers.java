@@ -72,7 +72,7 @@ public class DisguisePacketHandlers {
                 antiDuplicate = false;
                 throw e; // "pass it" to the generic exception handling
             }
-        });
+        }, () -> !DisguiseCommand.disguises.isEmpty());
     }
 
     @FunctionalInterface
@@ -25,8 +25,8 @@ import java.util.UUID;
 public class TablistUpdateEventPacketHandlers {
 
     public static void registerHandlers() {
-        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundPlayerInfoUpdatePacket.class, TablistUpdateEventPacketHandlers::processTablistPacket);
-        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundPlayerInfoRemovePacket.class, TablistUpdateEventPacketHandlers::processTablistPacket);
+        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundPlayerInfoUpdatePacket.class, TablistUpdateEventPacketHandlers::processTablistPacket, () -> PlayerReceivesTablistUpdateScriptEvent.instance.eventData.isEnabled);
+        DenizenNetworkManagerImpl.registerPacketHandler(ClientboundPlayerInfoRemovePacket.class, TablistUpdateEventPacketHandlers::processTablistPacket, () -> PlayerReceivesTablistUpdateScriptEvent.instance.eventData.isEnabled);
     }
 
     public static boolean tablistBreakOnlyOnce = false;